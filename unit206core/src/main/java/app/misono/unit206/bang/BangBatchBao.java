@@ -0,0 +1,59 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.bang;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ *	Optional bulk operations of BangBao. BangModel uses them for the list operations,
+ *	so the whole list is committed once. With Room:
+ *
+ *	<pre>
+ *	&#64;Insert long[] insertAll(List&lt;Rec&gt; records);
+ *	&#64;Update int updateAll(List&lt;Rec&gt; records);
+ *	&#64;Query("DELETE FROM rec WHERE id IN (:ids)") int deleteByIds(long[] ids);
+ *	public &lt;V&gt; V runInTransaction(Callable&lt;V&gt; body) { return db.runInTransaction(body); }
+ *	</pre>
+ */
+public interface BangBatchBao<REC> extends BangBao<REC> {
+	/**
+	 *	@return the ids in the order of records. 0 or less if not inserted.
+	 */
+	@NonNull
+	long[] insertAll(@NonNull List<REC> records);
+
+	/**
+	 *	@return the total number of the updated rows.
+	 */
+	int updateAll(@NonNull List<REC> records);
+
+	/**
+	 *	@param ids 999 at most, the limit of the bound variables of SQLite before 3.32.
+	 *	@return the total number of the deleted rows.
+	 */
+	int deleteByIds(@NonNull long[] ids);
+
+	/**
+	 *	Runs body in one transaction. Rolled back if body throws, and the exception is
+	 *	thrown as is.
+	 */
+	<V> V runInTransaction(@NonNull Callable<V> body) throws Exception;
+
+}
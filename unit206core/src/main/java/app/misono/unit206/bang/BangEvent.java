@@ -19,6 +19,9 @@ package app.misono.unit206.bang;
 import android.util.LongSparseArray;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import app.misono.unit206.viewmodel.HashDelta;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -29,7 +32,10 @@ import org.json.JSONArray;
 import org.json.JSONException;
 
 public class BangEvent<I extends BangItem> {
-	private final List<I> list;
+	private final HashDelta<I> delta;
+
+	// synchronized instance
+	private List<I> list;
 
 	public BangEvent(@NonNull LongSparseArray<I> hash) {
 		List<I> list = new ArrayList<>();
@@ -38,24 +44,50 @@ public class BangEvent<I extends BangItem> {
 			list.add(hash.valueAt(i));
 		}
 		this.list = Collections.unmodifiableList(list);
+		delta = null;
 	}
 
 	public BangEvent(@NonNull List<I> list) {
 		this.list = Collections.unmodifiableList(list);
+		delta = null;
+	}
+
+	/**
+	 *	For the delta mode of BangViewModel. The list is created on the first getList().
+	 */
+	public BangEvent(@NonNull HashDelta<I> delta) {
+		this.delta = delta;
+	}
+
+	/**
+	 *	@return null if not created by the delta mode.
+	 */
+	@Nullable
+	public HashDelta<I> getDelta() {
+		return delta;
 	}
 
 	public int size() {
-		return list.size();
+		return delta != null ? delta.getSnapshot().size() : list.size();
 	}
 
+	/**
+	 *	@return ascending id order.
+	 */
 	@NonNull
-	public List<I> getList() {
+	public synchronized List<I> getList() {
+		if (list == null) {
+			List<I> rc = new ArrayList<>(delta.getSnapshot().size());
+			delta.getSnapshot().values(rc);
+			Collections.sort(rc, (a, b) -> Long.compare(a.getLongId(), b.getLongId()));
+			list = Collections.unmodifiableList(rc);
+		}
 		return list;
 	}
 
 	@NonNull
 	public List<I> getList(@NonNull Comparator<I> comparator) {
-		List<I> rc = new ArrayList<>(list);
+		List<I> rc = new ArrayList<>(getList());
 		Collections.sort(rc, comparator);
 		return rc;
 	}
@@ -63,7 +95,7 @@ public class BangEvent<I extends BangItem> {
 	@NonNull
 	public JSONArray createJson() throws JSONException {
 		JSONArray rc = new JSONArray();
-		for (I item : list) {
+		for (I item : getList()) {
 			rc.put(item.toJson());
 		}
 		return rc;
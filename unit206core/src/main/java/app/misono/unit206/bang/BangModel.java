@@ -22,13 +22,14 @@ import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import app.misono.unit206.debug.Log2;
-import app.misono.unit206.task.SingletonTask;
+import app.misono.unit206.task.SerialTask;
 import app.misono.unit206.task.Taskz;
 import app.misono.unit206.viewmodel.HashItemUpdater;
 
 import com.google.android.gms.tasks.Task;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -38,9 +39,10 @@ import java.util.concurrent.Executor;
 
 public abstract class BangModel<REC, I extends BangItem, M extends BangItemMutable<REC>> {
 	private static final String TAG = "BangModel";
+	private static final int MAX_VARIABLES = 999;		// SQLite before 3.32. (API 29 and older)
 
 	private final Set<Listener<I>> listeners;
-	private final SingletonTask task1;
+	private final SerialTask task1;
 	private final Executor executor;
 
 	private HashItemUpdater<M> updater;
@@ -54,7 +56,7 @@ public abstract class BangModel<REC, I extends BangItem, M extends BangItemMutab
 
 	protected BangModel(@NonNull Executor executor) {
 		this.executor = executor;
-		task1 = new SingletonTask();
+		task1 = new SerialTask();
 		listeners = new HashSet<>();
 	}
 
@@ -132,18 +134,38 @@ public abstract class BangModel<REC, I extends BangItem, M extends BangItemMutab
 		});
 	}
 
+	/**
+	 *	One insertAll() in a transaction if the bao is BangBatchBao.
+	 */
 	@WorkerThread
 	protected void insertListUnsafe(@NonNull List<M> list) throws Exception {
 		List<I> changed = new ArrayList<>();
+		List<REC> records = new ArrayList<>(list.size());
 		for (M item : list) {
 			if (updater != null) {
 				updater.update(item);
 			}
 			item.setCreatedTime();
 			item.setLongId(0);
-			long id = bao.insertItem(item.toRecord());
-			item.setLongId(id);
-			if (0 < id) {
+			records.add(item.toRecord());
+		}
+		long[] ids;
+		if (bao instanceof BangBatchBao) {
+			BangBatchBao<REC> batch = (BangBatchBao<REC>)bao;
+			ids = batch.runInTransaction(() -> batch.insertAll(records));
+			if (ids.length != list.size()) {
+				throw new IllegalStateException("insertAll:" + ids.length + " != " + list.size());
+			}
+		} else {
+			ids = new long[list.size()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = bao.insertItem(records.get(i));
+			}
+		}
+		for (int i = 0; i < ids.length; i++) {
+			M item = list.get(i);
+			item.setLongId(ids[i]);
+			if (0 < ids[i]) {
 				changed.add((I)item);
 			}
 		}
@@ -186,21 +208,39 @@ public abstract class BangModel<REC, I extends BangItem, M extends BangItemMutab
 		});
 	}
 
+	/**
+	 *	One updateAll() in a transaction if the bao is BangBatchBao. If some records
+	 *	were not updated, they are updated one by one in the same transaction to know which.
+	 */
 	@WorkerThread
 	@NonNull
 	protected int[] updateListUnsafe(@NonNull List<M> list) throws Exception {
 		List<I> changed = new ArrayList<>();
-		int[] rc = new int[list.size()];
-		int i = 0;
+		List<REC> records = new ArrayList<>(list.size());
 		for (M item : list) {
 			if (updater != null) {
 				updater.update(item);
 			}
 			item.setModifiedTime();
-			int rows = bao.updateItem(item.toRecord());
-			rc[i++] = rows;
-			if (0 < rows) {
-				changed.add((I)item);
+			records.add(item.toRecord());
+		}
+		int[] rc;
+		if (bao instanceof BangBatchBao) {
+			BangBatchBao<REC> batch = (BangBatchBao<REC>)bao;
+			rc = batch.runInTransaction(() -> {
+				if (batch.updateAll(records) == records.size()) {
+					int[] rows = new int[records.size()];
+					Arrays.fill(rows, 1);
+					return rows;
+				}
+				return updateEach(records);
+			});
+		} else {
+			rc = updateEach(records);
+		}
+		for (int i = 0; i < rc.length; i++) {
+			if (0 < rc[i]) {
+				changed.add((I)list.get(i));
 			}
 		}
 		if (!changed.isEmpty()) {
@@ -239,17 +279,46 @@ public abstract class BangModel<REC, I extends BangItem, M extends BangItemMutab
 		});
 	}
 
+	/**
+	 *	deleteByIds() of up to MAX_VARIABLES ids at a time in one transaction if the bao is
+	 *	BangBatchBao. If some ids were not found, the transaction is rolled back and the ids are
+	 *	deleted one by one in another transaction to know which, so the results are the same
+	 *	as deleteItem() of each.
+	 */
 	@WorkerThread
 	@NonNull
 	protected int[] deleteListUnsafe(@NonNull List<I> list) throws Exception {
 		List<I> changed = new ArrayList<>();
-		int[] rc = new int[list.size()];
-		int i = 0;
-		for (I item : list) {
-			int rows = bao.deleteItem(item.getLongId());
-			rc[i++] = rows;
-			if (0 < rows) {
-				changed.add(item);
+		long[] ids = new long[list.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = list.get(i).getLongId();
+		}
+		int[] rc;
+		if (bao instanceof BangBatchBao) {
+			BangBatchBao<REC> batch = (BangBatchBao<REC>)bao;
+			try {
+				rc = batch.runInTransaction(() -> {
+					int rows = 0;
+					for (int from = 0; from < ids.length; from += MAX_VARIABLES) {
+						int to = Math.min(ids.length, from + MAX_VARIABLES);
+						rows += batch.deleteByIds(Arrays.copyOfRange(ids, from, to));
+					}
+					if (rows != ids.length) {
+						throw new NotFoundException();
+					}
+					int[] all = new int[ids.length];
+					Arrays.fill(all, 1);
+					return all;
+				});
+			} catch (NotFoundException e) {
+				rc = batch.runInTransaction(() -> deleteEach(ids));
+			}
+		} else {
+			rc = deleteEach(ids);
+		}
+		for (int i = 0; i < rc.length; i++) {
+			if (0 < rc[i]) {
+				changed.add(list.get(i));
 			}
 		}
 		if (!changed.isEmpty()) {
@@ -261,6 +330,26 @@ public abstract class BangModel<REC, I extends BangItem, M extends BangItemMutab
 		return rc;
 	}
 
+	@WorkerThread
+	@NonNull
+	private int[] deleteEach(@NonNull long[] ids) {
+		int[] rc = new int[ids.length];
+		for (int i = 0; i < rc.length; i++) {
+			rc[i] = bao.deleteItem(ids[i]);
+		}
+		return rc;
+	}
+
+	@WorkerThread
+	@NonNull
+	private int[] updateEach(@NonNull List<REC> records) {
+		int[] rc = new int[records.size()];
+		for (int i = 0; i < rc.length; i++) {
+			rc[i] = bao.updateItem(records.get(i));
+		}
+		return rc;
+	}
+
 	@AnyThread
 	@NonNull
 	protected Task<Void> deleteAllTask() {
@@ -314,4 +403,10 @@ public abstract class BangModel<REC, I extends BangItem, M extends BangItemMutab
 		void onAllChanged(@NonNull List<I> list) throws Exception;
 	}
 
+	/**
+	 *	thrown to roll back deleteByIds() when some ids were not found.
+	 */
+	private static class NotFoundException extends Exception {
+	}
+
 }
@@ -47,7 +47,20 @@ public abstract class BangViewModel<
 		@NonNull BangModel<REC, I, M> model,
 		boolean enablePostReady
 	) {
-		super(app, enablePostReady);
+		this(app, model, enablePostReady, DELTA_OFF);
+	}
+
+	/**
+	 *	@param msecDelta see HashViewModel. override createEvent(HashDelta) for the delta mode,
+	 *		e.g. with BangEvent(HashDelta).
+	 */
+	public BangViewModel(
+		@NonNull Application app,
+		@NonNull BangModel<REC, I, M> model,
+		boolean enablePostReady,
+		long msecDelta
+	) {
+		super(app, enablePostReady, ORDER_KEY, msecDelta);
 		this.model = model;
 		listener = new BangModel.Listener<I>() {
 			@Override
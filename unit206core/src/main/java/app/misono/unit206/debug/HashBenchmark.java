@@ -0,0 +1,103 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.debug;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import app.misono.unit206.misc.Murmur3Hash128;
+import app.misono.unit206.misc.Utils;
+import app.misono.unit206.misc.XxHash64;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ *	Micro benchmark of the hash functions. Call from a debug build on a device:
+ *
+ *	<pre>
+ *	Log2.e(TAG, HashBenchmark.run(32, 200000));		// record id size
+ *	Log2.e(TAG, HashBenchmark.run(4096, 2000));		// block size
+ *	</pre>
+ */
+public final class HashBenchmark {
+	private static final int WARMUP = 3;
+
+	private static volatile long sink;
+
+	private HashBenchmark() {
+	}
+
+	/**
+	 *	@return ns/call and MB/s of each function.
+	 */
+	@WorkerThread
+	@NonNull
+	@SuppressWarnings("deprecation")
+	public static String run(int size, int loops) {
+		byte[] b = new byte[size];
+		new Random(size).nextBytes(b);
+		StringBuilder sbName = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			sbName.append((char)('a' + (b[i] & 15)));
+		}
+		String name = sbName.toString();
+		long[] out = new long[2];
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.US, "hash size:%d loops:%d\n", size, loops));
+		for (int i = 0; i <= WARMUP; i++) {
+			boolean print = i == WARMUP;
+			long t0 = System.nanoTime();
+			for (int j = 0; j < loops; j++) {
+				sink += Utils.calcLightLongHash(b, 0, size);
+			}
+			long t1 = System.nanoTime();
+			for (int j = 0; j < loops; j++) {
+				sink += XxHash64.hash(b, 0, size);
+			}
+			long t2 = System.nanoTime();
+			for (int j = 0; j < loops; j++) {
+				Murmur3Hash128.hash(b, 0, size, 0, out);
+				sink += out[0];
+			}
+			long t3 = System.nanoTime();
+			for (int j = 0; j < loops; j++) {
+				sink += Utils.calcLightLongHash(name);
+			}
+			long t4 = System.nanoTime();
+			for (int j = 0; j < loops; j++) {
+				sink += XxHash64.hash(name);
+			}
+			long t5 = System.nanoTime();
+			if (print) {
+				append(sb, "calcLightLongHash(byte[])", t1 - t0, size, loops);
+				append(sb, "XxHash64(byte[])", t2 - t1, size, loops);
+				append(sb, "Murmur3Hash128(byte[])", t3 - t2, size, loops);
+				append(sb, "calcLightLongHash(String)", t4 - t3, size, loops);
+				append(sb, "XxHash64(CharSequence)", t5 - t4, size, loops);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void append(@NonNull StringBuilder sb, @NonNull String name, long nanos, int size, int loops) {
+		double ns = (double)nanos / loops;
+		double mbps = ns != 0 ? size * 1000.0 / ns : 0;
+		sb.append(String.format(Locale.US, "%-28s %10.1f ns %10.1f MB/s\n", name, ns, mbps));
+	}
+
+}
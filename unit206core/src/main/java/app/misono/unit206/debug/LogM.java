@@ -23,50 +23,56 @@ import app.misono.unit206.BuildConfig;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ *	In-memory log. The latest CAPACITY entries are kept until getString(). When full, the oldest
+ *	entries are overwritten, and getString() starts with a "N lines dropped" line.
+ */
 public final class LogM {
 	private static final boolean DEBUG = BuildConfig.DEBUG;
-	private static final SimpleDateFormat form = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+	private static final int CAPACITY = 4096;
 
-	private static StringBuilder sb;
+	private static final LogRing ring = DEBUG ? new LogRing(CAPACITY) : null;
+	private static final AtomicLong dropped = new AtomicLong();
 
 	public static void e(@NonNull String tag, @NonNull String msg) {
 		if (DEBUG) {
-			log(tag, msg);
+			long time = System.currentTimeMillis();
+			for ( ; ; ) {
+				if (ring.put(time, tag, msg)) {
+					break;
+				}
+				dropped.addAndGet(ring.skip(1));
+			}
 		}
 	}
 
-	private static synchronized void log(@NonNull String tag, @NonNull String msg) {
+	@Nullable
+	public static StringBuilder getString() {
 		if (DEBUG) {
-			if (sb == null) {
-				sb = new StringBuilder();
+			StringBuilder rc = new StringBuilder();
+			long n = dropped.getAndSet(0);
+			if (n != 0) {
+				rc.append(n).append(" lines dropped\n");
+			}
+			for ( ; ; ) {
+				if (ring.drain(rc, CAPACITY) == 0) {
+					break;
+				}
 			}
-			sb.append(form.format(new Date()));
-			sb.append(" : ");
-			sb.append(tag);
-			sb.append(": ");
-			sb.append(msg);
-			sb.append("\n");
+			return rc.length() != 0 ? rc : null;
 		}
+		return null;
 	}
 
-	@Nullable
-	public static synchronized StringBuilder getString() {
-		StringBuilder rc = sb;
-		sb = null;
-		return rc;
-	}
-
-	public static synchronized void printStackTrace(@Nullable Throwable e) {
+	public static void printStackTrace(@Nullable Throwable e) {
 		if (DEBUG && e != null) {
 			ByteArrayOutputStream os = new ByteArrayOutputStream();
 			PrintWriter writer = new PrintWriter(os);
 			e.printStackTrace(writer);
 			writer.close();
-			log("", os.toString());
+			e("", os.toString());
 		}
 	}
 
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.debug;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *	Preallocated ring of log entries. put() is lock free and doesn't format nor allocate,
+ *	so any thread can log. The entries are formatted by the consumer in drain().
+ *
+ *	put() drops the entry if the ring is full, and counts it in getDroppedCount().
+ */
+public final class LogRing {
+	private final AtomicLongArray seqs;		// sequence of each slot. pos + 1: published.
+	private final AtomicLong tail;
+	private final AtomicLong dropped;
+	private final long[] times;
+	private final String[] tags;
+	private final String[] msgs;
+	private final int mask;
+
+	// synchronized instance
+	private volatile long head;
+
+	/**
+	 *	@param capacity rounded up to a power of 2.
+	 */
+	public LogRing(int capacity) {
+		int n = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+		mask = n - 1;
+		seqs = new AtomicLongArray(n);
+		for (int i = 0; i < n; i++) {
+			seqs.set(i, i);
+		}
+		tail = new AtomicLong();
+		dropped = new AtomicLong();
+		times = new long[n];
+		tags = new String[n];
+		msgs = new String[n];
+	}
+
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/**
+	 *	@param time 0 to write msg as is, without the time and the tag.
+	 *	@return false if the ring is full.
+	 */
+	@AnyThread
+	public boolean put(long time, @Nullable String tag, @NonNull String msg) {
+		long pos = tail.get();
+		int i;
+		for ( ; ; ) {
+			i = (int)pos & mask;
+			long dif = seqs.get(i) - pos;
+			if (dif == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+				pos = tail.get();
+			} else if (dif < 0) {
+				dropped.incrementAndGet();
+				return false;
+			} else {
+				pos = tail.get();
+			}
+		}
+		times[i] = time;
+		tags[i] = tag;
+		msgs[i] = msg;
+		seqs.lazySet(i, pos + 1);
+		return true;
+	}
+
+	/**
+	 *	@return number of the entries claimed so far. drained entries reach it eventually.
+	 */
+	@AnyThread
+	public long getTail() {
+		return tail.get();
+	}
+
+	/**
+	 *	@return number of the entries drained so far.
+	 */
+	@AnyThread
+	public long getHead() {
+		return head;
+	}
+
+	@AnyThread
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 *	Formats up to max entries in order, "HH:mm:ss.SSS : tag:msg\n", into out.
+	 *
+	 *	@return number of the drained entries.
+	 */
+	@AnyThread
+	public synchronized int drain(@NonNull StringBuilder out, int max) {
+		TimeZone tz = null;
+		long pos = head;
+		int n = 0;
+		for ( ; n < max; n++) {
+			int i = (int)pos & mask;
+			if (seqs.get(i) != pos + 1) {
+				break;
+			}
+			long time = times[i];
+			String tag = tags[i];
+			String msg = msgs[i];
+			tags[i] = null;
+			msgs[i] = null;
+			seqs.lazySet(i, pos + mask + 1);
+			pos++;
+			if (tz == null && time != 0) {
+				tz = TimeZone.getDefault();
+			}
+			appendLine(out, tz, time, tag, msg);
+		}
+		head = pos;
+		return n;
+	}
+
+	/**
+	 *	Frees up to max oldest entries without formatting them, to make room for put().
+	 *
+	 *	@return number of the skipped entries.
+	 */
+	@AnyThread
+	public synchronized int skip(int max) {
+		long pos = head;
+		int n = 0;
+		for ( ; n < max; n++) {
+			int i = (int)pos & mask;
+			if (seqs.get(i) != pos + 1) {
+				break;
+			}
+			tags[i] = null;
+			msgs[i] = null;
+			seqs.lazySet(i, pos + mask + 1);
+			pos++;
+		}
+		head = pos;
+		return n;
+	}
+
+	/**
+	 *	"HH:mm:ss.SSS : tag:msg\n". only msg + "\n" if time is 0.
+	 */
+	static void appendLine(
+		@NonNull StringBuilder out,
+		@Nullable TimeZone tz,
+		long time,
+		@Nullable String tag,
+		@NonNull String msg
+	) {
+		if (time != 0) {
+			appendTime(out, time + tz.getOffset(time));
+			out.append(" : ");
+			if (tag != null) {
+				out.append(tag).append(':');
+			}
+		}
+		out.append(msg).append('\n');
+	}
+
+	/**
+	 *	HH:mm:ss.SSS of the local time.
+	 */
+	private static void appendTime(@NonNull StringBuilder out, long local) {
+		long day = 24L * 60 * 60 * 1000;
+		int msec = (int)(((local % day) + day) % day);
+		append2(out, msec / 3600000);
+		out.append(':');
+		append2(out, msec / 60000 % 60);
+		out.append(':');
+		append2(out, msec / 1000 % 60);
+		out.append('.');
+		int ms = msec % 1000;
+		out.append((char)('0' + ms / 100)).append((char)('0' + ms / 10 % 10)).append((char)('0' + ms % 10));
+	}
+
+	private static void append2(@NonNull StringBuilder out, int v) {
+		out.append((char)('0' + v / 10)).append((char)('0' + v % 10));
+	}
+
+}
@@ -23,65 +23,42 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import app.misono.unit206.BuildConfig;
-import app.misono.unit206.misc.Utils;
-import app.misono.unit206.task.SingletonTask;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.Locale;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 final class LogS {
 	private static final boolean DEBUG = BuildConfig.DEBUG;
-	private static final SimpleDateFormat form = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+	private static final int CAPACITY = 8192;
+	private static final long MAX_BYTES = 8L * 1024 * 1024;
+	private static final int MAX_FILES = 4;
 
-	private static ExecutorService executor;
-	private static SingletonTask thread;
-	private static File file;
+	private static LogWriter writer;
 
 	static void e(@NonNull String tag, @NonNull String msg) {
 		if (DEBUG) {
-			log(tag, msg);
+			getWriter().e(tag, msg);
 		}
 	}
 
-	private static synchronized void log(@NonNull String tag, @NonNull String msg) {
-		if (DEBUG) {
-			if (executor == null) {
-				executor = Executors.newCachedThreadPool();
-				thread = new SingletonTask();
-				Calendar cal = Calendar.getInstance();
-				String fname = String.format(Locale.US, "%04d%02d%02d-%02d%02d%02d.txt", cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DATE), cal.get(Calendar.HOUR_OF_DAY), cal.get(Calendar.MINUTE), cal.get(Calendar.SECOND));
-				String dir;
-				if (19 <= Build.VERSION.SDK_INT) {
-					dir = Environment.DIRECTORY_DOCUMENTS;
-				} else {
-					dir = Environment.DIRECTORY_DOWNLOADS;
-				}
-				file = new File(Environment.getExternalStoragePublicDirectory(dir), fname);
+	@NonNull
+	private static synchronized LogWriter getWriter() {
+		if (writer == null) {
+			Calendar cal = Calendar.getInstance();
+			String fname = String.format(Locale.US, "%04d%02d%02d-%02d%02d%02d.txt", cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1, cal.get(Calendar.DATE), cal.get(Calendar.HOUR_OF_DAY), cal.get(Calendar.MINUTE), cal.get(Calendar.SECOND));
+			String dir;
+			if (19 <= Build.VERSION.SDK_INT) {
+				dir = Environment.DIRECTORY_DOCUMENTS;
+			} else {
+				dir = Environment.DIRECTORY_DOWNLOADS;
 			}
-
-			String s = form.format(new Date()) + " : " + tag + ":" + msg + "\n";
-			thread.call(executor, () -> {
-				FileOutputStream os = null;
-				try {
-					os = new FileOutputStream(file, true);
-					os.write(s.getBytes());
-				} catch (IOException e) {
-					e.printStackTrace();
-				} finally {
-					Utils.closeSafely(os);
-				}
-				return null;
-			});
+			File file = new File(Environment.getExternalStoragePublicDirectory(dir), fname);
+			writer = new LogWriter(file, CAPACITY, MAX_BYTES, MAX_FILES);
 		}
+		return writer;
 	}
 
 	public static void printStackTrace(@Nullable Throwable e) {
@@ -90,7 +67,7 @@ final class LogS {
 			PrintWriter writer = new PrintWriter(os);
 			e.printStackTrace(writer);
 			writer.close();
-			log("", new String(os.toByteArray()));
+			getWriter().e("", new String(os.toByteArray()));
 		}
 	}
 
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.debug;
+
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import app.misono.unit206.callback.CallbackString;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ *	Receives log lines from many LogShipper/LogTcp clients on one selector thread.
+ *	Each complete line is appended to logFile, and passed to the callback without "\n",
+ *	so the lines of the clients are never mixed. A line longer than MAX_LINE is split.
+ */
+public final class LogServer {
+	private static final String TAG = "LogServer";
+	private static final int MAX_LINE = 64 * 1024;
+
+	private final ServerSocketChannel server;
+	private final CallbackString callback;
+	private final Selector selector;
+	private final Thread thread;
+	private final File logFile;
+	private final int port;
+
+	private volatile boolean closed;
+
+	// server thread instance
+	private final ByteBuffer buf;
+	private final ByteBuffer out;		// complete lines to be written
+	private FileOutputStream fos;
+	private FileChannel file;
+
+	private LogServer(
+		@NonNull ServerSocketChannel server,
+		int port,
+		@NonNull File logFile,
+		@Nullable CallbackString callback
+	) throws IOException {
+		this.server = server;
+		this.port = port;
+		this.logFile = logFile;
+		this.callback = callback;
+		selector = Selector.open();
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+		buf = ByteBuffer.allocate(16 * 1024);
+		out = ByteBuffer.allocate(MAX_LINE + 1);
+		thread = new Thread(this::loop, TAG + ":" + port);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 *	Binds one of portStart ... portStart + tries - 1.
+	 *
+	 *	@param callback invoked on the server thread.
+	 */
+	@WorkerThread
+	@NonNull
+	public static LogServer open(
+		@NonNull File logFile,
+		int portStart,
+		int tries,
+		@WorkerThread @Nullable CallbackString callback
+	) throws IOException {
+		IOException last = null;
+		for (int i = 0; i < tries; i++) {
+			ServerSocketChannel ch = ServerSocketChannel.open();
+			try {
+				ch.socket().bind(new InetSocketAddress(portStart + i));
+				return new LogServer(ch, portStart + i, logFile, callback);
+			} catch (IOException e) {
+				ch.close();
+				last = e;
+			}
+		}
+		throw last != null ? last : new IOException("no port...");
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	@AnyThread
+	public void close() {
+		closed = true;
+		selector.wakeup();
+	}
+
+	private void loop() {
+		try {
+			for ( ; !closed; ) {
+				selector.select();
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				for ( ; it.hasNext(); ) {
+					SelectionKey key = it.next();
+					it.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+					} else if (key.isReadable()) {
+						read(key);
+					}
+				}
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "loop: " + e);
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				closeQuietly(key);
+			}
+			try {
+				selector.close();
+				server.close();
+				if (fos != null) {
+					fos.close();
+				}
+			} catch (IOException e) {
+				// nop
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		SocketChannel ch = server.accept();
+		if (ch != null) {
+			ch.configureBlocking(false);
+			ch.register(selector, SelectionKey.OP_READ, new Client());
+		}
+	}
+
+	private void read(@NonNull SelectionKey key) {
+		SocketChannel ch = (SocketChannel)key.channel();
+		Client client = (Client)key.attachment();
+		int len;
+		try {
+			buf.clear();
+			len = ch.read(buf);
+		} catch (IOException e) {
+			len = -1;
+		}
+		if (len < 0) {
+			client.flush(false);
+			writeOut();
+			closeQuietly(key);
+			return;
+		}
+		byte[] b = buf.array();
+		for (int i = 0; i < len; i++) {
+			client.add(b[i]);
+		}
+		writeOut();
+	}
+
+	private void addOut(@NonNull byte[] line, int len) {
+		if (out.remaining() < len + 1) {
+			writeOut();
+		}
+		out.put(line, 0, len);
+		out.put((byte)'\n');
+	}
+
+	private void writeOut() {
+		if (out.position() == 0) {
+			return;
+		}
+		out.flip();
+		try {
+			if (file == null) {
+				fos = new FileOutputStream(logFile, true);
+				file = fos.getChannel();
+			}
+			for ( ; out.hasRemaining(); ) {
+				file.write(out);
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "write: " + e);
+		}
+		out.clear();
+	}
+
+	private static void closeQuietly(@NonNull SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			// nop
+		}
+	}
+
+	/**
+	 *	the partial line of a connection.
+	 */
+	private class Client {
+		private byte[] line;
+		private int len;
+
+		private Client() {
+			line = new byte[256];
+		}
+
+		private void add(byte b) {
+			if (b == '\n') {
+				flush(true);
+				return;
+			}
+			if (len == line.length) {
+				if (len == MAX_LINE) {
+					flush(true);
+				} else {
+					line = Arrays.copyOf(line, Math.min(len * 2, MAX_LINE));
+				}
+			}
+			line[len++] = b;
+		}
+
+		/**
+		 *	@param empty true to pass an empty line too.
+		 */
+		private void flush(boolean empty) {
+			int n = len;
+			if (0 < n && line[n - 1] == '\r') {
+				n--;
+			}
+			if (empty || 0 < len) {
+				addOut(line, n);
+				if (callback != null) {
+					try {
+						callback.callback(new String(line, 0, n, StandardCharsets.UTF_8));
+					} catch (RuntimeException e) {
+						Log.e(TAG, "callback: " + e);
+					}
+				}
+			}
+			len = 0;
+		}
+	}
+
+}
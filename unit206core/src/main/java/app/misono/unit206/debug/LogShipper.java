@@ -0,0 +1,308 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.debug;
+
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.TimeZone;
+
+/**
+ *	Sends log lines to a LogServer without blocking the callers.
+ *
+ *	The lines are kept in a bounded queue, and one daemon thread sends them in batches
+ *	through a non-blocking SocketChannel. When the queue is full, the oldest line is
+ *	dropped and counted in getDroppedCount(). The connection is retried with exponential
+ *	backoff, from MSEC_BACKOFF_MIN to MSEC_BACKOFF_MAX.
+ */
+public final class LogShipper {
+	private static final String TAG = "LogShipper";
+	private static final long MSEC_BACKOFF_MIN = 100;
+	private static final long MSEC_BACKOFF_MAX = 10_000;
+	private static final long MSEC_CONNECT = 1000;
+	private static final int BATCH = 1024;
+
+	private final String host;
+	private final int port;
+	private final Thread thread;
+
+	// synchronized instance
+	private final long[] times;
+	private final String[] tags;
+	private final String[] msgs;
+	private final int mask;
+	private int head, count;
+	private long dropped;
+
+	private volatile Selector selector;
+	private volatile boolean connected, waiting, closed;
+
+	// shipper thread instance
+	private final StringBuilder sb;
+	private final ByteBuffer in;
+	private final long[] bTimes;
+	private final String[] bTags, bMsgs;
+	private SocketChannel channel;
+	private ByteBuffer out;
+	private int nOut;
+	private long backoff, msecNextConnect, msecConnectLimit;
+
+	/**
+	 *	@param capacity number of the lines to keep. rounded up to a power of 2.
+	 */
+	public LogShipper(@NonNull String host, int port, int capacity) {
+		this.host = host;
+		this.port = port;
+		int n = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+		mask = n - 1;
+		times = new long[n];
+		tags = new String[n];
+		msgs = new String[n];
+		sb = new StringBuilder();
+		in = ByteBuffer.allocate(256);
+		bTimes = new long[BATCH];
+		bTags = new String[BATCH];
+		bMsgs = new String[BATCH];
+		backoff = MSEC_BACKOFF_MIN;
+		thread = new Thread(this::loop, TAG + ":" + host + ":" + port);
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	@AnyThread
+	public void e(@Nullable String tag, @NonNull String msg) {
+		synchronized (this) {
+			if (count == mask + 1) {
+				tags[head] = null;
+				msgs[head] = null;
+				head = (head + 1) & mask;
+				count--;
+				dropped++;
+			}
+			int i = (head + count) & mask;
+			times[i] = System.currentTimeMillis();
+			tags[i] = tag;
+			msgs[i] = msg;
+			count++;
+		}
+		if (waiting) {
+			waiting = false;
+			Selector sel = selector;
+			if (sel != null) {
+				sel.wakeup();
+			}
+		}
+	}
+
+	@AnyThread
+	public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 *	@return number of the lines dropped by the full queue or by a broken connection.
+	 */
+	@AnyThread
+	public synchronized long getDroppedCount() {
+		return dropped;
+	}
+
+	@AnyThread
+	public void close() {
+		closed = true;
+		Selector sel = selector;
+		if (sel != null) {
+			sel.wakeup();
+		}
+	}
+
+	private void loop() {
+		try {
+			selector = Selector.open();
+			for ( ; !closed; ) {
+				step();
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "loop: " + e);
+		} finally {
+			disconnect(false);
+			try {
+				if (selector != null) {
+					selector.close();
+				}
+			} catch (IOException e) {
+				// nop
+			}
+		}
+	}
+
+	private void step() throws IOException {
+		long now = System.currentTimeMillis();
+		if (channel == null) {
+			if (now < msecNextConnect) {
+				selector.select(msecNextConnect - now);
+				return;
+			}
+			startConnect();
+			return;
+		}
+		if (connected && (out == null || !out.hasRemaining())) {
+			fill();
+		}
+		SelectionKey key = channel.keyFor(selector);
+		int ops = connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT;
+		if (out != null && out.hasRemaining()) {
+			ops |= SelectionKey.OP_WRITE;
+		}
+		key.interestOps(ops);
+		if (connected && (ops & SelectionKey.OP_WRITE) == 0) {
+			waiting = true;
+			if (hasQueued()) {
+				waiting = false;
+				return;
+			}
+		}
+		if (connected) {
+			selector.select();
+		} else if (msecConnectLimit <= now) {
+			Log.e(TAG, "connect: timeout");
+			disconnect(true);
+			return;
+		} else {
+			selector.select(msecConnectLimit - now);
+		}
+		waiting = false;
+		Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+		for ( ; it.hasNext(); ) {
+			SelectionKey k = it.next();
+			it.remove();
+			try {
+				if (k.isValid() && k.isConnectable()) {
+					channel.finishConnect();
+					onConnected();
+				}
+				if (k.isValid() && k.isReadable()) {
+					in.clear();
+					if (channel.read(in) < 0) {
+						throw new IOException("closed by server");
+					}
+				}
+				if (k.isValid() && k.isWritable()) {
+					channel.write(out);
+				}
+			} catch (IOException e) {
+				Log.e(TAG, "step: " + e);
+				disconnect(true);
+				return;
+			}
+		}
+	}
+
+	private void startConnect() {
+		try {
+			msecConnectLimit = System.currentTimeMillis() + MSEC_CONNECT;
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			if (channel.connect(new InetSocketAddress(host, port))) {
+				channel.register(selector, SelectionKey.OP_READ);
+				onConnected();
+			} else {
+				channel.register(selector, SelectionKey.OP_CONNECT);
+			}
+		} catch (IOException | RuntimeException e) {
+			Log.e(TAG, "connect: " + e);
+			disconnect(true);
+		}
+	}
+
+	private void onConnected() {
+		connected = true;
+		backoff = MSEC_BACKOFF_MIN;
+	}
+
+	/**
+	 *	@param retry true to connect again after the backoff.
+	 */
+	private void disconnect(boolean retry) {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// nop
+			}
+			channel = null;
+		}
+		connected = false;
+		if (out != null && out.hasRemaining()) {
+			synchronized (this) {
+				dropped += nOut;
+			}
+		}
+		out = null;
+		nOut = 0;
+		if (retry) {
+			msecNextConnect = System.currentTimeMillis() + backoff;
+			backoff = Math.min(backoff * 2, MSEC_BACKOFF_MAX);
+		}
+	}
+
+	private synchronized boolean hasQueued() {
+		return count != 0;
+	}
+
+	/**
+	 *	coalesces up to BATCH queued lines into out. formats them out of the lock.
+	 */
+	private void fill() {
+		int n = 0;
+		synchronized (this) {
+			for ( ; count != 0 && n < BATCH; n++) {
+				bTimes[n] = times[head];
+				bTags[n] = tags[head];
+				bMsgs[n] = msgs[head];
+				tags[head] = null;
+				msgs[head] = null;
+				head = (head + 1) & mask;
+				count--;
+			}
+		}
+		if (n != 0) {
+			sb.setLength(0);
+			TimeZone tz = TimeZone.getDefault();
+			for (int i = 0; i < n; i++) {
+				LogRing.appendLine(sb, tz, bTimes[i], bTags[i], bMsgs[i]);
+				bTags[i] = null;
+				bMsgs[i] = null;
+			}
+			out = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+			nOut = n;
+		}
+	}
+
+}
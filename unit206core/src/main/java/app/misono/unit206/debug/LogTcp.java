@@ -1,34 +1,30 @@
 package app.misono.unit206.debug;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import app.misono.unit206.callback.CallbackString;
-import app.misono.unit206.misc.Utils;
 import app.misono.unit206.task.Taskz;
 
 import com.google.android.gms.tasks.Task;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketAddress;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.io.IOException;
 
+/**
+ * Network log. e() only queues the line, and LogShipper sends it in background.
+ */
 public class LogTcp {
-	private static final SimpleDateFormat form = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+	private static final int CAPACITY = 8192;
+	private static final int PORT_TRIES = 10;
+	private static final long MSEC_CONNECT = 1000;
 
 	/**
 	 * server function.
-	 * @return	server port number.
+	 * @param callback	invoked for each line, without "\n".
+	 * @return	server port number. -1 if failed.
 	 */
 	@NonNull
 	public static Task<Integer> startLogServer(
@@ -37,112 +33,84 @@ public class LogTcp {
 		@WorkerThread @Nullable CallbackString callback
 	) {
 		return Taskz.call(Taskz.getExecutor(), () -> {
-			int portServer = portServerStart;
-			boolean success = false;
-			for (int i = 0; i < 10; i++) {
-				try {
-					ServerSocket serverSocket = new ServerSocket(portServer);
-					Taskz.call(Taskz.getExecutor(), () -> {
-						for ( ; ; ) {
-							Socket socket = serverSocket.accept();
-							Taskz.call(Taskz.getExecutor(), () -> {
-								byte[] b = new byte[1024 * 1024];
-								try (
-									InputStream is = socket.getInputStream();
-									BufferedInputStream bis = new BufferedInputStream(is);
-									FileOutputStream fos = new FileOutputStream(logFile, true);
-								) {
-									for ( ; ; ) {
-										int len = bis.read(b);
-										fos.write(b, 0, len);
-										if (callback != null) {
-											String s = new String(b, 0, len);	// TODO: \nで callbackにする
-											callback.callback(s);
-										}
-									}
-								} finally {
-									Utils.closeSafely(socket);
-								}
-//								return null;
-							}).addOnFailureListener(Taskz::printStackTrace2);
-						}
-//						return null;
-					}).addOnFailureListener(Taskz::printStackTrace2);
-				} catch (Exception e) {
-					portServer++;
-					continue;
-				}
-				success = true;
-				break;
-			}
-			if (success) {
-				return portServer;
-			} else {
+			try {
+				return LogServer.open(logFile, portServerStart, PORT_TRIES, callback).getPort();
+			} catch (IOException e) {
 				return -1;
 			}
 		});
 	}
 
-	private static Socket soc = null;
+	private static volatile LogShipper shipper = null;
 	private static String hostServer = null;
-	private static boolean firstTime = true;
 	private static int portServer = 0;
 
-	public static void setServerHost(@NonNull String hostServer, int portServer) {
+	public static synchronized void setServerHost(@NonNull String hostServer, int portServer) {
 		LogTcp.hostServer = hostServer;
 		LogTcp.portServer = portServer;
+		if (shipper != null) {
+			shipper.close();
+			shipper = null;
+		}
 	}
 
 	/**
-	 * Connect to the log server.
+	 * Waits for the connection to the log server, up to 1 sec.
 	 * client function.
 	 */
 	@WorkerThread
 	public static void connect() throws Exception {
-		try {
-			if (soc != null) {
-				Utils.closeSafely(soc);
+		LogShipper s = getShipper();
+		if (s == null) {
+			throw new IllegalStateException("setServerHost() first...");
+		}
+		long limit = System.currentTimeMillis() + MSEC_CONNECT;
+		for ( ; !s.isConnected(); ) {
+			if (limit <= System.currentTimeMillis()) {
+				throw new IOException("not connected...");
 			}
-			soc = new Socket();
-			SocketAddress server = new InetSocketAddress(hostServer, portServer);
-			soc.connect(server, 1000);
-		} catch (Exception e) {
-			Utils.closeSafely(soc);
-			soc = null;
-			throw e;
+			Thread.sleep(10);
 		}
 	}
 
 	public static boolean isConnectedToServer() {
-		return soc != null;
+		LogShipper s = shipper;
+		return s != null && s.isConnected();
+	}
+
+	/**
+	 * @return number of the lines dropped by the full queue or by a broken connection.
+	 */
+	public static long getDroppedCount() {
+		LogShipper s = shipper;
+		return s != null ? s.getDroppedCount() : 0;
 	}
 
 	/**
-	 * log output.
+	 * log output. never blocks.
 	 * client function.
 	 */
-	@WorkerThread
-	public static synchronized void e(@NonNull String tag, @NonNull String msg) {
-		if (firstTime) {
-			firstTime = false;
-			try {
-				connect();
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+	@AnyThread
+	public static void e(@NonNull String tag, @NonNull String msg) {
+		LogShipper s = getShipper();
+		if (s != null) {
+			s.e(tag, msg);
 		}
-		if (soc != null) {
-			try {
-				OutputStream os = soc.getOutputStream();
-				String s = form.format(new Date()) + " : " + tag + " : " + msg + "\n";
-				os.write(s.getBytes());
-			} catch (Exception e) {
-				e.printStackTrace();
-				Utils.closeSafely(soc);
-				soc = null;
+		Log2.e(tag, msg);
+	}
+
+	@Nullable
+	private static LogShipper getShipper() {
+		LogShipper s = shipper;
+		if (s == null) {
+			synchronized (LogTcp.class) {
+				if (shipper == null && hostServer != null) {
+					shipper = new LogShipper(hostServer, portServer, CAPACITY);
+				}
+				s = shipper;
 			}
 		}
-		Log2.e(tag, msg);
+		return s;
 	}
 
 }
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.debug;
+
+import android.util.Log;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *	Log file writer. The callers only put entries into a LogRing, and one daemon thread
+ *	writes them in batches through one open channel. The thread parks while the ring is
+ *	empty, and the first put() wakes it up.
+ *
+ *	When the file exceeds maxBytes, it's renamed to name.1.ext (name.1.ext to name.2.ext, ...)
+ *	and a new file is started. At most maxFiles files are kept.
+ */
+public final class LogWriter {
+	private static final String TAG = "LogWriter";
+	private static final int BATCH = 512;
+
+	private final LogRing ring;
+	private final Thread thread;
+	private final Object lock;
+	private final File file;
+	private final long maxBytes;
+	private final int maxFiles;
+
+	// synchronized instance
+	private volatile long written;
+	private volatile int generation;		// incremented by rotation or clear.
+	private volatile boolean clearing;
+	private volatile boolean idle;
+
+	// writer thread instance
+	private final StringBuilder sb;
+	private FileOutputStream os;
+	private FileChannel channel;
+	private long size;
+
+	public LogWriter(@NonNull File file, int capacity, long maxBytes, int maxFiles) {
+		this.file = file;
+		this.maxBytes = maxBytes;
+		this.maxFiles = Math.max(1, maxFiles);
+		ring = new LogRing(capacity);
+		lock = new Object();
+		sb = new StringBuilder();
+		thread = new Thread(this::loop, TAG + ":" + file.getName());
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	@AnyThread
+	public void e(@Nullable String tag, @NonNull String msg) {
+		put(System.currentTimeMillis(), tag, msg);
+	}
+
+	/**
+	 *	writes msg + "\n" without the time.
+	 */
+	@AnyThread
+	public void raw(@NonNull String msg) {
+		put(0, null, msg);
+	}
+
+	private void put(long time, @Nullable String tag, @NonNull String msg) {
+		if (ring.put(time, tag, msg) && idle) {
+			idle = false;
+			LockSupport.unpark(thread);
+		}
+	}
+
+	@NonNull
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 *	@return the files from the oldest.
+	 */
+	@NonNull
+	public File[] getFiles() {
+		File[] rc = new File[maxFiles];
+		for (int i = 0; i < maxFiles; i++) {
+			rc[i] = getRotated(maxFiles - 1 - i);
+		}
+		return rc;
+	}
+
+	/**
+	 *	@return changed when the file was rotated or cleared.
+	 */
+	@AnyThread
+	public int getGeneration() {
+		return generation;
+	}
+
+	@AnyThread
+	public long getDroppedCount() {
+		return ring.getDroppedCount();
+	}
+
+	/**
+	 *	Waits until the entries put before are written.
+	 *
+	 *	@return false if timed out.
+	 */
+	@WorkerThread
+	public boolean flush(long msecTimeout) throws InterruptedException {
+		long target = ring.getTail();
+		long limit = System.currentTimeMillis() + msecTimeout;
+		LockSupport.unpark(thread);
+		synchronized (lock) {
+			for ( ; written < target; ) {
+				long msec = limit - System.currentTimeMillis();
+				if (msec <= 0) {
+					return false;
+				}
+				lock.wait(msec);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 *	Deletes all of the files after writing the entries put before.
+	 */
+	@AnyThread
+	public void clear() {
+		clearing = true;
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 *	@return all of the files from the oldest.
+	 */
+	@WorkerThread
+	@NonNull
+	public String readAll() throws IOException {
+		StringBuilder rc = new StringBuilder();
+		for (File f : getFiles()) {
+			if (f.exists()) {
+				rc.append(readFile(f));
+			}
+		}
+		return rc.toString();
+	}
+
+	@NonNull
+	private static String readFile(@NonNull File f) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
+			byte[] b = new byte[(int)raf.length()];
+			raf.readFully(b);
+			return new String(b, StandardCharsets.UTF_8);
+		}
+	}
+
+	private void loop() {
+		for ( ; ; ) {
+			sb.setLength(0);
+			int n = ring.drain(sb, BATCH);
+			if (n != 0) {
+				write(sb);
+			}
+			if (n < BATCH && clearing) {
+				clearing = false;
+				deleteFiles();
+			}
+			written = ring.getHead();
+			synchronized (lock) {
+				lock.notifyAll();
+			}
+			if (n < BATCH) {
+				// idle is set before the tail is read, and put() reads idle after claiming
+				// the tail, so either this sees the entry or put() sees idle.
+				idle = true;
+				if (ring.getTail() == ring.getHead() && !clearing) {
+					LockSupport.park(this);
+				} else if (n == 0) {
+					Thread.yield();		// claimed but not published yet.
+				}
+				idle = false;
+			}
+		}
+	}
+
+	private void write(@NonNull CharSequence s) {
+		ByteBuffer buf = ByteBuffer.wrap(s.toString().getBytes(StandardCharsets.UTF_8));
+		try {
+			if (channel == null) {
+				open();
+			}
+			for ( ; buf.hasRemaining(); ) {
+				channel.write(buf);
+			}
+			size += buf.limit();
+			if (maxBytes <= size) {
+				rotate();
+			}
+		} catch (IOException e) {
+			Log.e(TAG, "write: " + file + " " + e);
+			close();
+		}
+	}
+
+	private void open() throws IOException {
+		os = new FileOutputStream(file, true);
+		channel = os.getChannel();
+		size = channel.size();
+	}
+
+	private void close() {
+		try {
+			if (os != null) {
+				os.close();
+			}
+		} catch (IOException e) {
+			// nop
+		}
+		os = null;
+		channel = null;
+		size = 0;
+	}
+
+	private void rotate() {
+		close();
+		getRotated(maxFiles - 1).delete();
+		for (int i = maxFiles - 2; 0 <= i; i--) {
+			File f = getRotated(i);
+			if (f.exists()) {
+				f.renameTo(getRotated(i + 1));
+			}
+		}
+		generation++;
+	}
+
+	private void deleteFiles() {
+		close();
+		for (int i = 0; i < maxFiles; i++) {
+			getRotated(i).delete();
+		}
+		generation++;
+	}
+
+	/**
+	 *	@param i 0 for the current file.
+	 */
+	@NonNull
+	private File getRotated(int i) {
+		if (i == 0) {
+			return file;
+		}
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		String rotated = dot <= 0 ? name + "." + i : name.substring(0, dot) + "." + i + name.substring(dot);
+		return new File(file.getParentFile(), rotated);
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.debug;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import app.misono.unit206.sound.PolyphaseResampler;
+import app.misono.unit206.sound.ResamplerFloat;
+
+import java.util.Locale;
+
+/**
+ *	Quality and throughput of the resamplers. Call from a debug build on a device:
+ *
+ *	<pre>
+ *	Log2.e(TAG, ResamplerBenchmark.run(48000, 16000, 480, 10));		// mic to ASR, 10msec blocks
+ *	</pre>
+ *
+ *	snr: a tone at 1/8 of the lower rate against the ideal tone at outHz, in dB.
+ *	alias: a tone at 3/4 of inHz/2, which must be removed if outHz < inHz, in dB of the input.
+ */
+public final class ResamplerBenchmark {
+	private static final int WARMUP = 3;
+
+	private static volatile float sink;
+
+	private ResamplerBenchmark() {
+	}
+
+	/**
+	 *	@param block input frames of each call.
+	 *	@param seconds length of the signal.
+	 */
+	@WorkerThread
+	@NonNull
+	public static String run(int inHz, int outHz, int block, int seconds) {
+		int nIn = inHz * seconds;
+		double freq = Math.min(inHz, outHz) / 8.0;
+		float[] tone = createTone(inHz, freq, nIn);
+		float[] alias = createTone(inHz, inHz * 3 / 8.0, nIn);
+		int nOut = (int)((long)nIn * outHz / inHz) + block;
+		float[] out = new float[nOut + 1024];
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.US, "resample %d -> %d block:%d seconds:%d\n", inHz, outHz, block, seconds));
+		String[] names = { "linear", "polyphase low", "polyphase medium", "polyphase high" };
+		for (int k = 0; k < names.length; k++) {
+			long nanos = 0;
+			int n = 0;
+			for (int i = 0; i <= WARMUP; i++) {
+				long t0 = System.nanoTime();
+				n = run(k, inHz, outHz, tone, block, out);
+				nanos = System.nanoTime() - t0;
+			}
+			double snr = snr(out, n, outHz, freq);
+			int m = run(k, inHz, outHz, alias, block, out);
+			double leak = outHz < inHz ? 10 * Math.log10(power(out, m) / 0.5) : Double.NaN;
+			double msps = (double)nIn * 1000 / nanos;
+			sb.append(String.format(Locale.US, "%-18s snr:%7.1f dB alias:%7.1f dB %8.2f Msample/s\n", names[k], snr, leak, msps));
+		}
+		return sb.toString();
+	}
+
+	private static int run(int kind, int inHz, int outHz, @NonNull float[] in, int block, @NonNull float[] out) {
+		int n = 0;
+		if (kind == 0) {
+			ResamplerFloat r = new ResamplerFloat();
+			float pitch = (float)inHz / outHz;
+			for (int i = 0; i < in.length; i += block) {
+				n += r.resample(pitch, in, i, Math.min(block, in.length - i), out, n, out.length - n);
+			}
+		} else {
+			PolyphaseResampler r = new PolyphaseResampler(inHz, outHz, 1, kind - 1);
+			for (int i = 0; i < in.length; i += block) {
+				n += r.resample(in, i, Math.min(block, in.length - i), out, n, out.length - n);
+			}
+		}
+		sink += out[n / 2];
+		return n;
+	}
+
+	@NonNull
+	private static float[] createTone(int hz, double freq, int n) {
+		float[] rc = new float[n];
+		for (int i = 0; i < n; i++) {
+			rc[i] = (float)Math.sin(2 * Math.PI * freq * i / hz);
+		}
+		return rc;
+	}
+
+	/**
+	 *	skips the both ends, where the filter sees the silence.
+	 */
+	private static double snr(@NonNull float[] out, int n, int hz, double freq) {
+		double signal = 0;
+		double noise = 0;
+		for (int i = 100; i < n - 100; i++) {
+			double ideal = Math.sin(2 * Math.PI * freq * i / hz);
+			double d = out[i] - ideal;
+			signal += ideal * ideal;
+			noise += d * d;
+		}
+		return 10 * Math.log10(signal / Math.max(noise, 1e-30));
+	}
+
+	private static double power(@NonNull float[] out, int n) {
+		double sum = 0;
+		for (int i = 100; i < n - 100; i++) {
+			sum += out[i] * out[i];
+		}
+		return sum / Math.max(1, n - 200);
+	}
+
+}
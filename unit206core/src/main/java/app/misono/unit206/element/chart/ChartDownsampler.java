@@ -0,0 +1,93 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.element.chart;
+
+import androidx.annotation.NonNull;
+
+/**
+ *	Downsampling of x0, y0, x1, y1, ... points.
+ */
+public final class ChartDownsampler {
+	private ChartDownsampler() {
+	}
+
+	/**
+	 *	Largest-Triangle-Three-Buckets. Keeps the first and the last points, and picks the
+	 *	point of the largest triangle from each bucket between them.
+	 *
+	 *	@param from index of the first point.
+	 *	@param to index of the last point + 1.
+	 *	@param threshold number of the points to pick. all points if 3 > threshold or to - from <= threshold.
+	 *	@param out indices of the picked points. threshold or more length.
+	 *	@return number of the picked points.
+	 */
+	public static int lttb(@NonNull float[] points, int from, int to, int threshold, @NonNull int[] out) {
+		int n = to - from;
+		if (n <= 0) {
+			return 0;
+		}
+		if (threshold < 3 || n <= threshold) {
+			for (int i = 0; i < n; i++) {
+				out[i] = from + i;
+			}
+			return n;
+		}
+		double every = (double)(n - 2) / (threshold - 2);
+		int count = 0;
+		int a = from;
+		out[count++] = a;
+		for (int i = 0; i < threshold - 2; i++) {
+			// average of the next bucket
+			int avgStart = from + (int)((i + 1) * every) + 1;
+			int avgEnd = Math.min(from + (int)((i + 2) * every) + 1, to);
+			double avgX = 0;
+			double avgY = 0;
+			for (int j = avgStart; j < avgEnd; j++) {
+				avgX += points[j * 2];
+				avgY += points[j * 2 + 1];
+			}
+			int avgLen = avgEnd - avgStart;
+			if (avgLen == 0) {
+				avgX = points[(to - 1) * 2];
+				avgY = points[(to - 1) * 2 + 1];
+			} else {
+				avgX /= avgLen;
+				avgY /= avgLen;
+			}
+
+			// this bucket
+			int start = from + (int)(i * every) + 1;
+			int end = from + (int)((i + 1) * every) + 1;
+			double ax = points[a * 2];
+			double ay = points[a * 2 + 1];
+			double max = -1;
+			int next = start;
+			for (int j = start; j < end; j++) {
+				double area = Math.abs((ax - avgX) * (points[j * 2 + 1] - ay) - (ax - points[j * 2]) * (avgY - ay));
+				if (max < area) {
+					max = area;
+					next = j;
+				}
+			}
+			out[count++] = next;
+			a = next;
+		}
+		out[count++] = to - 1;
+		return count;
+	}
+
+}
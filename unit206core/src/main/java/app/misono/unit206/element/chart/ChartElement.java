@@ -23,11 +23,12 @@ import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.RectF;
 import android.view.View;
-import android.widget.FrameLayout;
 import android.widget.ImageView;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.appcompat.widget.AppCompatImageView;
 
 import app.misono.unit206.debug.Log2;
@@ -35,24 +36,51 @@ import app.misono.unit206.element.Element;
 import app.misono.unit206.misc.TextMeasure;
 import app.misono.unit206.misc.UnitPref;
 import app.misono.unit206.misc.Utils;
+import app.misono.unit206.task.Taskz;
 
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ *	Line chart rendered off the UI thread into two reused bitmaps.
+ *
+ *	Each line is downsampled to the pixel width (DOWNSAMPLE_MINMAX: first/min/max/last of
+ *	each pixel column, which draws the same pixels as all of the points). Points appended to
+ *	a ChartSeries are drawn by updateChart() onto the previous bitmap, without redrawing the
+ *	older points. The texts are drawn over the bitmap by the view.
+ */
 public class ChartElement implements Element {
 	private static final String TAG = "ChartElement";
+	private static final int SEGMENTS = 1024;
+
+	public static final int DOWNSAMPLE_OFF = 0;
+	public static final int DOWNSAMPLE_MINMAX = 1;
+	public static final int DOWNSAMPLE_LTTB = 2;
 
-	private final AppCompatImageView base;
-	private final List<LineChart> listLine;
+	private final ChartView base;
+	private final List<ChartSeries> listLine;
 	private final List<Axis> listAxisX, listAxisY;
 	private final List<Text> listText;
+	private final Paint paintText;
 
 	private RectF axis, perRect;
+	private Buffer front, back;
+	private boolean dirty, rendering, pending;
 	private int wView, hView;
 	private int colorBg;
+	private int downsample;
+	private int generation;
+
+	// task1 instance
+	private final Paint paintLine, paintAxis;
+	private float[] segs;
+	private int[] picked;
+	private int nSegs;
+	private float xPrev, yPrev;
+	private boolean hasPrev;
 
 	public ChartElement(@NonNull Context context) {
-		base = new AppCompatImageView(context);
+		base = new ChartView(context);
 		base.setAdjustViewBounds(true);
 		base.setScaleType(ImageView.ScaleType.FIT_CENTER);
 		listLine = new ArrayList<>();
@@ -60,23 +88,45 @@ public class ChartElement implements Element {
 		listAxisY = new ArrayList<>();
 		listText = new ArrayList<>();
 		colorBg = Color.WHITE;
+		downsample = DOWNSAMPLE_MINMAX;
+		front = new Buffer();
+		back = new Buffer();
+		paintText = new Paint();
+		paintText.setAntiAlias(true);
+		paintLine = new Paint();
+		paintAxis = new Paint();
+		paintAxis.setAntiAlias(true);
+		segs = new float[SEGMENTS * 4];
+		picked = new int[0];
 	}
 
 	public void setBackgroundColor(int color) {
 		colorBg = color;
+		dirty = true;
+	}
+
+	/**
+	 *	@param downsample DOWNSAMPLE_MINMAX(default), DOWNSAMPLE_LTTB, or DOWNSAMPLE_OFF.
+	 */
+	public void setDownsample(int downsample) {
+		this.downsample = downsample;
+		dirty = true;
 	}
 
 	public void clearLineChart() {
 		listLine.clear();
+		dirty = true;
 	}
 
 	public void clearAxis() {
 		listAxisX.clear();
 		listAxisY.clear();
+		dirty = true;
 	}
 
 	public void clearText() {
 		listText.clear();
+		base.invalidate();
 	}
 
 	public void clearAll() {
@@ -93,7 +143,8 @@ public class ChartElement implements Element {
 		@NonNull RectF axis,
 		@NonNull RectF perRect
 	) {
-		listLine.add(new LineChart(color, pxStroke, points, axis, perRect));
+		listLine.add(new ChartSeries(color, pxStroke, points, axis, perRect));
+		dirty = true;
 	}
 
 	public void addLineChart(
@@ -101,16 +152,32 @@ public class ChartElement implements Element {
 		int pxStroke,
 		@NonNull float[] points
 	) {
-		listLine.add(new LineChart(color, pxStroke, points, axis, perRect));
+		listLine.add(new ChartSeries(color, pxStroke, points, axis, perRect));
+		dirty = true;
+	}
+
+	/**
+	 *	@return empty line on the current axis. append points and call updateChart().
+	 */
+	@NonNull
+	public ChartSeries addSeries(int color, int pxStroke) {
+		if (axis == null || perRect == null) {
+			throw new IllegalStateException("setAxis() first...");
+		}
+		ChartSeries rc = new ChartSeries(color, pxStroke, axis, perRect);
+		listLine.add(rc);
+		return rc;
 	}
 
 	public void addText(@NonNull String text, float perX, float perY, float perSizeY, int color) {
 		listText.add(new Text(text, perX, perY, perSizeY, color));
+		base.invalidate();
 	}
 
 	public void setAxis(@NonNull RectF axis, @NonNull RectF perRect) {
 		this.axis = axis;
 		this.perRect = perRect;
+		dirty = true;
 	}
 
 	public void addAxisX(
@@ -120,6 +187,7 @@ public class ChartElement implements Element {
 		float yAxis
 	) {
 		listAxisX.add(new Axis(color, pxStroke, listText, yAxis));
+		dirty = true;
 	}
 
 	public void addAxisX(
@@ -128,6 +196,7 @@ public class ChartElement implements Element {
 		float yAxis
 	) {
 		listAxisX.add(new Axis(color, pxStroke, null, yAxis));
+		dirty = true;
 	}
 
 	public void addAxisY(
@@ -137,6 +206,7 @@ public class ChartElement implements Element {
 		float xAxis
 	) {
 		listAxisY.add(new Axis(color, pxStroke, listText, xAxis));
+		dirty = true;
 	}
 
 	public void addAxisY(
@@ -145,24 +215,27 @@ public class ChartElement implements Element {
 		float xAxis
 	) {
 		listAxisY.add(new Axis(color, pxStroke, null, xAxis));
+		dirty = true;
 	}
 
-	private void drawText(@NonNull Canvas canvas) {
-		Paint paint = new Paint();
-		paint.setAntiAlias(true);
+	private void drawText(@NonNull Canvas canvas, int wView, int hView) {
 		for (Text t : listText) {
 			float x = wView * t.perX;
 			float y = hView * t.perY;
 			float size = hView * t.perSizeY;
-			paint.setTextSize(size);
-			paint.setColor(t.color);
-			canvas.drawText(t.text, x, y, paint);
+			paintText.setTextSize(size);
+			paintText.setColor(t.color);
+			canvas.drawText(t.text, x, y, paintText);
 		}
 	}
 
-	private void drawAxis(@NonNull Canvas canvas) {
-		Paint paint = new Paint();
-		paint.setAntiAlias(true);
+	@WorkerThread
+	private void drawAxis(@NonNull Canvas canvas, @NonNull Frame f) {
+		Paint paint = paintAxis;
+		int wView = f.wView;
+		int hView = f.hView;
+		RectF axis = f.axis;
+		RectF perRect = f.perRect;
 		float wPixel = wView * perRect.width();
 		float hPixel = hView * perRect.height();
 		float wAxis = axis.width();
@@ -173,7 +246,7 @@ public class ChartElement implements Element {
 		float xBase1 = wView * perRect.right;
 		float yBase0 = hView * perRect.top;
 		float yBase1 = hView * perRect.bottom;
-		for (Axis xAxis : listAxisX) {
+		for (Axis xAxis : f.listAxisX) {
 			paint.setColor(xAxis.color);
 			paint.setStrokeWidth(xAxis.pxStroke);
 			float y = yBase0 + hPixel - (xAxis.axisOther - axis.top) * scaleY;
@@ -183,7 +256,7 @@ public class ChartElement implements Element {
 				// TODO:
 			}
 		}
-		for (Axis yAxis : listAxisY) {
+		for (Axis yAxis : f.listAxisY) {
 			paint.setColor(yAxis.color);
 			paint.setStrokeWidth(yAxis.pxStroke);
 			float x = xBase0 + (yAxis.axisOther - axis.left) * scaleX;
@@ -203,44 +276,228 @@ public class ChartElement implements Element {
 		}
 	}
 
+	/**
+	 *	Redraws everything in background.
+	 */
+	@MainThread
 	public void drawChart() {
-		if (wView != 0 && hView != 0 && axis != null && perRect != null) {
-			log("drawChart: wView:" + wView + " hView:" + hView);
-			Bitmap bitmap = Bitmap.createBitmap(wView, hView, Bitmap.Config.ARGB_8888);
-			bitmap.eraseColor(colorBg);
-			Canvas canvas = new Canvas(bitmap);
-			drawAxis(canvas);
-			log("nListLine:" + listLine.size());
-			for (LineChart line : listLine) {
-				RectF perRect = line.perRect;
-				float wPixel = wView * perRect.width();
-				float hPixel = hView * perRect.height();
-				float[] points = line.points;
-				int n = points.length / 2;
-				int xyLen = (n - 1) * 4;
-				float[] xy = new float[xyLen];
-				RectF axis = line.axis;
-				float wAxis = axis.width();
-				float hAxis = axis.height();
-				float scaleX = wPixel / wAxis;
-				float scaleY = hPixel / hAxis;
-				float xBase = wView * perRect.left;
-				float yBase = hView * perRect.top;
-				int idx = 0;
-				for (int i = 0; i < n; i++) {
-					float x = xBase + (points[i * 2] - axis.left) * scaleX;
-					float y = yBase + hPixel - (points[i * 2 + 1] - axis.top) * scaleY;
-					xy[idx++] = x;
-					xy[idx++] = y;
-					if (i != 0 && idx < xyLen) {
-						xy[idx++] = x;
-						xy[idx++] = y;
-					}
+		dirty = true;
+		requestRender();
+	}
+
+	/**
+	 *	Draws the points appended to the ChartSeries since the last drawing. Redraws
+	 *	everything if the chart was changed.
+	 */
+	@MainThread
+	public void updateChart() {
+		requestRender();
+	}
+
+	@MainThread
+	private void requestRender() {
+		if (wView == 0 || hView == 0 || axis == null || perRect == null) {
+			return;
+		}
+		if (rendering) {
+			pending = true;
+			return;
+		}
+		rendering = true;
+		pending = false;
+		if (dirty) {
+			dirty = false;
+			generation++;
+		}
+		Frame f = new Frame(this);
+		Buffer buf = back;
+		Taskz.call(Taskz.LANE_CPU, () -> {
+			render(buf, f);
+			return buf;
+		}).addOnCompleteListener(task -> {
+			rendering = false;
+			if (task.isSuccessful()) {
+				back = front;
+				front = buf;
+				base.setImageBitmap(buf.bitmap);
+			} else {
+				Taskz.printStackTrace2(task.getException());
+			}
+			if (pending) {
+				requestRender();
+			}
+		});
+	}
+
+	/**
+	 *	redraws only the new points if buf has drew all the lines of f before.
+	 */
+	@WorkerThread
+	private void render(@NonNull Buffer buf, @NonNull Frame f) {
+		boolean full = buf.generation != f.generation || f.series.length < buf.series.length;
+		for (int i = 0; !full && i < buf.series.length; i++) {
+			full = buf.series[i] != f.series[i];
+		}
+		buf.generation = -1;
+		Bitmap bitmap = buf.bitmap;
+		if (bitmap == null || bitmap.getWidth() != f.wView || bitmap.getHeight() != f.hView) {
+			bitmap = Bitmap.createBitmap(f.wView, f.hView, Bitmap.Config.ARGB_8888);
+			buf.bitmap = bitmap;
+			buf.canvas.setBitmap(bitmap);
+			full = true;
+		}
+		Canvas canvas = buf.canvas;
+		if (full) {
+			log("render: wView:" + f.wView + " hView:" + f.hView + " nListLine:" + f.series.length);
+			bitmap.eraseColor(f.colorBg);
+			drawAxis(canvas, f);
+		}
+		int n = f.series.length;
+		for (int i = 0; i < n; i++) {
+			int from = !full && i < buf.drawn.length ? Math.max(buf.drawn[i] - 1, 0) : 0;
+			drawSeries(canvas, f, f.series[i], from, f.sizes[i]);
+		}
+		buf.generation = f.generation;
+		buf.series = f.series;
+		buf.drawn = f.sizes;
+	}
+
+	@WorkerThread
+	private void drawSeries(@NonNull Canvas canvas, @NonNull Frame f, @NonNull ChartSeries line, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		float[] points = line.getPoints();		// at least to * 2 length, with the same points.
+		RectF perRect = line.perRect;
+		RectF axis = line.axis;
+		float wPixel = f.wView * perRect.width();
+		float hPixel = f.hView * perRect.height();
+		float scaleX = wPixel / axis.width();
+		float scaleY = hPixel / axis.height();
+		float xBase = f.wView * perRect.left - axis.left * scaleX;
+		float yBase = f.hView * perRect.top + hPixel + axis.top * scaleY;
+		paintLine.setColor(line.color);
+		paintLine.setStrokeWidth(line.pxStroke);
+		nSegs = 0;
+		hasPrev = false;
+		switch (f.downsample) {
+		case DOWNSAMPLE_MINMAX:
+			drawMinMax(canvas, points, from, to, xBase, scaleX, yBase, scaleY);
+			break;
+		case DOWNSAMPLE_LTTB:
+			float x0 = xBase + points[from * 2] * scaleX;
+			float x1 = xBase + points[(to - 1) * 2] * scaleX;
+			int threshold = Math.max(3, (int)Math.abs(x1 - x0) * 2 + 2);
+			if (picked.length < threshold) {
+				picked = new int[threshold];
+			}
+			int m = ChartDownsampler.lttb(points, from, to, threshold, picked);
+			for (int i = 0; i < m; i++) {
+				int j = picked[i];
+				addPoint(canvas, xBase + points[j * 2] * scaleX, yBase - points[j * 2 + 1] * scaleY);
+			}
+			break;
+		default:
+			for (int j = from; j < to; j++) {
+				addPoint(canvas, xBase + points[j * 2] * scaleX, yBase - points[j * 2 + 1] * scaleY);
+			}
+			break;
+		}
+		flushSegments(canvas);
+	}
+
+	/**
+	 *	keeps the first, the min, the max and the last point of each run of the points
+	 *	in the same pixel column, in the original order.
+	 */
+	@WorkerThread
+	private void drawMinMax(
+		@NonNull Canvas canvas,
+		@NonNull float[] points,
+		int from,
+		int to,
+		float xBase,
+		float scaleX,
+		float yBase,
+		float scaleY
+	) {
+		int col = 0;
+		int iFirst = -1, iMin = 0, iMax = 0, iLast = 0;
+		float yMin = 0, yMax = 0;
+		for (int j = from; j < to; j++) {
+			float x = xBase + points[j * 2] * scaleX;
+			float y = yBase - points[j * 2 + 1] * scaleY;
+			int c = (int)Math.floor(x);
+			if (iFirst < 0 || c != col) {
+				if (0 <= iFirst) {
+					addBucket(canvas, points, iFirst, iMin, iMax, iLast, xBase, scaleX, yBase, scaleY);
 				}
-				canvas.drawLines(xy, line.createPaint());
+				col = c;
+				iFirst = iMin = iMax = j;
+				yMin = yMax = y;
+			} else if (y < yMin) {
+				yMin = y;
+				iMin = j;
+			} else if (yMax < y) {
+				yMax = y;
+				iMax = j;
 			}
-			drawText(canvas);
-			base.setImageBitmap(bitmap);
+			iLast = j;
+		}
+		if (0 <= iFirst) {
+			addBucket(canvas, points, iFirst, iMin, iMax, iLast, xBase, scaleX, yBase, scaleY);
+		}
+	}
+
+	@WorkerThread
+	private void addBucket(
+		@NonNull Canvas canvas,
+		@NonNull float[] points,
+		int iFirst,
+		int iMin,
+		int iMax,
+		int iLast,
+		float xBase,
+		float scaleX,
+		float yBase,
+		float scaleY
+	) {
+		int a = Math.min(iMin, iMax);
+		int b = Math.max(iMin, iMax);
+		addPoint(canvas, xBase + points[iFirst * 2] * scaleX, yBase - points[iFirst * 2 + 1] * scaleY);
+		if (a != iFirst) {
+			addPoint(canvas, xBase + points[a * 2] * scaleX, yBase - points[a * 2 + 1] * scaleY);
+		}
+		if (b != a) {
+			addPoint(canvas, xBase + points[b * 2] * scaleX, yBase - points[b * 2 + 1] * scaleY);
+		}
+		if (iLast != b) {
+			addPoint(canvas, xBase + points[iLast * 2] * scaleX, yBase - points[iLast * 2 + 1] * scaleY);
+		}
+	}
+
+	@WorkerThread
+	private void addPoint(@NonNull Canvas canvas, float x, float y) {
+		if (hasPrev) {
+			if (nSegs == SEGMENTS) {
+				flushSegments(canvas);
+			}
+			int i = nSegs++ * 4;
+			segs[i] = xPrev;
+			segs[i + 1] = yPrev;
+			segs[i + 2] = x;
+			segs[i + 3] = y;
+		}
+		xPrev = x;
+		yPrev = y;
+		hasPrev = true;
+	}
+
+	@WorkerThread
+	private void flushSegments(@NonNull Canvas canvas) {
+		if (nSegs != 0) {
+			canvas.drawLines(segs, 0, nSegs * 4, paintLine);
+			nSegs = 0;
 		}
 	}
 
@@ -307,36 +564,6 @@ public class ChartElement implements Element {
 		return null;
 	}
 
-	private static class LineChart {
-		private final RectF axis;
-		private final RectF perRect;
-		private final int color;
-		private final int pxStroke;
-		private final float[] points;
-
-		private LineChart(
-			int color,
-			int pxStroke,
-			@NonNull float[] points,
-			@NonNull RectF axis,
-			@NonNull RectF perRect
-		) {
-			this.color = color;
-			this.pxStroke = pxStroke;
-			this.points = points;
-			this.axis = axis;
-			this.perRect = perRect;
-		}
-
-		@NonNull
-		private Paint createPaint() {
-			Paint rc = new Paint();
-			rc.setColor(color);
-			rc.setStrokeWidth(pxStroke);
-			return rc;
-		}
-	}
-
 	private static class Axis {
 		private final List<ChartAxisText> listText;
 		private final float axisOther;
@@ -380,6 +607,79 @@ public class ChartElement implements Element {
 		}
 	}
 
+	/**
+	 *	the state of the chart to be drawn in background.
+	 */
+	private static class Frame {
+		private final ChartSeries[] series;
+		private final List<Axis> listAxisX, listAxisY;
+		private final RectF axis, perRect;
+		private final int[] sizes;
+		private final int wView, hView;
+		private final int colorBg;
+		private final int downsample;
+		private final int generation;
+
+		@MainThread
+		private Frame(@NonNull ChartElement e) {
+			series = e.listLine.toArray(new ChartSeries[0]);
+			sizes = new int[series.length];
+			for (int i = 0; i < series.length; i++) {
+				sizes[i] = series[i].size();
+			}
+			listAxisX = new ArrayList<>(e.listAxisX);
+			listAxisY = new ArrayList<>(e.listAxisY);
+			axis = new RectF(e.axis);
+			perRect = new RectF(e.perRect);
+			wView = e.wView;
+			hView = e.hView;
+			colorBg = e.colorBg;
+			downsample = e.downsample;
+			generation = e.generation;
+		}
+	}
+
+	/**
+	 *	a bitmap and what is drawn on it.
+	 */
+	private static class Buffer {
+		private final Canvas canvas;
+
+		private ChartSeries[] series;
+		private Bitmap bitmap;
+		private int[] drawn;
+		private int generation;
+
+		private Buffer() {
+			canvas = new Canvas();
+			series = new ChartSeries[0];
+			drawn = new int[0];
+			generation = -1;
+		}
+	}
+
+	/**
+	 *	draws the texts over the bitmap, in the coordinates of the bitmap.
+	 */
+	private class ChartView extends AppCompatImageView {
+		private ChartView(@NonNull Context context) {
+			super(context);
+		}
+
+		@Override
+		protected void onDraw(@NonNull Canvas canvas) {
+			super.onDraw(canvas);
+			Bitmap bitmap = front.bitmap;
+			if (bitmap != null && getDrawable() != null) {
+				int save = canvas.save();
+				canvas.translate(getPaddingLeft(), getPaddingTop());
+				canvas.concat(getImageMatrix());
+				drawText(canvas, bitmap.getWidth(), bitmap.getHeight());
+				canvas.restoreToCount(save);
+			}
+		}
+	}
+
 	private void log(@NonNull String msg) {
 		Log2.e(TAG, msg);
 	}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.element.chart;
+
+import android.graphics.RectF;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ *	Append only line of ChartElement. The points are x0, y0, x1, y1, ...
+ *
+ *	Appended points are drawn by ChartElement.updateChart() without redrawing the older ones.
+ */
+public class ChartSeries {
+	private static final int MIN_CAPACITY = 64;
+
+	final RectF axis;
+	final RectF perRect;
+	final int color;
+	final int pxStroke;
+
+	// synchronized instance
+	private float[] points;
+	private int size;
+
+	ChartSeries(int color, int pxStroke, @NonNull float[] points, @NonNull RectF axis, @NonNull RectF perRect) {
+		this.color = color;
+		this.pxStroke = pxStroke;
+		this.points = points;
+		this.axis = axis;
+		this.perRect = perRect;
+		size = points.length / 2;
+	}
+
+	ChartSeries(int color, int pxStroke, @NonNull RectF axis, @NonNull RectF perRect) {
+		this(color, pxStroke, new float[MIN_CAPACITY * 2], axis, perRect);
+		size = 0;
+	}
+
+	@AnyThread
+	public synchronized void append(float x, float y) {
+		ensureCapacity(size + 1);
+		points[size * 2] = x;
+		points[size * 2 + 1] = y;
+		size++;
+	}
+
+	/**
+	 *	@param xy x0, y0, x1, y1, ...
+	 */
+	@AnyThread
+	public synchronized void append(@NonNull float[] xy) {
+		int n = xy.length / 2;
+		ensureCapacity(size + n);
+		System.arraycopy(xy, 0, points, size * 2, n * 2);
+		size += n;
+	}
+
+	@AnyThread
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 *	The points below size() are never rewritten, so the array can be read without the lock.
+	 */
+	@NonNull
+	synchronized float[] getPoints() {
+		return points;
+	}
+
+	// synchronized method
+	private void ensureCapacity(int n) {
+		if (points.length < n * 2) {
+			points = Arrays.copyOf(points, Math.max(n, Math.max(MIN_CAPACITY, size * 2)) * 2);
+		}
+	}
+
+}
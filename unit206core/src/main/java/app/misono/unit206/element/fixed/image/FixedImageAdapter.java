@@ -74,6 +74,12 @@ class FixedImageAdapter extends FixedAdapter<
 		super.onBindViewHolder(holder, position);
 	}
 
+	@Override
+	public void onViewRecycled(@NonNull FixedImageViewHolder holder) {
+		holder.getView().cancelImage();
+		super.onViewRecycled(holder);
+	}
+
 	private void log(@NonNull String msg) {
 		Log2.e(TAG, msg);
 	}
@@ -32,6 +32,9 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.widget.AppCompatImageView;
 
 import app.misono.unit206.element.fixed.FixedCardView;
+import app.misono.unit206.image.ImageLoader;
+
+import com.google.android.gms.tasks.Task;
 
 import com.google.android.material.textview.MaterialTextView;
 
@@ -48,6 +51,7 @@ public class FixedImageCardView extends FixedCardView<
 
 	private FixedImageCallback cbNoBitmap;		// TODO: ちょっと違う感じ
 	private FixedImageItem item;
+	private ImageLoader loader;
 
 	FixedImageCardView(@NonNull Context context) {
 		super(context);
@@ -87,9 +91,35 @@ public class FixedImageCardView extends FixedCardView<
 
 	@MainThread
 	public void setBitmap(@Nullable Bitmap bitmap) {
+		cancelImage();
 		image.setImageBitmap(bitmap);
 	}
 
+	/**
+	 *	Loads the image of key via loader. The request is canceled when the item is
+	 *	rebound or cancelImage() is called, so a recycled view never shows an old image.
+	 */
+	@MainThread
+	@NonNull
+	public Task<Void> setImageAsync(
+		@NonNull ImageLoader loader,
+		@NonNull String key,
+		int pixel,
+		@NonNull ImageLoader.Decoder decoder
+	) {
+		cancelImage();
+		this.loader = loader;
+		return loader.into(image, key, pixel, decoder);
+	}
+
+	@MainThread
+	public void cancelImage() {
+		if (loader != null) {
+			loader.cancel(image);
+			loader = null;
+		}
+	}
+
 	@MainThread
 	public void setCheckedDrawable(@Nullable Drawable d) {
 		checked.setImageDrawable(d);
@@ -113,6 +143,7 @@ public class FixedImageCardView extends FixedCardView<
 	public void setItem(@NonNull FixedImageItem item) {
 		this.item = item;
 
+		cancelImage();
 		image.setImageBitmap(null);
 		checked.setImageBitmap(null);
 
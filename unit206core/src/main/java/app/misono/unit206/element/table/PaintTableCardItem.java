@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.element.table;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+
+/**
+ *	A read only row drawn on one canvas, without child views. createView() is not called.
+ */
+public interface PaintTableCardItem extends TableCardItem {
+	/**
+	 *	@param rect the cell inside of the padding. canvas is clipped to the cell.
+	 */
+	void drawCell(@NonNull Canvas canvas, int row, int column, @NonNull Rect rect);
+
+}
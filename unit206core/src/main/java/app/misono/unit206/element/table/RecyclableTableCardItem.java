@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.element.table;
+
+import android.content.Context;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+
+/**
+ *	A row whose cell views are recycled. The cells are created once per cell type, and
+ *	rebound with bindCell() on each bind. createView() is not called.
+ */
+public interface RecyclableTableCardItem extends TableCardItem {
+	int getCellType(int row, int column);
+	@NonNull
+	View createCell(@NonNull Context context, int cellType);
+	void bindCell(@NonNull View view, int row, int column);
+
+}
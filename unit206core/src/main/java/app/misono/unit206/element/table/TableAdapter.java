@@ -24,12 +24,24 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
 
 import app.misono.unit206.callback.CallbackObjectT;
 
+import java.util.List;
+
+/**
+ *	The view type is chosen by the item:
+ *
+ *	RecyclableTableCardItem: the cell views are kept in the holder and rebound.
+ *	PaintTableCardItem: the row is drawn on one canvas.
+ *	others: the cell views are created on each bind.
+ */
 class TableAdapter<T extends TableCardItem> extends ListAdapter<T, TableViewHolder> {
 	private static final String TAG = "TableAdapter";
+	private static final Object PAYLOAD_BACKGROUND = new Object();
 
+	private final DiffUtil.ItemCallback<T> diffCallback;
 	private final TableParam param;
 
 	private CallbackObjectT<T> listener;
@@ -39,6 +51,7 @@ class TableAdapter<T extends TableCardItem> extends ListAdapter<T, TableViewHold
 		@NonNull DiffUtil.ItemCallback<T> diffCallback
 	) {
 		super(diffCallback);
+		this.diffCallback = diffCallback;
 		this.param = param;
 	}
 
@@ -49,15 +62,46 @@ class TableAdapter<T extends TableCardItem> extends ListAdapter<T, TableViewHold
 	@NonNull
 	@Override
 	public TableViewHolder onCreateViewHolder(@NonNull ViewGroup viewGroup, int viewType) {
-		return new TableViewHolder(viewGroup);
+		TableViewHolder holder = new TableViewHolder(viewGroup, viewType);
+		holder.itemView.setOnClickListener(v -> {
+			int position = holder.getBindingAdapterPosition();
+			if (listener != null && position != RecyclerView.NO_POSITION) {
+				listener.callback(getItem(position));
+			}
+		});
+		holder.itemView.setClickable(false);
+		return holder;
+	}
+
+	@Override
+	public void onBindViewHolder(@NonNull TableViewHolder holder, int position, @NonNull List<Object> payloads) {
+		if (!payloads.isEmpty() && allBackground(payloads)) {
+			param.setBackgroundColor(holder.itemView, position);
+		} else {
+			onBindViewHolder(holder, position);
+		}
 	}
 
 	@Override
 	public void onBindViewHolder(@NonNull TableViewHolder holder, int position) {
-		TableCardView parent = holder.getView();
-		parent.removeAllViews();
-		param.setBackgroundColor(parent, position);
 		T item = getItem(position);
+		param.setBackgroundColor(holder.itemView, position);
+		switch (holder.getItemViewType()) {
+		case TableViewHolder.TYPE_RECYCLE:
+			bindCells(holder, (RecyclableTableCardItem)item, position);
+			break;
+		case TableViewHolder.TYPE_PAINT:
+			holder.getRowView().bind((PaintTableCardItem)item, position, param);
+			break;
+		default:
+			createCells(holder.getView(), item, position);
+			break;
+		}
+		holder.itemView.setClickable(listener != null);
+	}
+
+	private void createCells(@NonNull TableCardView parent, @NonNull T item, int position) {
+		parent.removeAllViews();
 		Context context = parent.getContext();
 		int x = 0;
 		int n = param.getColumnCount();
@@ -69,16 +113,90 @@ class TableAdapter<T extends TableCardItem> extends ListAdapter<T, TableViewHold
 			parent.addView(view, p);
 			x += p.width;	// TODO: padding????
 		}
-		if (listener != null) {
-			parent.setOnClickListener(v -> {
-				listener.callback(item);
-			});
+	}
+
+	/**
+	 *	creates a cell only when the cell type of the column was changed.
+	 */
+	private void bindCells(@NonNull TableViewHolder holder, @NonNull RecyclableTableCardItem item, int position) {
+		TableCardView parent = holder.getView();
+		int n = param.getColumnCount();
+		if (holder.cellTypes.length != n) {
+			parent.removeAllViews();
+			holder.cellTypes = new int[n];
+		}
+		int x = 0;
+		for (int i = 0; i < n; i++) {
+			TableTdParam td = param.getTableTdParam(position, i);
+			int type = item.getCellType(position, i);
+			View view = i < parent.getChildCount() ? parent.getChildAt(i) : null;
+			if (view == null || holder.cellTypes[i] != type) {
+				if (view != null) {
+					parent.removeViewAt(i);
+				}
+				view = item.createCell(parent.getContext(), type);
+				parent.addView(view, i, new ViewGroup.MarginLayoutParams(0, 0));
+				holder.cellTypes[i] = type;
+			}
+			item.bindCell(view, position, i);
+			td.setPadding(view);
+			ViewGroup.MarginLayoutParams p = (ViewGroup.MarginLayoutParams)view.getLayoutParams();
+			if (td.updateLayoutParams(p, x)) {
+				view.setLayoutParams(p);
+			}
+			x += p.width;
+		}
+	}
+
+	private static boolean allBackground(@NonNull List<Object> payloads) {
+		for (Object payload : payloads) {
+			if (payload != PAYLOAD_BACKGROUND) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 *	the rows shifted by an insertion or a removal keep their holders, so the zebra
+	 *	background is rebound by a payload. only the rows from the first changed item are
+	 *	notified, and up to the last changed item if the size is the same.
+	 */
+	@Override
+	public void onCurrentListChanged(@NonNull List<T> previousList, @NonNull List<T> currentList) {
+		int[] colorBg = param.getBackgroundColor();
+		if (colorBg != null && 1 < colorBg.length && !previousList.isEmpty() && !currentList.isEmpty()) {
+			int nPrev = previousList.size();
+			int nCur = currentList.size();
+			int start = 0;
+			for ( ; start < nPrev && start < nCur; start++) {
+				if (!diffCallback.areItemsTheSame(previousList.get(start), currentList.get(start))) {
+					break;
+				}
+			}
+			int end = nCur;
+			if (nPrev == nCur) {
+				for ( ; start < end; end--) {
+					if (!diffCallback.areItemsTheSame(previousList.get(end - 1), currentList.get(end - 1))) {
+						break;
+					}
+				}
+			}
+			if (start < end) {
+				notifyItemRangeChanged(start, end - start, PAYLOAD_BACKGROUND);
+			}
 		}
 	}
 
 	@Override
 	public int getItemViewType(int position) {
-		return 0;
+		T item = getItem(position);
+		if (item instanceof RecyclableTableCardItem) {
+			return TableViewHolder.TYPE_RECYCLE;
+		} else if (item instanceof PaintTableCardItem) {
+			return TableViewHolder.TYPE_PAINT;
+		}
+		return TableViewHolder.TYPE_CREATE;
 	}
 
 }
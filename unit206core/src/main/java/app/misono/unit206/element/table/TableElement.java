@@ -36,6 +36,9 @@ import java.util.List;
 
 /**
  * The table is made one item for one line.
+ *
+ * For large tables, implement RecyclableTableCardItem to recycle the cell views,
+ * or PaintTableCardItem to draw a read only line on one canvas.
  */
 public class TableElement<T extends TableCardItem> implements Element {
 	private static final String TAG = "TableElement";
@@ -54,25 +57,7 @@ public class TableElement<T extends TableCardItem> implements Element {
 		this.param = paramT;
 		adapter = new TableAdapter<>(paramT, diffCallback);
 		recycler = new RecyclerView(context);
-		LinearLayoutManager rman;
-		int[] colorBg = paramT.getBackgroundColor();
-		if (colorBg != null && 1 < colorBg.length) {
-			rman = new LinearLayoutManager(context) {
-				@Override
-				public void onLayoutCompleted(RecyclerView.State state) {
-					super.onLayoutCompleted(state);
-					int n = adapter.getItemCount();
-					for (int i = 0; i < n; i++) {
-						RecyclerView.ViewHolder vh = recycler.findViewHolderForAdapterPosition(i);
-						if (vh != null) {
-							paramT.setBackgroundColor(vh.itemView, i);
-						}
-					}
-				}
-			};
-		} else {
-			rman = new LinearLayoutManager(context);
-		}
+		LinearLayoutManager rman = new LinearLayoutManager(context);
 		rman.setOrientation(LinearLayoutManager.VERTICAL);
 		recycler.setLayoutManager(rman);
 		recycler.setAdapter(adapter);
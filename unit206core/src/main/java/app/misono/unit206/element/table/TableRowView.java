@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.element.table;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.Build;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+
+/**
+ * View for a line of PaintTableCardItem. All of the cells are drawn in onDraw().
+ */
+class TableRowView extends View {
+	private static final String TAG = "TableRowView";
+
+	private final Rect rect;
+
+	private PaintTableCardItem item;
+	private int[] left, top, width, height;
+	private int[] padLeft, padTop, padRight, padBottom;
+	private int row, pxWidth, pxHeight;
+
+	TableRowView(@NonNull Context ctx) {
+		super(ctx);
+		rect = new Rect();
+		left = new int[0];
+		setBackgroundColor(Color.WHITE);
+	}
+
+	void bind(@NonNull PaintTableCardItem item, int row, @NonNull TableParam param) {
+		this.item = item;
+		this.row = row;
+		int n = param.getColumnCount();
+		if (left.length != n) {
+			left = new int[n];
+			top = new int[n];
+			width = new int[n];
+			height = new int[n];
+			padLeft = new int[n];
+			padTop = new int[n];
+			padRight = new int[n];
+			padBottom = new int[n];
+		}
+		int x = 0;
+		int w = 0;
+		int h = 0;
+		for (int i = 0; i < n; i++) {
+			TableTdParam td = param.getTableTdParam(row, i);
+			left[i] = x + td.getMarginLeft();
+			top[i] = td.getMarginTop();
+			width[i] = td.getWidth();
+			height[i] = td.getHeight();
+			padLeft[i] = td.getPaddingLeft();
+			padTop[i] = td.getPaddingTop();
+			padRight[i] = td.getPaddingRight();
+			padBottom[i] = td.getPaddingBottom();
+			w = Math.max(w, left[i] + width[i] + td.getMarginRight());
+			h = Math.max(h, top[i] + height[i] + td.getMarginBottom());
+			x += width[i];
+		}
+		if (pxWidth != w || pxHeight != h) {
+			pxWidth = w;
+			pxHeight = h;
+			requestLayout();
+		}
+		invalidate();
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		setMeasuredDimension(
+			resolveSize(pxWidth, widthMeasureSpec),
+			resolveSize(pxHeight, heightMeasureSpec)
+		);
+	}
+
+	@Override
+	protected void onDraw(@NonNull Canvas canvas) {
+		super.onDraw(canvas);
+		if (item == null) {
+			return;
+		}
+		int n = left.length;
+		for (int i = 0; i < n; i++) {
+			rect.set(left[i], top[i], left[i] + width[i], top[i] + height[i]);
+			if (!quickReject(canvas, rect)) {
+				int save = canvas.save();
+				canvas.clipRect(rect);
+				rect.left += padLeft[i];
+				rect.top += padTop[i];
+				rect.right -= padRight[i];
+				rect.bottom -= padBottom[i];
+				item.drawCell(canvas, row, i, rect);
+				canvas.restoreToCount(save);
+			}
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private static boolean quickReject(@NonNull Canvas canvas, @NonNull Rect r) {
+		if (30 <= Build.VERSION.SDK_INT) {
+			return canvas.quickReject(r.left, r.top, r.right, r.bottom);
+		}
+		return canvas.quickReject(r.left, r.top, r.right, r.bottom, Canvas.EdgeType.BW);
+	}
+
+}
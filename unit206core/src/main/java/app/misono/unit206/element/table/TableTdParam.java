@@ -212,6 +212,27 @@ public class TableTdParam {
 		return rc;
 	}
 
+	/**
+	 *	sets the layout params as createLayoutParams(), shifted x to the right.
+	 *	@return true if changed.
+	 */
+	boolean updateLayoutParams(@NonNull ViewGroup.MarginLayoutParams p, int x) {
+		int width = getWidth();
+		int height = getHeight();
+		int left = getMarginLeft() + x;
+		int top = getMarginTop();
+		int right = getMarginRight();
+		int bottom = getMarginBottom();
+		if (p.width == width && p.height == height && p.leftMargin == left
+				&& p.topMargin == top && p.rightMargin == right && p.bottomMargin == bottom) {
+			return false;
+		}
+		p.width = width;
+		p.height = height;
+		p.setMargins(left, top, right, bottom);
+		return true;
+	}
+
 	public void setPadding(@NonNull View view) {
 		view.setPadding(getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom());
 	}
@@ -16,18 +16,42 @@
 
 package app.misono.unit206.element.table;
 
+import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 class TableViewHolder extends RecyclerView.ViewHolder {
+	static final int TYPE_CREATE = 0;
+	static final int TYPE_RECYCLE = 1;
+	static final int TYPE_PAINT = 2;
+
+	int[] cellTypes;		// TYPE_RECYCLE: the cell type of each child.
+
 	TableViewHolder(@NonNull ViewGroup parent) {
-		super(new TableCardView(parent.getContext()));
+		this(parent, TYPE_CREATE);
+	}
+
+	TableViewHolder(@NonNull ViewGroup parent, int viewType) {
+		super(createView(parent, viewType));
+		cellTypes = new int[0];
+	}
+
+	@NonNull
+	private static View createView(@NonNull ViewGroup parent, int viewType) {
+		if (viewType == TYPE_PAINT) {
+			return new TableRowView(parent.getContext());
+		}
+		return new TableCardView(parent.getContext());
 	}
 
 	TableCardView getView() {
 		return (TableCardView)itemView;
 	}
 
+	TableRowView getRowView() {
+		return (TableRowView)itemView;
+	}
+
 }
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.hierarchy;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import app.misono.unit206.misc.LongHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ *	Successor of HierarchyMap. Keeps the depth and the children of each item, and
+ *	numbers the items in pre-order, so
+ *
+ *	getNest(), isAncestor(): O(1)
+ *	subtree of an item: the pre-order range [indexOf(hash), indexOf(hash) + getSubtreeSize(hash))
+ *
+ *	The depth is updated with each change. The numbering is rebuilt once, on the first
+ *	query after changes, so a batch of changes costs one O(n) pass.
+ *
+ *	An item whose parent is not added yet is a top level item until the parent comes.
+ *	The children of each item, and the top level items, are in the hash order as HierarchyMap.
+ *
+ *	Not thread safe.
+ */
+@SuppressWarnings("deprecation")		// HierarchyItem, until the items move to LineageItem.
+public class HierarchyIndex<E extends HierarchyItem> {
+	private final LongHashMap<Node<E>> map;
+	private final LongHashMap<List<Node<E>>> waiting;		// parent hash -> items waiting for it
+	private final Node<E> root;
+
+	private List<Node<E>> order;
+	private boolean dirty;
+	private int hashNext;
+
+	public HierarchyIndex() {
+		map = new LongHashMap<>();
+		waiting = new LongHashMap<>();
+		root = new Node<>(null, -1);
+		root.depth = -1;
+		order = new ArrayList<>();
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public int getNextHash() {
+		return hashNext++;
+	}
+
+	@Nullable
+	public E getItem(int hash) {
+		Node<E> node = map.get(hash);
+		return node != null ? node.item : null;
+	}
+
+	/**
+	 *	@throws IllegalArgumentException if hash already exists, or the parent is itself or a descendant.
+	 *		the index is not changed.
+	 */
+	public void addItem(@NonNull E item) {
+		int hash = item.getHash();
+		if (map.containsKey(hash)) {
+			throw new IllegalArgumentException("Already exists hash:" + hash);
+		}
+		checkParent(hash, item.getParentHash(), null);
+		Node<E> node = new Node<>(item, hash);
+		map.put(hash, node);
+		if (hashNext <= hash) {
+			hashNext = hash + 1;
+		}
+		List<Node<E>> list = waiting.remove(hash);
+		if (list != null) {
+			for (Node<E> child : list) {
+				move(child, node);
+			}
+		}
+		attach(node, item.getParentHash());
+	}
+
+	/**
+	 *	Replaces the item of the same hash. Moves the subtree if the parent hash was changed.
+	 *
+	 *	@throws IllegalArgumentException if the parent is itself or a descendant. the index is not changed.
+	 */
+	public void updateItem(@NonNull E item) {
+		int hash = item.getHash();
+		Node<E> node = map.get(hash);
+		if (node == null) {
+			addItem(item);
+			return;
+		}
+		int parentOld = node.item.getParentHash();
+		if (parentOld != item.getParentHash()) {
+			checkParent(hash, item.getParentHash(), node);
+		}
+		node.item = item;
+		if (parentOld != item.getParentHash()) {
+			unwait(node, parentOld);
+			detach(node);
+			attach(node, item.getParentHash());
+		}
+		if (hashNext <= hash) {
+			hashNext = hash + 1;
+		}
+	}
+
+	/**
+	 *	The children become top level items, until an item of hash is added again.
+	 */
+	public void removeItem(int hash) {
+		Node<E> node = map.remove(hash);
+		if (node == null) {
+			return;
+		}
+		unwait(node, node.item.getParentHash());
+		detach(node);
+		if (!node.children.isEmpty()) {
+			List<Node<E>> list = new ArrayList<>(node.children);
+			for (Node<E> child : list) {
+				move(child, root);
+			}
+			waiting.put(hash, list);
+		}
+	}
+
+	public void setList(@NonNull List<E> list) {
+		map.clear();
+		waiting.clear();
+		root.children.clear();
+		hashNext = 0;
+		dirty = true;
+		for (E item : list) {
+			addItem(item);
+		}
+	}
+
+	/**
+	 *	@return 0 for a top level item. -1 if not found.
+	 */
+	public int getNest(int hash) {
+		Node<E> node = map.get(hash);
+		return node != null ? node.depth : -1;
+	}
+
+	/**
+	 *	@return true if hashAncestor is the parent, the grand parent, ... of hash.
+	 */
+	public boolean isAncestor(int hashAncestor, int hash) {
+		Node<E> a = map.get(hashAncestor);
+		Node<E> node = map.get(hash);
+		if (a == null || node == null || a == node) {
+			return false;
+		}
+		renumber();
+		return a.pre < node.pre && node.pre < a.pre + a.size;
+	}
+
+	/**
+	 *	@param hash -1 for the top level items.
+	 */
+	@NonNull
+	public List<E> getChildren(int hash) {
+		Node<E> node = hash < 0 ? root : map.get(hash);
+		List<E> rc = new ArrayList<>();
+		if (node != null) {
+			for (Node<E> child : node.children) {
+				rc.add(child.item);
+			}
+		}
+		return rc;
+	}
+
+	/**
+	 *	@return the pre-order index. -1 if not found.
+	 */
+	public int indexOf(int hash) {
+		Node<E> node = map.get(hash);
+		if (node == null) {
+			return -1;
+		}
+		renumber();
+		return node.pre;
+	}
+
+	/**
+	 *	@return the number of the items in the subtree, including the item itself. 0 if not found.
+	 */
+	public int getSubtreeSize(int hash) {
+		Node<E> node = map.get(hash);
+		if (node == null) {
+			return 0;
+		}
+		renumber();
+		return node.size;
+	}
+
+	/**
+	 *	@param index 0 ... size() - 1 in pre-order.
+	 */
+	@NonNull
+	public E getItemAt(int index) {
+		renumber();
+		return order.get(index).item;
+	}
+
+	/**
+	 *	Adds the rows of a tree view to out, in pre-order. The descendants of collapsed
+	 *	items are skipped by their ranges, so it's O(visible rows).
+	 */
+	public void getVisibleItems(@NonNull Set<Integer> collapsed, @NonNull List<E> out) {
+		renumber();
+		int n = order.size();
+		for (int i = 0; i < n; ) {
+			Node<E> node = order.get(i);
+			out.add(node.item);
+			if (!node.children.isEmpty() && collapsed.contains(node.hash)) {
+				i += node.size;
+			} else {
+				i++;
+			}
+		}
+	}
+
+	private void attach(@NonNull Node<E> node, int hashParent) {
+		Node<E> parent = root;
+		if (0 <= hashParent) {
+			Node<E> p = map.get(hashParent);
+			if (p == null) {
+				List<Node<E>> list = waiting.get(hashParent);
+				if (list == null) {
+					list = new ArrayList<>();
+					waiting.put(hashParent, list);
+				}
+				list.add(node);
+			} else {
+				parent = p;
+			}
+		}
+		move(node, parent);
+	}
+
+	/**
+	 *	@param node null for a new item. its subtree is the top level items waiting for hash.
+	 *	@throws IllegalArgumentException if hashParent is hash or in the subtree of hash.
+	 */
+	private void checkParent(int hash, int hashParent, @Nullable Node<E> node) {
+		if (hashParent == hash) {
+			throw new IllegalArgumentException("cyclic parent:" + hashParent + " of " + hash);
+		}
+		Node<E> p = 0 <= hashParent ? map.get(hashParent) : null;
+		if (p == null) {
+			return;
+		}
+		boolean cyclic;
+		if (node != null) {
+			cyclic = isInSubtree(p, node);
+		} else {
+			while (p.parent != root) {
+				p = p.parent;
+			}
+			cyclic = p.item.getParentHash() == hash;
+		}
+		if (cyclic) {
+			throw new IllegalArgumentException("cyclic parent:" + hashParent + " of " + hash);
+		}
+	}
+
+	/**
+	 *	walks up from x only while it's deeper than node. O(1) for a leaf node. x is not node.
+	 */
+	private boolean isInSubtree(@NonNull Node<E> x, @NonNull Node<E> node) {
+		if (node.children.isEmpty()) {
+			return false;
+		}
+		while (x != null && node.depth < x.depth) {
+			x = x.parent;
+		}
+		return x == node;
+	}
+
+	private void unwait(@NonNull Node<E> node, int hashParent) {
+		if (0 <= hashParent) {
+			List<Node<E>> list = waiting.get(hashParent);
+			if (list != null && list.remove(node) && list.isEmpty()) {
+				waiting.remove(hashParent);
+			}
+		}
+	}
+
+	private void detach(@NonNull Node<E> node) {
+		if (node.parent != null) {
+			List<Node<E>> list = node.parent.children;
+			list.remove(search(list, node.hash));
+			node.parent = null;
+			dirty = true;
+		}
+	}
+
+	/**
+	 *	keeps the children in the hash order, and updates the depth of the subtree.
+	 */
+	private void move(@NonNull Node<E> node, @NonNull Node<E> parent) {
+		detach(node);
+		List<Node<E>> list = parent.children;
+		list.add(-search(list, node.hash) - 1, node);
+		node.parent = parent;
+		dirty = true;
+		int delta = parent.depth + 1 - node.depth;
+		if (delta != 0) {
+			List<Node<E>> stack = new ArrayList<>();
+			stack.add(node);
+			while (!stack.isEmpty()) {
+				Node<E> x = stack.remove(stack.size() - 1);
+				x.depth += delta;
+				stack.addAll(x.children);
+			}
+		}
+	}
+
+	/**
+	 *	@return index of hash, or -(insertion point) - 1.
+	 */
+	private static <E> int search(@NonNull List<Node<E>> list, int hash) {
+		int lo = 0;
+		int hi = list.size() - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int h = list.get(mid).hash;
+			if (h < hash) {
+				lo = mid + 1;
+			} else if (hash < h) {
+				hi = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(lo + 1);
+	}
+
+	/**
+	 *	iterative pre-order. size is set when the subtree is finished.
+	 */
+	private void renumber() {
+		if (!dirty) {
+			return;
+		}
+		dirty = false;
+		order = new ArrayList<>(map.size());
+		List<Node<E>> stack = new ArrayList<>();
+		List<Integer> next = new ArrayList<>();
+		stack.add(root);
+		next.add(0);
+		while (!stack.isEmpty()) {
+			int top = stack.size() - 1;
+			Node<E> node = stack.get(top);
+			int i = next.get(top);
+			if (i < node.children.size()) {
+				next.set(top, i + 1);
+				Node<E> child = node.children.get(i);
+				child.pre = order.size();
+				order.add(child);
+				stack.add(child);
+				next.add(0);
+			} else {
+				node.size = order.size() - node.pre;
+				stack.remove(top);
+				next.remove(top);
+			}
+		}
+	}
+
+	private static class Node<E> {
+		private final List<Node<E>> children;
+		private final int hash;
+
+		private Node<E> parent;
+		private E item;
+		private int depth, pre, size;
+
+		private Node(@Nullable E item, int hash) {
+			this.item = item;
+			this.hash = hash;
+			children = new ArrayList<>();
+		}
+	}
+
+}
@@ -23,7 +23,7 @@ import androidx.annotation.Nullable;
 
 import java.util.List;
 
-@Deprecated
+@Deprecated		// use HierarchyIndex.
 public class HierarchyMap<E extends HierarchyItem> {
 	protected final SparseArray<E> map;
 	protected final HierarchyItem root;
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.image;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *	Mutable bitmaps which nobody draws any more, kept for BitmapFactory.Options.inBitmap.
+ *	The oldest ones are recycled when the total size exceeds maxBytes.
+ */
+public class BitmapPool {
+	private final long maxBytes;
+
+	// synchronized instance
+	private final List<Bitmap> list;
+	private long bytes;
+
+	public BitmapPool(long maxBytes) {
+		this.maxBytes = maxBytes;
+		list = new ArrayList<>();
+	}
+
+	/**
+	 *	@return a bitmap which can hold width x height ARGB_8888 pixels. null if none.
+	 *		the caller owns it.
+	 */
+	@AnyThread
+	@Nullable
+	public synchronized Bitmap get(int width, int height) {
+		long need = (long)width * height * 4;
+		int best = -1;
+		long bestBytes = Long.MAX_VALUE;
+		for (int i = 0; i < list.size(); i++) {
+			Bitmap b = list.get(i);
+			long size = sizeOf(b);
+			if (Build.VERSION.SDK_INT < 19) {
+				if (b.getWidth() == width && b.getHeight() == height) {
+					best = i;
+					break;
+				}
+			} else if (need <= size && size < bestBytes) {
+				best = i;
+				bestBytes = size;
+			}
+		}
+		if (best < 0) {
+			return null;
+		}
+		Bitmap rc = list.remove(best);
+		bytes -= sizeOf(rc);
+		return rc;
+	}
+
+	/**
+	 *	@return false if not accepted. (immutable, recycled or too large)
+	 */
+	@AnyThread
+	public synchronized boolean put(@NonNull Bitmap bitmap) {
+		if (!bitmap.isMutable() || bitmap.isRecycled() || bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+			return false;
+		}
+		long size = sizeOf(bitmap);
+		if (maxBytes < size || list.contains(bitmap)) {
+			return false;
+		}
+		list.add(bitmap);
+		bytes += size;
+		while (maxBytes < bytes) {
+			Bitmap b = list.remove(0);
+			bytes -= sizeOf(b);
+			b.recycle();
+		}
+		return true;
+	}
+
+	@AnyThread
+	public synchronized void clear() {
+		for (Bitmap b : list) {
+			b.recycle();
+		}
+		list.clear();
+		bytes = 0;
+	}
+
+	@AnyThread
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	@AnyThread
+	public static long sizeOf(@NonNull Bitmap bitmap) {
+		if (19 <= Build.VERSION.SDK_INT) {
+			return bitmap.getAllocationByteCount();		// API-19
+		}
+		return bitmap.getByteCount();
+	}
+
+}
@@ -0,0 +1,544 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import app.misono.unit206.debug.Log2;
+import app.misono.unit206.misc.ImageUtils;
+import app.misono.unit206.misc.Utils;
+import app.misono.unit206.misc.XxHash64;
+import app.misono.unit206.task.Taskz;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+/**
+ *	Bitmap loader with a memory LRU (by allocation bytes), a disk cache of downsampled
+ *	thumbnails, request coalescing and a bitmap pool.
+ *
+ *	The same key and pixel requested while decoding share one decode. into() cancels
+ *	the previous request of the ImageView, so a rebound RecyclerView holder doesn't
+ *	get the old image. A decode is canceled when all of its waiters are canceled.
+ *
+ *	Bitmaps set by into() are reference counted and go back to the pool when neither
+ *	the memory cache nor any ImageView holds them. Bitmaps returned by load() are shared
+ *	with the memory cache and the other callers, read only, and never pooled.
+ */
+public class ImageLoader {
+	private static final String TAG = "ImageLoader";
+	private static final String DIR_DISK = "unit206_thumb";
+	private static final long DISK_BYTES = 64L * 1024 * 1024;
+
+	private static ImageLoader instance;
+
+	private final LruCache<String, Cached> memory;
+	private final ThumbnailDiskCache disk;
+	private final BitmapPool pool;
+	private final Executor executor;
+	private final Handler handler;
+
+	// synchronized instance
+	private final Map<String, Request> inflight;
+	private final Map<Bitmap, Integer> refs;
+	private final Set<Bitmap> escaped;
+
+	// main thread instance
+	private final Map<ImageView, Binding> bindings;
+
+	public interface Decoder {
+		/**
+		 *	@param pixel long side of the result. 0 for the original size.
+		 *	@param reuse pooled bitmap for inBitmap. may be ignored.
+		 */
+		@WorkerThread
+		@Nullable
+		Bitmap decode(int pixel, @Nullable Bitmap reuse) throws Exception;
+	}
+
+	/**
+	 *	memory cache: 1/8 of the heap, disk cache: 64MB in the cache directory.
+	 */
+	@AnyThread
+	@NonNull
+	public static synchronized ImageLoader getInstance(@NonNull Context context) {
+		if (instance == null) {
+			long memoryBytes = Runtime.getRuntime().maxMemory() / 8;
+			File dir = new File(context.getApplicationContext().getCacheDir(), DIR_DISK);
+			instance = new ImageLoader(memoryBytes, new ThumbnailDiskCache(dir, DISK_BYTES), memoryBytes / 4);
+		}
+		return instance;
+	}
+
+	/**
+	 *	@param disk null for no disk cache.
+	 */
+	public ImageLoader(long memoryBytes, @Nullable ThumbnailDiskCache disk, long poolBytes) {
+		this.disk = disk;
+		pool = new BitmapPool(poolBytes);
+		executor = Taskz.getExecutor(Taskz.LANE_CPU);
+		handler = new Handler(Looper.getMainLooper());
+		inflight = new HashMap<>();
+		refs = new HashMap<>();
+		escaped = Collections.newSetFromMap(new WeakHashMap<>());
+		bindings = new WeakHashMap<>();
+		memory = new LruCache<String, Cached>((int)Math.min(Integer.MAX_VALUE, memoryBytes)) {
+			@Override
+			protected int sizeOf(@NonNull String key, @NonNull Cached value) {
+				return value.size;
+			}
+
+			@Override
+			protected void entryRemoved(boolean evicted, @NonNull String key, @NonNull Cached old, @Nullable Cached value) {
+				synchronized (ImageLoader.this) {
+					release(old.bitmap);
+				}
+			}
+		};
+	}
+
+	@AnyThread
+	@NonNull
+	public static String keyOf(@NonNull Uri uri) {
+		return "uri:" + uri;
+	}
+
+	@AnyThread
+	@NonNull
+	public static String keyOf(@NonNull byte[] image) {
+		return "bytes:" + Long.toHexString(XxHash64.hash(image)) + ":" + image.length;
+	}
+
+	@AnyThread
+	@NonNull
+	public static String keyOfAsset(@NonNull String pathAsset) {
+		return "asset:" + pathAsset;
+	}
+
+	@AnyThread
+	@NonNull
+	public static Decoder uriDecoder(@NonNull Context context, @NonNull Uri uri) {
+		Context app = context.getApplicationContext();
+		return (pixel, reuse) -> ImageUtils.readBitmapResizeRotate(app, uri, pixel, false);
+	}
+
+	@AnyThread
+	@NonNull
+	public static Decoder bytesDecoder(@NonNull byte[] image) {
+		return (pixel, reuse) -> ImageUtils.createBitmapResizeRotate(image, pixel, false, reuse);
+	}
+
+	@AnyThread
+	@NonNull
+	public static Decoder assetDecoder(@NonNull Context context, @NonNull String pathAsset) {
+		Context app = context.getApplicationContext();
+		return (pixel, reuse) -> {
+			byte[] image = Utils.readAssetFileWithException(app, pathAsset);
+			return ImageUtils.createBitmapResizeRotate(image, pixel, false, reuse);
+		};
+	}
+
+	/**
+	 *	@return shared with the memory cache and the other callers of key. read only.
+	 *		don't recycle it. never recycled nor pooled by this loader.
+	 */
+	@AnyThread
+	@NonNull
+	public Task<Bitmap> load(
+		@NonNull String key,
+		int pixel,
+		@NonNull Decoder decoder,
+		@Nullable CancellationToken cancel
+	) {
+		String cacheKey = key + "@" + pixel;
+		Request req;
+		boolean start = false;
+		synchronized (this) {
+			Bitmap bitmap = getMemory(cacheKey);
+			if (bitmap != null) {
+				escaped.add(bitmap);
+				return Tasks.forResult(bitmap);
+			}
+			req = inflight.get(cacheKey);
+			if (req == null) {
+				req = new Request(cacheKey, pixel, decoder);
+				inflight.put(cacheKey, req);
+				start = true;
+			}
+			req.waiters++;
+			req.loaders++;
+		}
+		TaskCompletionSource<Bitmap> src = cancel != null ? new TaskCompletionSource<>(cancel) : new TaskCompletionSource<>();
+		Request req2 = req;
+		if (cancel != null) {
+			cancel.onCanceledRequested(() -> releaseWaiter(req2));
+		}
+		req.src.getTask().addOnCompleteListener(Runnable::run, task -> {
+			if (task.isSuccessful()) {
+				src.trySetResult(task.getResult());
+			} else {
+				Exception e = task.getException();
+				src.trySetException(e != null ? e : new CancellationException());
+			}
+		});
+		if (start) {
+			start(req);
+		}
+		return src.getTask();
+	}
+
+	@AnyThread
+	@NonNull
+	public Task<Bitmap> load(@NonNull Context context, @NonNull Uri uri, int pixel) {
+		return load(keyOf(uri), pixel, uriDecoder(context, uri), null);
+	}
+
+	/**
+	 *	Sets the bitmap to view. The previous request of view is canceled.
+	 *
+	 *	@return completes when the bitmap is set. canceled if view is rebound or cancel()ed.
+	 */
+	@MainThread
+	@NonNull
+	public Task<Void> into(@NonNull ImageView view, @NonNull String key, int pixel, @NonNull Decoder decoder) {
+		cancel(view);
+		String cacheKey = key + "@" + pixel;
+		Binding bd = new Binding(view);
+		bindings.put(view, bd);
+		Request req;
+		boolean start = false;
+		synchronized (this) {
+			Bitmap bitmap = getMemory(cacheKey);
+			if (bitmap != null) {
+				addRef(bitmap);
+				bd.bitmap = bitmap;
+			} else {
+				req = inflight.get(cacheKey);
+				if (req == null) {
+					req = new Request(cacheKey, pixel, decoder);
+					inflight.put(cacheKey, req);
+					start = true;
+				}
+				req.waiters++;
+				req.bindings.add(bd);
+				bd.request = req;
+			}
+		}
+		if (bd.bitmap != null) {
+			view.setImageBitmap(bd.bitmap);
+			bd.src.trySetResult(null);
+		} else if (start) {
+			start(bd.request);
+		}
+		return bd.src.getTask();
+	}
+
+	@MainThread
+	@NonNull
+	public Task<Void> into(@NonNull ImageView view, @NonNull Uri uri, int pixel) {
+		return into(view, keyOf(uri), pixel, uriDecoder(view.getContext(), uri));
+	}
+
+	/**
+	 *	Cancels the request of view, and releases the bitmap set by into().
+	 */
+	@MainThread
+	public void cancel(@NonNull ImageView view) {
+		Binding bd = bindings.remove(view);
+		if (bd == null) {
+			return;
+		}
+		Bitmap bitmap = bd.bitmap;
+		Request req = null;
+		synchronized (this) {
+			if (bitmap != null) {
+				bd.bitmap = null;
+			} else if (bd.request != null && bd.request.bindings.remove(bd)) {
+				req = bd.request;
+			}
+		}
+		if (bitmap != null) {
+			view.setImageDrawable(null);		// nobody may draw it after it goes to the pool.
+			synchronized (this) {
+				release(bitmap);
+			}
+		}
+		if (req != null) {
+			releaseWaiter(req);
+		}
+		bd.cancel.cancel();
+	}
+
+	@AnyThread
+	public void clearMemory() {
+		memory.evictAll();
+		pool.clear();
+	}
+
+	@AnyThread
+	@NonNull
+	@Override
+	public String toString() {
+		return "memory:" + memory.size() + "/" + memory.maxSize() + " pool:" + pool.getBytes() + " " + memory;
+	}
+
+	private void start(@NonNull Request req) {
+		Taskz.call(executor, req.cancel.getToken(), () -> decode(req))
+			.addOnCompleteListener(Runnable::run, task -> onDone(req, task));
+	}
+
+	@WorkerThread
+	@Nullable
+	private Bitmap decode(@NonNull Request req) throws Exception {
+		Bitmap reuse = 0 < req.pixel ? pool.get(req.pixel, req.pixel) : null;
+		Bitmap bitmap = null;
+		boolean thumbnail = disk != null && 0 < req.pixel;
+		if (thumbnail) {
+			File f = disk.get(req.cacheKey);
+			if (f != null) {
+				bitmap = decodeFile(f, reuse);
+				thumbnail = bitmap == null;
+			}
+		}
+		if (bitmap == null) {
+			bitmap = req.decoder.decode(req.pixel, reuse);
+		}
+		if (reuse != null && bitmap != reuse) {
+			pool.put(reuse);
+		}
+		if (bitmap != null) {
+			synchronized (this) {
+				addRef(bitmap);
+				memory.put(req.cacheKey, new Cached(bitmap));
+				if (thumbnail) {
+					addRef(bitmap);		// pinned until written.
+				}
+			}
+			if (thumbnail) {
+				Bitmap pinned = bitmap;
+				Taskz.call(Taskz.LANE_IO, () -> {
+					try {
+						disk.put(req.cacheKey, pinned);
+					} finally {
+						synchronized (this) {
+							release(pinned);
+						}
+					}
+					return null;
+				}).addOnFailureListener(Taskz::printStackTrace2);
+			}
+		}
+		return bitmap;
+	}
+
+	@WorkerThread
+	@Nullable
+	private static Bitmap decodeFile(@NonNull File f, @Nullable Bitmap reuse) {
+		BitmapFactory.Options opts = new BitmapFactory.Options();
+		opts.inMutable = true;
+		opts.inBitmap = reuse;
+		try {
+			return BitmapFactory.decodeFile(f.getPath(), opts);
+		} catch (IllegalArgumentException e) {
+			opts.inBitmap = null;		// reuse doesn't fit.
+			return BitmapFactory.decodeFile(f.getPath(), opts);
+		}
+	}
+
+	private void onDone(@NonNull Request req, @NonNull Task<Bitmap> task) {
+		Bitmap bitmap = task.isSuccessful() ? task.getResult() : null;
+		List<Binding> list;
+		synchronized (this) {
+			if (inflight.get(req.cacheKey) == req) {
+				inflight.remove(req.cacheKey);
+			}
+			list = new ArrayList<>(req.bindings);
+			req.bindings.clear();
+			if (bitmap != null) {
+				if (req.loaders != 0) {
+					escaped.add(bitmap);
+				}
+				for (int i = 0; i < list.size(); i++) {
+					addRef(bitmap);		// released by apply() if the binding is gone.
+				}
+			}
+		}
+		if (task.isSuccessful()) {
+			req.src.trySetResult(bitmap);
+		} else {
+			Exception e = task.getException();
+			req.src.trySetException(e != null ? e : new CancellationException());
+		}
+		for (Binding bd : list) {
+			handler.post(() -> apply(bd, bitmap, task.getException()));
+		}
+	}
+
+	@MainThread
+	private void apply(@NonNull Binding bd, @Nullable Bitmap bitmap, @Nullable Exception e) {
+		ImageView view = bd.view.get();
+		if (view != null && bindings.get(view) == bd && bd.bitmap == null) {
+			bd.request = null;
+			if (bitmap != null) {
+				bd.bitmap = bitmap;
+				view.setImageBitmap(bitmap);
+			}
+			if (e != null) {
+				bd.src.trySetException(e);
+			} else {
+				bd.src.trySetResult(null);
+			}
+		} else if (bitmap != null) {
+			synchronized (this) {
+				release(bitmap);
+			}
+		}
+	}
+
+	@AnyThread
+	private void releaseWaiter(@NonNull Request req) {
+		boolean cancel;
+		synchronized (this) {
+			req.waiters--;
+			cancel = req.waiters <= 0 && inflight.get(req.cacheKey) == req;
+			if (cancel) {
+				inflight.remove(req.cacheKey);
+			}
+		}
+		if (cancel) {
+			req.cancel.cancel();
+		}
+	}
+
+	// synchronized method
+	private void addRef(@NonNull Bitmap bitmap) {
+		Integer n = refs.get(bitmap);
+		refs.put(bitmap, n == null ? 1 : n + 1);
+	}
+
+	// synchronized method
+	/**
+	 *	drops the bitmap recycled by a caller of load(), instead of handing it out again.
+	 */
+	@Nullable
+	private Bitmap getMemory(@NonNull String cacheKey) {
+		Cached cached = memory.get(cacheKey);
+		if (cached == null) {
+			return null;
+		}
+		if (cached.bitmap.isRecycled()) {
+			log("recycled in the cache:" + cacheKey);
+			memory.remove(cacheKey);
+			return null;
+		}
+		return cached.bitmap;
+	}
+
+	private void release(@NonNull Bitmap bitmap) {
+		Integer n = refs.get(bitmap);
+		if (n == null || n <= 1) {
+			refs.remove(bitmap);
+			if (!escaped.contains(bitmap)) {
+				pool.put(bitmap);
+			}
+		} else {
+			refs.put(bitmap, n - 1);
+		}
+	}
+
+	/**
+	 *	the size is kept, because a recycled bitmap reports 0.
+	 */
+	private static class Cached {
+		private final Bitmap bitmap;
+		private final int size;
+
+		private Cached(@NonNull Bitmap bitmap) {
+			this.bitmap = bitmap;
+			size = (int)BitmapPool.sizeOf(bitmap);
+		}
+	}
+
+	private static class Request {
+		private final CancellationTokenSource cancel;
+		private final TaskCompletionSource<Bitmap> src;
+		private final List<Binding> bindings;
+		private final Decoder decoder;
+		private final String cacheKey;
+		private final int pixel;
+
+		// ImageLoader synchronized instance
+		private int waiters, loaders;
+
+		private Request(@NonNull String cacheKey, int pixel, @NonNull Decoder decoder) {
+			this.cacheKey = cacheKey;
+			this.pixel = pixel;
+			this.decoder = decoder;
+			cancel = new CancellationTokenSource();
+			src = new TaskCompletionSource<>();
+			bindings = new ArrayList<>();
+		}
+	}
+
+	private static class Binding {
+		private final WeakReference<ImageView> view;
+		private final CancellationTokenSource cancel;
+		private final TaskCompletionSource<Void> src;
+
+		private Request request;
+		private Bitmap bitmap;
+
+		private Binding(@NonNull ImageView view) {
+			this.view = new WeakReference<>(view);
+			cancel = new CancellationTokenSource();
+			src = new TaskCompletionSource<>(cancel.getToken());
+		}
+	}
+
+	private void log(@NonNull String msg) {
+		Log2.e(TAG, msg);
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.image;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import app.misono.unit206.debug.Log2;
+import app.misono.unit206.misc.ImageUtils;
+import app.misono.unit206.misc.Murmur3Hash128;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ *	Downsampled thumbnails on the storage. One WebP file per key, the least recently
+ *	used files are deleted when the total size exceeds maxBytes.
+ */
+public class ThumbnailDiskCache {
+	private static final String TAG = "ThumbnailDiskCache";
+	private static final String SUFFIX = ".webp";
+	private static final int QUALITY = 85;
+
+	private final long maxBytes;
+	private final File dir;
+
+	// synchronized instance
+	private long bytes;
+	private boolean scanned;
+
+	public ThumbnailDiskCache(@NonNull File dir, long maxBytes) {
+		this.dir = dir;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 *	@return null if not cached.
+	 */
+	@WorkerThread
+	@Nullable
+	public File get(@NonNull String key) {
+		File f = toFile(key);
+		if (!f.isFile()) {
+			return null;
+		}
+		f.setLastModified(System.currentTimeMillis());
+		return f;
+	}
+
+	@WorkerThread
+	public void put(@NonNull String key, @NonNull Bitmap bitmap) throws IOException {
+		byte[] b = ImageUtils.createWebp(bitmap, QUALITY);
+		File f = toFile(key);
+		File tmp = new File(dir, f.getName() + ".tmp");
+		dir.mkdirs();
+		try (
+			FileOutputStream fos = new FileOutputStream(tmp);
+		) {
+			fos.write(b);
+		}
+		long old = f.length();
+		if (!tmp.renameTo(f)) {
+			tmp.delete();
+			throw new IOException("rename failed... " + f);
+		}
+		synchronized (this) {
+			scan();
+			bytes += b.length - old;
+			if (maxBytes < bytes) {
+				trim(maxBytes * 3 / 4);
+			}
+		}
+	}
+
+	@WorkerThread
+	public synchronized void clear() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		bytes = 0;
+		scanned = true;
+	}
+
+	// synchronized method
+	private void scan() {
+		if (!scanned) {
+			scanned = true;
+			bytes = 0;
+			File[] files = dir.listFiles();
+			if (files != null) {
+				for (File f : files) {
+					bytes += f.length();
+				}
+			}
+		}
+	}
+
+	// synchronized method
+	private void trim(long target) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		long[] times = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			times[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+		for (int i : order) {
+			if (bytes <= target) {
+				break;
+			}
+			File f = files[i];
+			long len = f.length();
+			if (f.delete()) {
+				bytes -= len;
+			}
+		}
+		log("trim:" + bytes);
+	}
+
+	@NonNull
+	private File toFile(@NonNull String key) {
+		long[] h = new long[2];
+		Murmur3Hash128.hash(key, h);
+		return new File(dir, String.format(Locale.US, "%016x%016x%s", h[0], h[1], SUFFIX));
+	}
+
+	private void log(@NonNull String msg) {
+		Log2.e(TAG, msg);
+	}
+
+}
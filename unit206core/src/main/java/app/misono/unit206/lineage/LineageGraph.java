@@ -0,0 +1,567 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.lineage;
+
+import android.util.LongSparseArray;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ *	Index of the parent/child edges of a lineage.
+ *
+ *	The edges are kept in CSR (compressed sparse row) int arrays, and all of the
+ *	queries are iterative, so deep chains don't overflow the stack. The ancestor and
+ *	descendant closures are cached; setParents() invalidates only the affected ones.
+ *
+ *	Parents which are not in the array are ignored. Not thread safe.
+ */
+public class LineageGraph {
+	private static final int MAX_CACHE_INTS = 4 * 1024 * 1024;
+	private static final int[] EMPTY = new int[0];
+
+	private final long[] uids;			// ascending. the node index is the position.
+	private final boolean[] root;		// getParentSize() == 0
+	private final int[][] ancestors, descendants;
+	private final int n;
+
+	private int[] parentStart, parentIdx;
+	private int[] childStart, childIdx;
+	private int[][] parentOverride, childOverride;		// null: use CSR
+	private int nOverride;
+
+	private int[] mark;
+	private int stamp;
+	private int nCached;
+
+	public LineageGraph(@NonNull LongSparseArray<? extends LineageWrapper> array) {
+		n = array.size();
+		uids = new long[n];
+		root = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			uids[i] = array.keyAt(i);
+		}
+		int[][] parents = new int[n][];
+		for (int i = 0; i < n; i++) {
+			LineageWrapper item = array.valueAt(i);
+			root[i] = item.getParentSize() == 0;
+			parents[i] = toIndices(item.getParents());
+		}
+		ancestors = new int[n][];
+		descendants = new int[n][];
+		mark = new int[n];
+		build(parents);
+	}
+
+	public int size() {
+		return n;
+	}
+
+	public boolean contains(long uid) {
+		return 0 <= indexOf(uid);
+	}
+
+	@NonNull
+	public long[] getParents(long uid) {
+		return toUids(parentsOf(indexOfOrThrow(uid)));
+	}
+
+	@NonNull
+	public long[] getChildren(long uid) {
+		return toUids(childrenOf(indexOfOrThrow(uid)));
+	}
+
+	/**
+	 *	@return all of the upstream uids, not including uid.
+	 */
+	@NonNull
+	public long[] getAncestors(long uid) {
+		return toUids(ancestorsOf(indexOfOrThrow(uid)));
+	}
+
+	/**
+	 *	@return all of the downstream uids, not including uid.
+	 */
+	@NonNull
+	public long[] getDescendants(long uid) {
+		return toUids(descendantsOf(indexOfOrThrow(uid)));
+	}
+
+	public boolean isAncestor(long uidAncestor, long uid) {
+		int a = indexOf(uidAncestor);
+		int i = indexOf(uid);
+		if (a < 0 || i < 0) {
+			return false;
+		}
+		int[] c = ancestors[i];
+		if (c == null) {
+			c = descendants[a];
+			if (c == null) {
+				c = ancestorsOf(i);
+			} else {
+				a = i;
+			}
+		}
+		for (int x : c) {
+			if (x == a) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 *	Parents first. The nodes in or below a cycle are not included.
+	 */
+	@NonNull
+	public long[] getTopologicalOrder() {
+		int[] degree = new int[n];
+		int[] queue = new int[n];
+		int tail = 0;
+		for (int i = 0; i < n; i++) {
+			degree[i] = to(i, true) - from(i, true);
+			if (degree[i] == 0) {
+				queue[tail++] = i;
+			}
+		}
+		for (int head = 0; head < tail; head++) {
+			int v = queue[head];
+			int[] a = adj(v, false);
+			for (int k = from(v, false), end = to(v, false); k < end; k++) {
+				if (--degree[a[k]] == 0) {
+					queue[tail++] = a[k];
+				}
+			}
+		}
+		return toUids(Arrays.copyOf(queue, tail));
+	}
+
+	public boolean hasCycle() {
+		return getTopologicalOrder().length != n;
+	}
+
+	/**
+	 *	@return the uids on a cycle. (strongly connected components, iterative Tarjan)
+	 */
+	@NonNull
+	public long[] getCycleNodes() {
+		int[] index = new int[n];
+		int[] low = new int[n];
+		boolean[] onStack = new boolean[n];
+		int[] stack = new int[n];
+		int[] callNode = new int[n];
+		int[] callEdge = new int[n];
+		int[] out = new int[n];
+		int nOut = 0;
+		int sp = 0;
+		int counter = 0;
+		Arrays.fill(index, -1);
+		for (int s = 0; s < n; s++) {
+			if (0 <= index[s]) {
+				continue;
+			}
+			int depth = 0;
+			callNode[0] = s;
+			callEdge[0] = from(s, false);
+			index[s] = low[s] = counter++;
+			stack[sp++] = s;
+			onStack[s] = true;
+			while (0 <= depth) {
+				int v = callNode[depth];
+				if (callEdge[depth] < to(v, false)) {
+					int w = adj(v, false)[callEdge[depth]++];
+					if (index[w] < 0) {
+						index[w] = low[w] = counter++;
+						stack[sp++] = w;
+						onStack[w] = true;
+						depth++;
+						callNode[depth] = w;
+						callEdge[depth] = from(w, false);
+					} else if (onStack[w]) {
+						low[v] = Math.min(low[v], index[w]);
+					}
+					continue;
+				}
+				if (low[v] == index[v]) {
+					int start = sp;
+					do {
+						start--;
+						onStack[stack[start]] = false;
+					} while (stack[start] != v);
+					if (sp - start != 1 || isSelfLoop(v)) {
+						for (int k = start; k < sp; k++) {
+							out[nOut++] = stack[k];
+						}
+					}
+					sp = start;
+				}
+				depth--;
+				if (0 <= depth) {
+					int u = callNode[depth];
+					low[u] = Math.min(low[u], low[v]);
+				}
+			}
+		}
+		int[] rc = Arrays.copyOf(out, nOut);
+		Arrays.sort(rc);
+		return toUids(rc);
+	}
+
+	/**
+	 *	@return the uids which are not reachable from any root (an item without parents).
+	 */
+	@NonNull
+	public long[] getOrphans() {
+		boolean[] reached = new boolean[n];
+		int[] queue = new int[n];
+		int tail = 0;
+		for (int i = 0; i < n; i++) {
+			if (root[i]) {
+				reached[i] = true;
+				queue[tail++] = i;
+			}
+		}
+		for (int head = 0; head < tail; head++) {
+			int v = queue[head];
+			int[] a = adj(v, false);
+			for (int k = from(v, false), end = to(v, false); k < end; k++) {
+				int c = a[k];
+				if (!reached[c]) {
+					reached[c] = true;
+					queue[tail++] = c;
+				}
+			}
+		}
+		int[] rc = new int[n - tail];
+		int k = 0;
+		for (int i = 0; i < n; i++) {
+			if (!reached[i]) {
+				rc[k++] = i;
+			}
+		}
+		return toUids(rc);
+	}
+
+	/**
+	 *	Replaces the parents of uid, and invalidates the closures which may change:
+	 *	the ancestors of uid and its descendants, and the descendants of the old and
+	 *	new ancestors of uid.
+	 */
+	public void setParents(long uid, @NonNull long[] uidParents) {
+		int i = indexOfOrThrow(uid);
+		int[] old = parentsOf(i);
+		int[] next = toIndices(uidParents);
+		invalidateDescendants(ancestorsOf(i));
+		invalidateAncestors(descendantsOf(i));
+		invalidate(i);
+		root[i] = uidParents.length == 0;
+		setOverride(i, next);
+		for (int p : old) {
+			setChildOverride(p, remove(childrenOf(p), i));
+		}
+		for (int p : next) {
+			setChildOverride(p, add(childrenOf(p), i));
+		}
+		invalidateDescendants(ancestorsOf(i));
+		if (n / 8 < nOverride) {
+			compact();
+		}
+	}
+
+	public void clearCache() {
+		Arrays.fill(ancestors, null);
+		Arrays.fill(descendants, null);
+		nCached = 0;
+	}
+
+	private int indexOf(long uid) {
+		return Arrays.binarySearch(uids, uid);
+	}
+
+	private int indexOfOrThrow(long uid) {
+		int i = indexOf(uid);
+		if (i < 0) {
+			throw new IllegalArgumentException("unknown uid:" + uid);
+		}
+		return i;
+	}
+
+	@NonNull
+	private int[] parentsOf(int i) {
+		int[] o = parentOverride[i];
+		return o != null ? o : Arrays.copyOfRange(parentIdx, parentStart[i], parentStart[i + 1]);
+	}
+
+	@NonNull
+	private int[] childrenOf(int i) {
+		int[] o = childOverride[i];
+		return o != null ? o : Arrays.copyOfRange(childIdx, childStart[i], childStart[i + 1]);
+	}
+
+	/**
+	 *	adj(i, up)[from(i, up) ... to(i, up) - 1] are the parents (up) or the children of i.
+	 */
+	@NonNull
+	private int[] adj(int i, boolean up) {
+		int[] o = up ? parentOverride[i] : childOverride[i];
+		return o != null ? o : up ? parentIdx : childIdx;
+	}
+
+	private int from(int i, boolean up) {
+		int[] o = up ? parentOverride[i] : childOverride[i];
+		return o != null ? 0 : up ? parentStart[i] : childStart[i];
+	}
+
+	private int to(int i, boolean up) {
+		int[] o = up ? parentOverride[i] : childOverride[i];
+		return o != null ? o.length : up ? parentStart[i + 1] : childStart[i + 1];
+	}
+
+	@NonNull
+	private int[] ancestorsOf(int i) {
+		int[] rc = ancestors[i];
+		if (rc == null) {
+			rc = closure(i, true);
+			ancestors[i] = cache(rc);
+		}
+		return rc;
+	}
+
+	@NonNull
+	private int[] descendantsOf(int i) {
+		int[] rc = descendants[i];
+		if (rc == null) {
+			rc = closure(i, false);
+			descendants[i] = cache(rc);
+		}
+		return rc;
+	}
+
+	/**
+	 *	iterative DFS. a node with a cached closure is expanded without walking it,
+	 *	the closures of the nodes in it are in it already.
+	 */
+	@NonNull
+	private int[] closure(int start, boolean up) {
+		int[][] cached = up ? ancestors : descendants;
+		int s = nextStamp();
+		int[] out = new int[16];
+		int nOut = 0;
+		int[] stack = new int[16];
+		int sp = 0;
+		mark[start] = s;
+		stack[sp++] = start;
+		while (sp != 0) {
+			int v = stack[--sp];
+			int[] a = adj(v, up);
+			for (int k = from(v, up), end = to(v, up); k < end; k++) {
+				int w = a[k];
+				if (mark[w] == s) {
+					continue;
+				}
+				mark[w] = s;
+				if (out.length == nOut) {
+					out = Arrays.copyOf(out, nOut * 2);
+				}
+				out[nOut++] = w;
+				int[] c = cached[w];
+				if (c != null) {
+					for (int x : c) {
+						if (mark[x] != s) {
+							mark[x] = s;
+							if (out.length == nOut) {
+								out = Arrays.copyOf(out, nOut * 2);
+							}
+							out[nOut++] = x;
+						}
+					}
+				} else {
+					if (stack.length == sp) {
+						stack = Arrays.copyOf(stack, sp * 2);
+					}
+					stack[sp++] = w;
+				}
+			}
+		}
+		return Arrays.copyOf(out, nOut);
+	}
+
+	@NonNull
+	private int[] cache(@NonNull int[] closure) {
+		nCached += closure.length;
+		if (MAX_CACHE_INTS < nCached) {
+			clearCache();
+			nCached = closure.length;
+		}
+		return closure;
+	}
+
+	private int nextStamp() {
+		if (++stamp == Integer.MAX_VALUE) {
+			Arrays.fill(mark, 0);
+			stamp = 1;
+		}
+		return stamp;
+	}
+
+	private void invalidate(int i) {
+		if (ancestors[i] != null) {
+			nCached -= ancestors[i].length;
+			ancestors[i] = null;
+		}
+		if (descendants[i] != null) {
+			nCached -= descendants[i].length;
+			descendants[i] = null;
+		}
+	}
+
+	private void invalidateAncestors(@NonNull int[] nodes) {
+		for (int x : nodes) {
+			if (ancestors[x] != null) {
+				nCached -= ancestors[x].length;
+				ancestors[x] = null;
+			}
+		}
+	}
+
+	private void invalidateDescendants(@NonNull int[] nodes) {
+		for (int x : nodes) {
+			if (descendants[x] != null) {
+				nCached -= descendants[x].length;
+				descendants[x] = null;
+			}
+		}
+	}
+
+	private boolean isSelfLoop(int v) {
+		int[] a = adj(v, false);
+		for (int k = from(v, false), end = to(v, false); k < end; k++) {
+			if (a[k] == v) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void setOverride(int i, @NonNull int[] parents) {
+		if (parentOverride[i] == null) {
+			nOverride++;
+		}
+		parentOverride[i] = parents;
+	}
+
+	private void setChildOverride(int i, @NonNull int[] children) {
+		if (childOverride[i] == null) {
+			nOverride++;
+		}
+		childOverride[i] = children;
+	}
+
+	private void compact() {
+		int[][] parents = new int[n][];
+		for (int i = 0; i < n; i++) {
+			parents[i] = parentsOf(i);
+		}
+		build(parents);
+	}
+
+	private void build(@NonNull int[][] parents) {
+		parentStart = new int[n + 1];
+		childStart = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			parentStart[i + 1] = parentStart[i] + parents[i].length;
+			for (int p : parents[i]) {
+				childStart[p + 1]++;
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			childStart[i + 1] += childStart[i];
+		}
+		parentIdx = new int[parentStart[n]];
+		childIdx = new int[childStart[n]];
+		int[] fill = Arrays.copyOf(childStart, n);
+		for (int i = 0; i < n; i++) {
+			System.arraycopy(parents[i], 0, parentIdx, parentStart[i], parents[i].length);
+			for (int p : parents[i]) {
+				childIdx[fill[p]++] = i;
+			}
+		}
+		parentOverride = new int[n][];
+		childOverride = new int[n][];
+		nOverride = 0;
+	}
+
+	@NonNull
+	private int[] toIndices(@NonNull Iterable<Long> uidParents) {
+		int[] rc = new int[8];
+		int k = 0;
+		for (long uid : uidParents) {
+			int p = indexOf(uid);
+			if (0 <= p) {
+				if (rc.length == k) {
+					rc = Arrays.copyOf(rc, k * 2);
+				}
+				rc[k++] = p;
+			}
+		}
+		return k == 0 ? EMPTY : Arrays.copyOf(rc, k);
+	}
+
+	@NonNull
+	private int[] toIndices(@NonNull long[] uidParents) {
+		int[] rc = new int[uidParents.length];
+		int k = 0;
+		for (long uid : uidParents) {
+			int p = indexOf(uid);
+			if (0 <= p) {
+				rc[k++] = p;
+			}
+		}
+		return k == 0 ? EMPTY : Arrays.copyOf(rc, k);
+	}
+
+	@NonNull
+	private long[] toUids(@NonNull int[] indices) {
+		long[] rc = new long[indices.length];
+		for (int i = 0; i < indices.length; i++) {
+			rc[i] = uids[indices[i]];
+		}
+		return rc;
+	}
+
+	@NonNull
+	private static int[] add(@NonNull int[] a, int x) {
+		int[] rc = Arrays.copyOf(a, a.length + 1);
+		rc[a.length] = x;
+		return rc;
+	}
+
+	@NonNull
+	private static int[] remove(@NonNull int[] a, int x) {
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] == x) {
+				int[] rc = new int[a.length - 1];
+				System.arraycopy(a, 0, rc, 0, i);
+				System.arraycopy(a, i + 1, rc, i, rc.length - i);
+				return rc;
+			}
+		}
+		return a;
+	}
+
+}
@@ -22,23 +22,29 @@ import androidx.annotation.NonNull;
 
 import app.misono.unit206.debug.Log2;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.Set;
 
 public class LineageUtils {
 	private static final String TAG = "LineageUtils";
 
+	/**
+	 *	Iterative, each ancestor is visited once. Use LineageGraph for repeated queries.
+	 */
 	@NonNull
 	public static Set<Long> getUpstreamParents(@NonNull LongSparseArray<LineageItem> array, long uid) {
 		Set<Long> rc = new HashSet<>();
-		LineageItem item = array.get(uid);
-		if (item != null) {
-			Set<Long> parent = item.getParents();
-			for (Long uidParent : parent) {
-				if (!rc.contains(uidParent)) {
-					rc.add(uidParent);
-					Set<Long> setParent = getUpstreamParents(array, uidParent);
-					rc.addAll(setParent);
+		Deque<Long> stack = new ArrayDeque<>();
+		stack.push(uid);
+		while (!stack.isEmpty()) {
+			LineageItem item = array.get(stack.pop());
+			if (item != null) {
+				for (Long uidParent : item.getParents()) {
+					if (rc.add(uidParent)) {
+						stack.push(uidParent);
+					}
 				}
 			}
 		}
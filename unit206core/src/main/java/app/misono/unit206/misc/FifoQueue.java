@@ -126,7 +126,12 @@ public class FifoQueue<E> implements Closeable {
 	}
 
 	public int count() {
-		return fifo.size();
+		lock.lock();
+		try {
+			return fifo != null ? fifo.size() : 0;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 }
@@ -47,14 +47,15 @@ import androidx.core.graphics.ColorUtils;
 import androidx.exifinterface.media.ExifInterface;
 
 import app.misono.unit206.debug.Log2;
+import app.misono.unit206.image.ImageLoader;
 import app.misono.unit206.task.Taskz;
 
 import com.google.android.gms.tasks.Task;
-import com.google.android.gms.tasks.Tasks;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.Executor;
@@ -62,20 +63,20 @@ import java.util.concurrent.Executor;
 public class ImageUtils {
 	private static final String TAG = "ImageUtils";
 
+	/**
+	 *	Decoded via ImageLoader, so the same image is shared by the memory cache
+	 *	and the concurrent requests. The bitmap of the result is shared too. read only,
+	 *	don't recycle it.
+	 */
 	@NonNull
 	public static Task<Bitmap> setImageTask(
 		@NonNull Executor executor,
 		@NonNull ImageView image,
 		@NonNull byte[] data
 	) {
-		return Taskz.call(executor, () -> {
-			Bitmap bitmap = createBitmapResizeRotate(data, 0, false);
-			Tasks.await(Taskz.call(() -> {
-				image.setImageBitmap(bitmap);
-				return null;
-			}));
-			return bitmap;
-		});
+		Task<Bitmap> task = ImageLoader.getInstance(image.getContext())
+			.load(ImageLoader.keyOf(data), 0, ImageLoader.bytesDecoder(data), null);
+		return setImageTask(executor, image, task);
 	}
 
 	@AnyThread
@@ -85,15 +86,10 @@ public class ImageUtils {
 		@NonNull ImageView image,
 		@NonNull Uri uri
 	) {
-		return Taskz.call(executor, () -> {
-			Bitmap bitmap = readBitmapResizeRotate(image.getContext(), uri, 0, false);
-			Task<Void> task = Taskz.call(() -> {
-				image.setImageBitmap(bitmap);
-				return null;
-			});
-			Tasks.await(task);
-			return bitmap;
-		});
+		Context context = image.getContext();
+		Task<Bitmap> task = ImageLoader.getInstance(context)
+			.load(ImageLoader.keyOf(uri), 0, ImageLoader.uriDecoder(context, uri), null);
+		return setImageTask(executor, image, task);
 	}
 
 	@AnyThread
@@ -103,10 +99,22 @@ public class ImageUtils {
 		@NonNull ImageView image,
 		@NonNull String pathAsset
 	) {
-		return Taskz.call(executor, () -> {
-			byte[] b = Utils.readAssetFileWithException(image.getContext(), pathAsset);
-			return Tasks.await(setImageTask(executor, image, b));
-		});
+		Context context = image.getContext();
+		Task<Bitmap> task = ImageLoader.getInstance(context)
+			.load(ImageLoader.keyOfAsset(pathAsset), 0, ImageLoader.assetDecoder(context, pathAsset), null);
+		return setImageTask(executor, image, task);
+	}
+
+	@NonNull
+	private static Task<Bitmap> setImageTask(
+		@NonNull Executor executor,
+		@NonNull ImageView image,
+		@NonNull Task<Bitmap> task
+	) {
+		return Taskz.thenCompose(task, executor, bitmap -> Taskz.call(() -> {
+			image.setImageBitmap(bitmap);
+			return bitmap;
+		}));
 	}
 
 	@WorkerThread
@@ -262,6 +270,10 @@ public class ImageUtils {
 		});
 	}
 
+	/**
+	 *	Opens the uri once. EXIF, bounds and pixels are read from the same buffered stream,
+	 *	so the encoded file isn't kept on the heap.
+	 */
 	@WorkerThread
 	@Nullable
 	public static Bitmap readBitmapResizeRotate(
@@ -270,13 +282,15 @@ public class ImageUtils {
 		int pixel,
 		boolean mutable
 	) {
-		byte[] binary = Utils.readBytes(context, uri);
-		Bitmap rc = null;
-		if (binary != null) {
-			int rotateDegree = getImageRotateDegree(context, uri);
-			rc = decodeBitmapResizeRotate(binary, rotateDegree, mutable, pixel);
+		try (
+			UriSource src = new UriSource(context, uri);
+		) {
+			int rotateDegree = src.readRotateDegree();
+			return decodeBitmapResizeRotate(src, rotateDegree, pixel, true, mutable, null);
+		} catch (IOException e) {
+			log("readBitmapResizeRotate:" + e);
+			return null;
 		}
-		return rc;
 	}
 
 	@AnyThread
@@ -295,8 +309,22 @@ public class ImageUtils {
 	@WorkerThread
 	@Nullable
 	public static Bitmap createBitmapResizeRotate(@NonNull byte[] image, int pixel, boolean mutable) {
+		return createBitmapResizeRotate(image, pixel, mutable, null);
+	}
+
+	/**
+	 *	@param reuse decoded into this bitmap (inBitmap) if it fits. it must not be used by others.
+	 */
+	@WorkerThread
+	@Nullable
+	public static Bitmap createBitmapResizeRotate(
+		@NonNull byte[] image,
+		int pixel,
+		boolean mutable,
+		@Nullable Bitmap reuse
+	) {
 		int rotateDegree = getImageRotateDegree(image);
-		return decodeBitmapResizeRotate(image, rotateDegree, mutable, pixel);
+		return decodeBitmapResizeRotate(image, rotateDegree, pixel, true, mutable, reuse);
 	}
 
 	@WorkerThread
@@ -304,54 +332,347 @@ public class ImageUtils {
 	private static Bitmap decodeBitmapResizeRotate(
 		@NonNull byte[] image,
 		int rotateDegree,
+		int pixel,
+		boolean filter,
 		boolean mutable,
-		int pixel
+		@Nullable Bitmap reuse
 	) {
-		return decodeBitmapResizeRotate(image, rotateDegree, pixel, true, mutable);
+		ImageSource src = opts -> BitmapFactory.decodeByteArray(image, 0, image.length, opts);
+		try {
+			return decodeBitmapResizeRotate(src, rotateDegree, pixel, filter, mutable, reuse);
+		} catch (IOException e) {
+			return null;		// never.
+		}
 	}
 
+	/**
+	 *	Reads the bounds first and decodes with inSampleSize, so the full resolution
+	 *	bitmap is never allocated. The rest of the scale and the rotation are done in one pass.
+	 */
 	@WorkerThread
 	@Nullable
 	private static Bitmap decodeBitmapResizeRotate(
-		@NonNull byte[] image,
+		@NonNull ImageSource src,
 		int rotateDegree,
 		int pixel,
 		boolean filter,
-		boolean mutable
-	) {
-		Bitmap rc = null;
-		Bitmap bitmap = decodeImageBestEffort(image);
-		if (bitmap != null) {
-			int w = bitmap.getWidth();
-			int h = bitmap.getHeight();
-			float width, height;
-			if (rotateDegree == 0 || rotateDegree == 180) {
-				width = w;
-				height = h;
-			} else {
-				width = h;
-				height = w;
+		boolean mutable,
+		@Nullable Bitmap reuse
+	) throws IOException {
+		BitmapFactory.Options opts = new BitmapFactory.Options();
+		opts.inJustDecodeBounds = true;
+		src.decode(opts);
+		int wSrc = opts.outWidth;
+		int hSrc = opts.outHeight;
+		if (wSrc <= 0 || hSrc <= 0) {
+			return null;
+		}
+		int sample = calcSampleSize(wSrc, hSrc, pixel);
+		Bitmap bitmap = null;
+		for (int i = 0; ; i++) {
+			int w = (wSrc + sample - 1) / sample;
+			int h = (hSrc + sample - 1) / sample;
+			int max = Math.max(w, h);
+			opts = new BitmapFactory.Options();
+			opts.inSampleSize = sample;
+			opts.inPreferredConfig = Bitmap.Config.ARGB_8888;
+			opts.inMutable = mutable;
+			if (rotateDegree == 0 && pixel != 0 && pixel < max) {
+				// let the decoder scale to the target size. no second bitmap.
+				opts.inScaled = true;
+				opts.inDensity = max;
+				opts.inTargetDensity = pixel;
+				w = (int)((long)w * pixel / max) + 1;
+				h = (int)((long)h * pixel / max) + 1;
+			}
+			if (reuse != null && canReuse(reuse, w, h, sample)) {
+				opts.inBitmap = reuse;
+			}
+			try {
+				bitmap = src.decode(opts);
+				break;
+			} catch (IllegalArgumentException e) {
+				if (opts.inBitmap == null) {
+					throw e;
+				}
+				reuse = null;		// inBitmap doesn't fit. decode to a new bitmap.
+			} catch (OutOfMemoryError e) {
+				if (3 <= i) {		// try max 4 times...
+					break;
+				}
+				log("decodeBitmapResizeRotate:retry:" + i);
+				sample *= 2;
 			}
+		}
+		if (bitmap == null) {
+			return null;
+		}
+		Bitmap rc = scaleRotate(bitmap, rotateDegree, pixel, filter);
+		if (rc != bitmap && bitmap != reuse) {
+			bitmap.recycle();
+		}
+		if (mutable) {
+			rc = toMutable(rc);
+		}
+		return rc;
+	}
 
-			float scale;
-			if (height < width) {
-				scale = (float)pixel / width;
+	/**
+	 *	@return power of two inSampleSize which keeps the long side of the image pixel or more.
+	 *		1 if pixel is 0.
+	 */
+	@AnyThread
+	public static int calcSampleSize(int width, int height, int pixel) {
+		int sample = 1;
+		if (0 < pixel) {
+			int max = Math.max(width, height);
+			while (pixel <= max / (sample * 2)) {
+				sample *= 2;
+			}
+		}
+		return sample;
+	}
+
+	private static boolean canReuse(@NonNull Bitmap reuse, int width, int height, int sample) {
+		if (reuse.isRecycled() || !reuse.isMutable()) {
+			return false;
+		}
+		if (Build.VERSION.SDK_INT < 19) {
+			return sample == 1 && reuse.getWidth() == width && reuse.getHeight() == height;
+		}
+		return (long)width * height * 4 <= reuse.getAllocationByteCount();		// API-19
+	}
+
+	/**
+	 *	Rotates clockwise, then shrinks the long side to pixel. (0 or larger than the
+	 *	image: no scaling)
+	 *
+	 *	@return bitmap itself if nothing to do.
+	 */
+	@AnyThread
+	@NonNull
+	public static Bitmap scaleRotate(@NonNull Bitmap bitmap, int rotateDegree, int pixel, boolean filter) {
+		int w = bitmap.getWidth();
+		int h = bitmap.getHeight();
+		float width, height;
+		if (rotateDegree == 0 || rotateDegree == 180) {
+			width = w;
+			height = h;
+		} else {
+			width = h;
+			height = w;
+		}
+
+		float scale;
+		if (height < width) {
+			scale = (float)pixel / width;
+		} else {
+			scale = (float)pixel / height;
+		}
+		if (1 <= scale || pixel == 0) {
+			scale = 1;
+		}
+		if (rotateDegree == 0 && scale == 1) {
+			return bitmap;
+		}
+		Matrix matrix = new Matrix();
+		matrix.setRotate(rotateDegree, (float)w / 2, (float)h / 2);
+		matrix.postScale(scale, scale);
+		return Bitmap.createBitmap(bitmap, 0, 0, w, h, matrix, filter);
+	}
+
+	private interface ImageSource {
+		@Nullable
+		Bitmap decode(@NonNull BitmapFactory.Options opts) throws IOException;
+	}
+
+	/**
+	 *	Content uri opened once with a marked buffer. Each decode starts from the head, and
+	 *	the uri is opened again only if the previous read went over the mark.
+	 */
+	private static class UriSource implements ImageSource, Closeable {
+		private static final int SIZE_MARK = 1024 * 1024;
+
+		private final RewindableStream stream;
+
+		private UriSource(@NonNull Context context, @NonNull Uri uri) throws IOException {
+			stream = new RewindableStream(() -> {
+				InputStream raw = context.getContentResolver().openInputStream(uri);
+				if (raw == null) {
+					throw new IOException("cannot open... " + uri);
+				}
+				return raw;
+			}, SIZE_MARK);
+		}
+
+		private int readRotateDegree() throws IOException {
+			int rc = readJpegRotateDegree(new LimitedInputStream(stream.head(), SIZE_MARK));
+			if (rc < 0) {
+				try {
+					rc = getImageRotateDegree(new LimitedInputStream(stream.head(), SIZE_MARK));
+				} catch (IOException | RuntimeException e) {
+					// RuntimeException if HEIF.
+					rc = 0;
+				}
+			}
+			return rc;
+		}
+
+		/**
+		 *	starts from the head even if the last decode threw on the way. (OOM or inBitmap retry)
+		 */
+		@Override
+		@Nullable
+		public Bitmap decode(@NonNull BitmapFactory.Options opts) throws IOException {
+			return BitmapFactory.decodeStream(stream.head(), null, opts);
+		}
+
+		@Override
+		public void close() {
+			stream.close();
+		}
+	}
+
+	/**
+	 *	Reads up to limit bytes. close() doesn't close the source.
+	 */
+	private static class LimitedInputStream extends InputStream {
+		private final InputStream is;
+
+		private int remain;
+
+		private LimitedInputStream(@NonNull InputStream is, int limit) {
+			this.is = is;
+			remain = limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remain <= 0) {
+				return -1;
+			}
+			int rc = is.read();
+			if (0 <= rc) {
+				remain--;
+			}
+			return rc;
+		}
+
+		@Override
+		public int read(@NonNull byte[] b, int off, int len) throws IOException {
+			if (remain <= 0) {
+				return -1;
+			}
+			int rc = is.read(b, off, Math.min(len, remain));
+			if (0 < rc) {
+				remain -= rc;
+			}
+			return rc;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 *	Parses the orientation in the APP1 EXIF segment of JPEG. It stops at the first scan.
+	 *
+	 *	@return degree. -1 if not JPEG.
+	 */
+	private static int readJpegRotateDegree(@NonNull InputStream is) throws IOException {
+		if (is.read() != 0xff || is.read() != 0xd8) {
+			return -1;
+		}
+		for ( ; ; ) {
+			int marker = is.read();
+			if (marker < 0) {
+				return 0;
+			}
+			if (marker != 0xff) {
+				return 0;		// broken.
+			}
+			while (marker == 0xff) {
+				marker = is.read();
+			}
+			if (marker < 0 || marker == 0xda || marker == 0xd9) {
+				return 0;
+			}
+			int len = (is.read() << 8 | is.read()) - 2;
+			if (len < 0) {
+				return 0;
+			}
+			if (marker == 0xe1 && 14 <= len) {
+				byte[] b = new byte[len];
+				if (readFully(is, b) != len) {
+					return 0;
+				}
+				if (b[0] == 'E' && b[1] == 'x' && b[2] == 'i' && b[3] == 'f' && b[4] == 0 && b[5] == 0) {
+					return parseTiffRotateDegree(b, 6);
+				}
 			} else {
-				scale = (float)pixel / height;
+				long skip = len;
+				while (0 < skip) {
+					long n = is.skip(skip);
+					if (n <= 0) {
+						return 0;
+					}
+					skip -= n;
+				}
 			}
-			if (1 <= scale || pixel == 0) {
-				scale = 1;
+		}
+	}
+
+	private static int parseTiffRotateDegree(@NonNull byte[] b, int tiff) {
+		boolean le = b[tiff] == 'I';
+		int ifd = tiff + (int)read32(b, tiff + 4, le);
+		if (ifd < tiff || b.length < ifd + 2) {
+			return 0;
+		}
+		int n = read16(b, ifd, le);
+		for (int i = 0; i < n; i++) {
+			int entry = ifd + 2 + i * 12;
+			if (b.length < entry + 12) {
+				break;
 			}
-			Matrix matrix = new Matrix();
-			matrix.setRotate(rotateDegree, (float)w / 2, (float)h / 2);
-			matrix.postScale(scale, scale);
+			if (read16(b, entry, le) == 0x0112) {
+				switch (read16(b, entry + 8, le)) {
+				case ExifInterface.ORIENTATION_ROTATE_90:
+					return 90;
+				case ExifInterface.ORIENTATION_ROTATE_180:
+					return 180;
+				case ExifInterface.ORIENTATION_ROTATE_270:
+					return 270;
+				default:
+					return 0;
+				}
+			}
+		}
+		return 0;
+	}
+
+	private static int read16(@NonNull byte[] b, int i, boolean le) {
+		int b0 = b[i] & 0xff;
+		int b1 = b[i + 1] & 0xff;
+		return le ? b1 << 8 | b0 : b0 << 8 | b1;
+	}
 
-			rc = Bitmap.createBitmap(bitmap, 0, 0, w, h, matrix, filter);
-			if (mutable) {
-				rc = toMutable(rc);
+	private static long read32(@NonNull byte[] b, int i, boolean le) {
+		long hi = read16(b, i + (le ? 2 : 0), le);
+		long lo = read16(b, i + (le ? 0 : 2), le);
+		return hi << 16 | lo;
+	}
+
+	private static int readFully(@NonNull InputStream is, @NonNull byte[] b) throws IOException {
+		int pos = 0;
+		while (pos < b.length) {
+			int len = is.read(b, pos, b.length - pos);
+			if (len < 0) {
+				break;
 			}
+			pos += len;
 		}
-		return rc;
+		return pos;
 	}
 
 	@NonNull
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.misc;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ *	long -> Object hash map. O(1) put/remove, no boxing.
+ *
+ *	The entries are kept in dense arrays, and an open addressing (linear probing)
+ *	table points to them. So keyAt()/valueAt() iterate without allocation,
+ *	like LongSparseArray, but in the insertion order (ordered) or in no particular order.
+ *
+ *	<pre>
+ *	int n = map.size();
+ *	for (int i = 0; i &lt; n; i++) {
+ *		long key = map.keyAt(i);
+ *		V value = map.valueAt(i);
+ *	}
+ *	</pre>
+ *
+ *	Not thread safe.
+ */
+public class LongHashMap<V> implements IHashLong<V> {
+	private static final Object DELETED = new Object();
+	private static final int MIN_CAPACITY = 8;
+
+	private final boolean ordered;
+
+	private Object[] values;
+	private long[] keys;
+	private int[] table;		// dense index + 1. 0 is empty.
+	private int mask, end, size, holes;
+
+	public LongHashMap() {
+		this(MIN_CAPACITY, false);
+	}
+
+	/**
+	 *	@param ordered true to keep the insertion order. remove() leaves a hole
+	 *			which is compacted by the next index access.
+	 *			false moves the last entry into the hole.
+	 */
+	public LongHashMap(int capacity, boolean ordered) {
+		this.ordered = ordered;
+		allocate(Math.max(MIN_CAPACITY, capacity));
+	}
+
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(long key) {
+		return 0 <= indexOfDense(key);
+	}
+
+	@Override
+	@Nullable
+	public V get(long key) {
+		return get(key, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key, V valueIfKeyNotFound) {
+		int i = indexOfDense(key);
+		return i < 0 ? valueIfKeyNotFound : (V)values[i];
+	}
+
+	/**
+	 *	@return the previous value, or null.
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		int slot = hash(key) & mask;
+		for ( ; ; ) {
+			int t = table[slot];
+			if (t == 0) {
+				break;
+			}
+			if (keys[t - 1] == key) {
+				V rc = (V)values[t - 1];
+				values[t - 1] = value;
+				return rc;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (end == keys.length) {
+			rebuild(holes * 2 < end ? keys.length * 2 : keys.length);
+			slot = hash(key) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+		}
+		keys[end] = key;
+		values[end] = value;
+		table[slot] = ++end;
+		size++;
+		return null;
+	}
+
+	/**
+	 *	@return the removed value, or null.
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int slot = hash(key) & mask;
+		for ( ; ; ) {
+			int t = table[slot];
+			if (t == 0) {
+				return null;
+			}
+			if (keys[t - 1] == key) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int i = table[slot] - 1;
+		V rc = (V)values[i];
+		deleteSlot(slot);
+		size--;
+		int last = end - 1;
+		if (i == last) {
+			values[last] = null;
+			end--;
+			if (ordered) {
+				while (end != 0 && values[end - 1] == DELETED) {
+					values[--end] = null;
+					holes--;
+				}
+			}
+		} else if (ordered) {
+			values[i] = DELETED;
+			holes++;
+		} else {
+			keys[i] = keys[last];
+			values[i] = values[last];
+			values[last] = null;
+			table[slotOfDense(last)] = i + 1;
+			end--;
+		}
+		return rc;
+	}
+
+	/**
+	 *	same as remove(). for LongSparseArray compatibility.
+	 */
+	public void delete(long key) {
+		remove(key);
+	}
+
+	public void clear() {
+		Arrays.fill(table, 0);
+		Arrays.fill(values, 0, end, null);
+		end = 0;
+		size = 0;
+		holes = 0;
+	}
+
+	/**
+	 *	@param index 0 ... size() - 1
+	 */
+	public long keyAt(int index) {
+		compact();
+		return keys[index];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V valueAt(int index) {
+		compact();
+		return (V)values[index];
+	}
+
+	public void setValueAt(int index, V value) {
+		compact();
+		values[index] = value;
+	}
+
+	/**
+	 *	@return index for keyAt()/valueAt(), or -1.
+	 */
+	public int indexOfKey(long key) {
+		compact();
+		return indexOfDense(key);
+	}
+
+	/**
+	 *	Adds all of the values to out, in the index order.
+	 */
+	@SuppressWarnings("unchecked")
+	public void values(@NonNull Collection<? super V> out) {
+		compact();
+		for (int i = 0; i < end; i++) {
+			out.add((V)values[i]);
+		}
+	}
+
+	@NonNull
+	public long[] keys() {
+		compact();
+		return Arrays.copyOf(keys, end);
+	}
+
+	private int indexOfDense(long key) {
+		int slot = hash(key) & mask;
+		for ( ; ; ) {
+			int t = table[slot];
+			if (t == 0) {
+				return -1;
+			}
+			if (keys[t - 1] == key) {
+				return t - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private int slotOfDense(int i) {
+		int slot = hash(keys[i]) & mask;
+		while (table[slot] != i + 1) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 *	backward shift deletion. no tombstone in the table.
+	 */
+	private void deleteSlot(int slot) {
+		int i = slot;
+		int j = slot;
+		for ( ; ; ) {
+			j = (j + 1) & mask;
+			int t = table[j];
+			if (t == 0) {
+				table[i] = 0;
+				return;
+			}
+			int home = hash(keys[t - 1]) & mask;
+			boolean stay = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+			if (!stay) {
+				table[i] = t;
+				i = j;
+			}
+		}
+	}
+
+	private void compact() {
+		if (holes != 0) {
+			rebuild(keys.length);
+		}
+	}
+
+	private void rebuild(int capacity) {
+		long[] k = keys;
+		Object[] v = values;
+		int n = end;
+		allocate(capacity);
+		for (int i = 0; i < n; i++) {
+			if (v[i] != DELETED) {
+				long key = k[i];
+				int slot = hash(key) & mask;
+				while (table[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[end] = key;
+				values[end] = v[i];
+				table[slot] = ++end;
+			}
+		}
+		holes = 0;
+	}
+
+	private void allocate(int capacity) {
+		int lenTable = Integer.highestOneBit(capacity * 2 - 1) * 2;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		table = new int[lenTable];
+		mask = lenTable - 1;
+		end = 0;
+	}
+
+	private static int hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int)key;
+	}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.misc;
+
+import androidx.annotation.NonNull;
+
+/**
+ *	Set of long without boxing. Same structure as LongHashMap.
+ *
+ *	Not thread safe.
+ */
+public class LongHashSet {
+	private final LongHashMap<Boolean> map;
+
+	public LongHashSet() {
+		map = new LongHashMap<>();
+	}
+
+	public LongHashSet(int capacity, boolean ordered) {
+		map = new LongHashMap<>(capacity, ordered);
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public boolean isEmpty() {
+		return map.isEmpty();
+	}
+
+	public boolean contains(long key) {
+		return map.containsKey(key);
+	}
+
+	/**
+	 *	@return true if added.
+	 */
+	public boolean add(long key) {
+		return map.put(key, Boolean.TRUE) == null;
+	}
+
+	/**
+	 *	@return true if removed.
+	 */
+	public boolean remove(long key) {
+		return map.remove(key) != null;
+	}
+
+	public void clear() {
+		map.clear();
+	}
+
+	/**
+	 *	@param index 0 ... size() - 1
+	 */
+	public long keyAt(int index) {
+		return map.keyAt(index);
+	}
+
+	@NonNull
+	public long[] toArray() {
+		return map.keys();
+	}
+
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.misc;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ *	MurmurHash3 x64 128 bit. Non-cryptographic, compatible with the reference implementation.
+ *
+ *	The result is stored to long[2] {h1, h2} given by the caller, so hashing doesn't allocate.
+ *	CharSequence is hashed as its UTF-8 bytes.
+ *
+ *	An instance is the streaming (incremental) version. It isn't thread safe.
+ */
+public final class Murmur3Hash128 {
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private static final ThreadLocal<Murmur3Hash128> local = new ThreadLocal<>();
+
+	private final byte[] buf;
+	private final long seed;
+
+	private long h1, h2, total;
+	private int lenBuf;
+
+	public Murmur3Hash128() {
+		this(0);
+	}
+
+	public Murmur3Hash128(long seed) {
+		this.seed = seed;
+		buf = new byte[16];
+		reset();
+	}
+
+	@NonNull
+	public Murmur3Hash128 reset() {
+		h1 = seed;
+		h2 = seed;
+		total = 0;
+		lenBuf = 0;
+		return this;
+	}
+
+	@NonNull
+	public Murmur3Hash128 update(@NonNull byte[] b) {
+		return update(b, 0, b.length);
+	}
+
+	@NonNull
+	public Murmur3Hash128 update(@NonNull byte[] b, int offset, int len) {
+		total += len;
+		int end = offset + len;
+		if (lenBuf != 0) {
+			int n = Math.min(16 - lenBuf, len);
+			System.arraycopy(b, offset, buf, lenBuf, n);
+			lenBuf += n;
+			offset += n;
+			if (lenBuf < 16) {
+				return this;
+			}
+			block(XxHash64.getLong(buf, 0), XxHash64.getLong(buf, 8));
+			lenBuf = 0;
+		}
+		for ( ; offset + 16 <= end; offset += 16) {
+			block(XxHash64.getLong(b, offset), XxHash64.getLong(b, offset + 8));
+		}
+		if (offset < end) {
+			System.arraycopy(b, offset, buf, 0, end - offset);
+			lenBuf = end - offset;
+		}
+		return this;
+	}
+
+	/**
+	 *	Reads from the position to the limit. The position isn't changed.
+	 */
+	@NonNull
+	public Murmur3Hash128 update(@NonNull ByteBuffer b) {
+		if (b.hasArray()) {
+			return update(b.array(), b.arrayOffset() + b.position(), b.remaining());
+		}
+		int pos = b.position();
+		int end = b.limit();
+		boolean swap = b.order() != ByteOrder.LITTLE_ENDIAN;
+		total += end - pos;
+		for ( ; lenBuf != 0 && pos < end; pos++) {
+			putByte(b.get(pos));
+		}
+		for ( ; pos + 16 <= end; pos += 16) {
+			block(XxHash64.getLong(b, pos, swap), XxHash64.getLong(b, pos + 8, swap));
+		}
+		for ( ; pos < end; pos++) {
+			buf[lenBuf++] = b.get(pos);
+		}
+		return this;
+	}
+
+	/**
+	 *	Adds the UTF-8 bytes of s.
+	 */
+	@NonNull
+	public Murmur3Hash128 update(@NonNull CharSequence s) {
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			int c = s.charAt(i);
+			if (c < 0x80) {
+				putByte(c);
+				total++;
+			} else if (c < 0x800) {
+				putByte(0xc0 | (c >> 6));
+				putByte(0x80 | (c & 0x3f));
+				total += 2;
+			} else if (Character.isHighSurrogate((char)c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint((char)c, s.charAt(++i));
+				putByte(0xf0 | (cp >> 18));
+				putByte(0x80 | ((cp >> 12) & 0x3f));
+				putByte(0x80 | ((cp >> 6) & 0x3f));
+				putByte(0x80 | (cp & 0x3f));
+				total += 4;
+			} else if (Character.isSurrogate((char)c)) {
+				putByte('?');		// same as String.getBytes(UTF_8)
+				total++;
+			} else {
+				putByte(0xe0 | (c >> 12));
+				putByte(0x80 | ((c >> 6) & 0x3f));
+				putByte(0x80 | (c & 0x3f));
+				total += 3;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 *	@param out {h1, h2}
+	 */
+	public void getValue(@NonNull long[] out) {
+		finish(h1, h2, buf, 0, lenBuf, total, out);
+	}
+
+	private void putByte(int c) {
+		buf[lenBuf++] = (byte)c;
+		if (lenBuf == 16) {
+			block(XxHash64.getLong(buf, 0), XxHash64.getLong(buf, 8));
+			lenBuf = 0;
+		}
+	}
+
+	private void block(long k1, long k2) {
+		h1 ^= mixK1(k1);
+		h1 = Long.rotateLeft(h1, 27);
+		h1 += h2;
+		h1 = h1 * 5 + 0x52dce729;
+		h2 ^= mixK2(k2);
+		h2 = Long.rotateLeft(h2, 31);
+		h2 += h1;
+		h2 = h2 * 5 + 0x38495ab5;
+	}
+
+	/**
+	 *	@param out {h1, h2}
+	 */
+	public static void hash(@NonNull byte[] b, int offset, int len, long seed, @NonNull long[] out) {
+		long h1 = seed;
+		long h2 = seed;
+		int end = offset + len;
+		int i = offset;
+		for ( ; i + 16 <= end; i += 16) {
+			h1 ^= mixK1(XxHash64.getLong(b, i));
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+			h2 ^= mixK2(XxHash64.getLong(b, i + 8));
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+		finish(h1, h2, b, i, end - i, len, out);
+	}
+
+	public static void hash(@NonNull byte[] b, @NonNull long[] out) {
+		hash(b, 0, b.length, 0, out);
+	}
+
+	/**
+	 *	Hashes from the position to the limit. The position isn't changed.
+	 */
+	public static void hash(@NonNull ByteBuffer b, @NonNull long[] out) {
+		if (b.hasArray()) {
+			hash(b.array(), b.arrayOffset() + b.position(), b.remaining(), 0, out);
+		} else {
+			get().update(b).getValue(out);
+		}
+	}
+
+	public static void hash(@NonNull CharSequence s, @NonNull long[] out) {
+		get().update(s).getValue(out);
+	}
+
+	@NonNull
+	private static Murmur3Hash128 get() {
+		Murmur3Hash128 h = local.get();
+		if (h == null) {
+			h = new Murmur3Hash128();
+			local.set(h);
+		}
+		return h.reset();
+	}
+
+	private static void finish(long h1, long h2, @NonNull byte[] b, int i, int len, long total, @NonNull long[] out) {
+		long k1 = 0;
+		long k2 = 0;
+		for (int j = len - 1; 8 <= j; j--) {
+			k2 = k2 << 8 | (b[i + j] & 0xffL);
+		}
+		for (int j = Math.min(len, 8) - 1; 0 <= j; j--) {
+			k1 = k1 << 8 | (b[i + j] & 0xffL);
+		}
+		if (8 < len) {
+			h2 ^= mixK2(k2);
+		}
+		if (0 < len) {
+			h1 ^= mixK1(k1);
+		}
+		h1 ^= total;
+		h2 ^= total;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+		out[0] = h1;
+		out[1] = h2;
+	}
+
+	private static long mixK1(long k1) {
+		k1 *= C1;
+		k1 = Long.rotateLeft(k1, 31);
+		return k1 * C2;
+	}
+
+	private static long mixK2(long k2) {
+		k2 *= C2;
+		k2 = Long.rotateLeft(k2, 33);
+		return k2 * C1;
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.misc;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collection;
+
+/**
+ *	Immutable long -> Object map. put()/remove() return a new map which shares all but
+ *	O(log32 n) nodes with the old one (hash array mapped trie), so a snapshot can be
+ *	handed to other threads without copying.
+ *
+ *	The iteration order is the hash order.
+ */
+public final class PersistentLongMap<V> {
+	private static final PersistentLongMap<?> EMPTY = new PersistentLongMap<>(null, 0);
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	private final Node root;
+	private final int size;
+
+	private PersistentLongMap(@Nullable Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	@NonNull
+	public static <V> PersistentLongMap<V> empty() {
+		return (PersistentLongMap<V>)EMPTY;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean containsKey(long key) {
+		return find(key) != null;
+	}
+
+	@Nullable
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		Leaf leaf = find(key);
+		return leaf != null ? (V)leaf.value : null;
+	}
+
+	/**
+	 *	@return this if nothing changed.
+	 */
+	@NonNull
+	public PersistentLongMap<V> put(long key, V value) {
+		long h = hash(key);
+		if (root == null) {
+			Leaf leaf = new Leaf(key, h, value);
+			return new PersistentLongMap<>(new Node(bit(h, 0), new Object[] { leaf }), 1);
+		}
+		boolean[] added = new boolean[1];
+		Node node = put(root, new Leaf(key, h, value), 0, added);
+		if (node == root) {
+			return this;
+		}
+		return new PersistentLongMap<>(node, added[0] ? size + 1 : size);
+	}
+
+	/**
+	 *	@return this if key is not found.
+	 */
+	@NonNull
+	public PersistentLongMap<V> remove(long key) {
+		if (root == null) {
+			return this;
+		}
+		Object node = remove(root, key, hash(key), 0);
+		if (node == root) {
+			return this;
+		}
+		if (node == null) {
+			return empty();
+		}
+		return new PersistentLongMap<>((Node)node, size - 1);
+	}
+
+	/**
+	 *	Adds all of the values to out, in the hash order.
+	 */
+	@SuppressWarnings("unchecked")
+	public void values(@NonNull Collection<? super V> out) {
+		if (root != null) {
+			values(root, (Collection<Object>)out);
+		}
+	}
+
+	@NonNull
+	public long[] keys() {
+		long[] rc = new long[size];
+		if (root != null) {
+			keys(root, rc, 0);
+		}
+		return rc;
+	}
+
+	@Nullable
+	private Leaf find(long key) {
+		long h = hash(key);
+		Node node = root;
+		int shift = 0;
+		while (node != null) {
+			int bit = bit(h, shift);
+			if ((node.bitmap & bit) == 0) {
+				return null;
+			}
+			Object o = node.array[index(node.bitmap, bit)];
+			if (o instanceof Leaf) {
+				Leaf leaf = (Leaf)o;
+				return leaf.key == key ? leaf : null;
+			}
+			node = (Node)o;
+			shift += BITS;
+		}
+		return null;
+	}
+
+	@NonNull
+	private static Node put(@NonNull Node node, @NonNull Leaf leaf, int shift, @NonNull boolean[] added) {
+		int bit = bit(leaf.hash, shift);
+		int i = index(node.bitmap, bit);
+		if ((node.bitmap & bit) == 0) {
+			added[0] = true;
+			return node.insert(bit, i, leaf);
+		}
+		Object o = node.array[i];
+		if (o instanceof Leaf) {
+			Leaf old = (Leaf)o;
+			if (old.key == leaf.key) {
+				return old.value == leaf.value ? node : node.replace(i, leaf);
+			}
+			added[0] = true;
+			return node.replace(i, pair(old, leaf, shift + BITS));
+		}
+		Node child = (Node)o;
+		Node n = put(child, leaf, shift + BITS, added);
+		return n == child ? node : node.replace(i, n);
+	}
+
+	/**
+	 *	the hash is a bijection of the key, so two keys always part within 64 bits.
+	 */
+	@NonNull
+	private static Node pair(@NonNull Leaf a, @NonNull Leaf b, int shift) {
+		int ba = bit(a.hash, shift);
+		int bb = bit(b.hash, shift);
+		if (ba == bb) {
+			return new Node(ba, new Object[] { pair(a, b, shift + BITS) });
+		}
+		Object[] array = Integer.compareUnsigned(ba, bb) < 0 ? new Object[] { a, b } : new Object[] { b, a };
+		return new Node(ba | bb, array);
+	}
+
+	/**
+	 *	@return node itself if not found, null if empty, or a Leaf to be pulled up.
+	 */
+	@Nullable
+	private static Object remove(@NonNull Node node, long key, long h, int shift) {
+		int bit = bit(h, shift);
+		if ((node.bitmap & bit) == 0) {
+			return node;
+		}
+		int i = index(node.bitmap, bit);
+		Object o = node.array[i];
+		Object r;
+		if (o instanceof Leaf) {
+			if (((Leaf)o).key != key) {
+				return node;
+			}
+			r = null;
+		} else {
+			r = remove((Node)o, key, h, shift + BITS);
+			if (r == o) {
+				return node;
+			}
+		}
+		if (r == null) {
+			if (node.array.length == 1) {
+				return null;
+			}
+			if (node.array.length == 2 && 0 < shift) {
+				Object other = node.array[1 - i];
+				if (other instanceof Leaf) {
+					return other;
+				}
+			}
+			return node.delete(bit, i);
+		}
+		if (r instanceof Leaf && node.array.length == 1 && 0 < shift) {
+			return r;
+		}
+		return node.replace(i, r);
+	}
+
+	private static void values(@NonNull Node node, @NonNull Collection<Object> out) {
+		for (Object o : node.array) {
+			if (o instanceof Leaf) {
+				out.add(((Leaf)o).value);
+			} else {
+				values((Node)o, out);
+			}
+		}
+	}
+
+	private static int keys(@NonNull Node node, @NonNull long[] out, int n) {
+		for (Object o : node.array) {
+			if (o instanceof Leaf) {
+				out[n++] = ((Leaf)o).key;
+			} else {
+				n = keys((Node)o, out, n);
+			}
+		}
+		return n;
+	}
+
+	private static int bit(long h, int shift) {
+		return 1 << ((int)(h >>> shift) & MASK);
+	}
+
+	private static int index(int bitmap, int bit) {
+		return Integer.bitCount(bitmap & (bit - 1));
+	}
+
+	/**
+	 *	fmix64 of MurmurHash3. a bijection.
+	 */
+	private static long hash(long key) {
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	private static final class Leaf {
+		private final long key;
+		private final long hash;
+		private final Object value;
+
+		private Leaf(long key, long hash, Object value) {
+			this.key = key;
+			this.hash = hash;
+			this.value = value;
+		}
+	}
+
+	private static final class Node {
+		private final Object[] array;		// Leaf or Node, in the bit order.
+		private final int bitmap;
+
+		private Node(int bitmap, @NonNull Object[] array) {
+			this.bitmap = bitmap;
+			this.array = array;
+		}
+
+		@NonNull
+		private Node insert(int bit, int i, @NonNull Object o) {
+			Object[] a = new Object[array.length + 1];
+			System.arraycopy(array, 0, a, 0, i);
+			a[i] = o;
+			System.arraycopy(array, i, a, i + 1, array.length - i);
+			return new Node(bitmap | bit, a);
+		}
+
+		@NonNull
+		private Node replace(int i, @NonNull Object o) {
+			Object[] a = array.clone();
+			a[i] = o;
+			return new Node(bitmap, a);
+		}
+
+		@NonNull
+		private Node delete(int bit, int i) {
+			Object[] a = new Object[array.length - 1];
+			System.arraycopy(array, 0, a, 0, i);
+			System.arraycopy(array, i + 1, a, i, a.length - i);
+			return new Node(bitmap & ~bit, a);
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package app.misono.unit206.misc;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ *	Input stream which is read from the head again and again. (bounds decode, pixel decode
+ *	and its retries) Reset to the mark if the reads were within limit bytes, otherwise opened
+ *	again. A read which threw on the way is rewound too.
+ */
+class RewindableStream implements Closeable {
+	private final Opener opener;
+	private final int limit;
+
+	private BufferedInputStream is;
+	private boolean atHead;
+	private int countOpen;
+
+	interface Opener {
+		@NonNull
+		InputStream open() throws IOException;
+	}
+
+	RewindableStream(@NonNull Opener opener, int limit) throws IOException {
+		this.opener = opener;
+		this.limit = limit;
+		open();
+	}
+
+	/**
+	 *	@return the stream at the head. the next call rewinds it.
+	 */
+	@NonNull
+	InputStream head() throws IOException {
+		if (!atHead) {
+			rewind();
+		}
+		atHead = false;
+		return is;
+	}
+
+	/**
+	 *	@return how many times the source was opened.
+	 */
+	int getOpenCount() {
+		return countOpen;
+	}
+
+	private void rewind() throws IOException {
+		try {
+			is.reset();
+			is.mark(limit);
+			atHead = true;
+			return;
+		} catch (IOException e) {
+			// read over the mark.
+		}
+		open();
+	}
+
+	private void open() throws IOException {
+		close();
+		is = null;
+		is = new BufferedInputStream(opener.open(), 64 * 1024);
+		is.mark(limit);
+		atHead = true;
+		countOpen++;
+	}
+
+	@Override
+	public void close() {
+		if (is != null) {
+			try {
+				is.close();
+			} catch (IOException e) {
+				// nop
+			}
+		}
+	}
+
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.misc;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *	Provides a bounded blocking FIFO queue on a fixed array. (multi producer / multi consumer)
+ *
+ *	Same contract as FifoQueue, but put/take don't allocate and don't share a lock.
+ *	Blocked threads spin for a while and then park.
+ */
+public class RingQueue<E> implements Closeable {
+	private static final int SPIN_COUNT = 64;
+	private static final int YIELD_COUNT = 16;
+
+	private final AtomicReferenceArray<E> buffer;
+	private final AtomicLongArray sequence;
+	private final AtomicLong head, tail;
+	private final ConcurrentLinkedQueue<Thread> waitPut, waitTake, waitEmpty;
+	private final Runnable onAvailable;
+	private final int capacity, slots, mask;
+
+	private volatile boolean closed;
+
+	public RingQueue(int capacity) {
+		this(capacity, null);
+	}
+
+	public RingQueue(int capacity, @Nullable Runnable onAvailable) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity:" + capacity);
+		}
+		this.capacity = capacity;
+		this.onAvailable = onAvailable;
+		// a slot sequence can't tell full from free when there is only one slot.
+		slots = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+		mask = slots - 1;
+		buffer = new AtomicReferenceArray<>(slots);
+		sequence = new AtomicLongArray(slots);
+		for (int i = 0; i < slots; i++) {
+			sequence.set(i, i);
+		}
+		head = new AtomicLong();
+		tail = new AtomicLong();
+		waitPut = new ConcurrentLinkedQueue<>();
+		waitTake = new ConcurrentLinkedQueue<>();
+		waitEmpty = new ConcurrentLinkedQueue<>();
+	}
+
+	@Override
+	public void close() {
+		if (!closed) {
+			closed = true;
+			wakeup(waitTake);
+			wakeup(waitPut);
+			wakeup(waitEmpty);
+		}
+	}
+
+	@AnyThread
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 *	@return false if the queue is full or closed.
+	 */
+	@AnyThread
+	public boolean offer(@NonNull E e) {
+		if (closed || !enqueue(e)) {
+			return false;
+		}
+		wakeup(waitTake);
+		if (onAvailable != null) {
+			onAvailable.run();
+		}
+		return true;
+	}
+
+	/**
+	 *	@return null if the queue is empty.
+	 */
+	@AnyThread
+	@Nullable
+	public E poll() {
+		E rc = dequeue();
+		if (rc != null) {
+			onTaken();
+		}
+		return rc;
+	}
+
+	@WorkerThread
+	public void put(@NonNull E e) throws InterruptedException {
+		for (int i = 0; ; i++) {
+			if (closed) {
+				return;
+			}
+			if (offer(e)) {
+				return;
+			}
+			if (pause(i, waitPut)) {
+				continue;
+			}
+			if (isFull() && !closed) {
+				LockSupport.park(this);
+			}
+			waitPut.remove(Thread.currentThread());
+			checkInterrupted();
+		}
+	}
+
+	/**
+	 *	Puts all of the items in order. Each one triggers onAvailable as put() does.
+	 */
+	@WorkerThread
+	public void putAll(@NonNull Collection<? extends E> batch) throws InterruptedException {
+		for (E e : batch) {
+			put(e);
+		}
+	}
+
+	/**
+	 *	@return null if the queue has been closed.
+	 */
+	@WorkerThread
+	public E take() throws InterruptedException {
+		for (int i = 0; ; i++) {
+			E rc = poll();
+			if (rc != null) {
+				return rc;
+			}
+			if (closed) {
+				return null;
+			}
+			if (pause(i, waitTake)) {
+				continue;
+			}
+			if (isEmpty() && !closed) {
+				LockSupport.park(this);
+			}
+			waitTake.remove(Thread.currentThread());
+			checkInterrupted();
+		}
+	}
+
+	/**
+	 *	Waits for at least one item, then moves up to maxElements items to batch without waiting.
+	 *
+	 *	@return the number of items moved. 0 if the queue has been closed.
+	 */
+	@WorkerThread
+	public int drainTo(@NonNull Collection<? super E> batch, int maxElements) throws InterruptedException {
+		if (maxElements <= 0) {
+			return 0;
+		}
+		E e = take();
+		if (e == null) {
+			return 0;
+		}
+		batch.add(e);
+		int n = 1;
+		for ( ; n < maxElements; n++) {
+			e = poll();
+			if (e == null) {
+				break;
+			}
+			batch.add(e);
+		}
+		return n;
+	}
+
+	@WorkerThread
+	public void waitEmpty() throws InterruptedException {
+		for (int i = 0; ; i++) {
+			if (closed || isEmpty()) {
+				return;
+			}
+			if (pause(i, waitEmpty)) {
+				continue;
+			}
+			if (!isEmpty() && !closed) {
+				LockSupport.park(this);
+			}
+			waitEmpty.remove(Thread.currentThread());
+			checkInterrupted();
+		}
+	}
+
+	@AnyThread
+	public int count() {
+		for ( ; ; ) {
+			long t = tail.get();
+			long h = head.get();
+			if (t == tail.get()) {
+				return (int)Math.max(0, Math.min(capacity, t - h));
+			}
+		}
+	}
+
+	@AnyThread
+	public int getCapacity() {
+		return capacity;
+	}
+
+	@AnyThread
+	public boolean isEmpty() {
+		return count() == 0;
+	}
+
+	private boolean isFull() {
+		return count() == capacity;
+	}
+
+	private boolean enqueue(@NonNull E e) {
+		for ( ; ; ) {
+			long pos = tail.get();
+			int index = (int)pos & mask;
+			long diff = sequence.get(index) - pos;
+			if (diff == 0) {
+				if (capacity != slots && capacity <= pos - head.get()) {
+					return false;
+				}
+				if (tail.compareAndSet(pos, pos + 1)) {
+					buffer.lazySet(index, e);
+					sequence.set(index, pos + 1);
+					return true;
+				}
+			} else if (diff < 0) {
+				return false;
+			}
+		}
+	}
+
+	@Nullable
+	private E dequeue() {
+		for ( ; ; ) {
+			long pos = head.get();
+			int index = (int)pos & mask;
+			long diff = sequence.get(index) - (pos + 1);
+			if (diff == 0) {
+				if (head.compareAndSet(pos, pos + 1)) {
+					E rc = buffer.get(index);
+					buffer.lazySet(index, null);
+					sequence.set(index, pos + slots);
+					return rc;
+				}
+			} else if (diff < 0) {
+				return null;
+			}
+		}
+	}
+
+	private void onTaken() {
+		wakeup(waitPut);
+		if (!waitEmpty.isEmpty() && isEmpty()) {
+			wakeup(waitEmpty);
+		}
+	}
+
+	/**
+	 *	@return true to retry without parking. false after the thread has been registered to waiters.
+	 */
+	private boolean pause(int i, @NonNull ConcurrentLinkedQueue<Thread> waiters) {
+		if (i < SPIN_COUNT) {
+			return true;
+		}
+		if (i < SPIN_COUNT + YIELD_COUNT) {
+			Thread.yield();
+			return true;
+		}
+		waiters.add(Thread.currentThread());
+		return false;
+	}
+
+	private static void wakeup(@NonNull ConcurrentLinkedQueue<Thread> waiters) {
+		if (!waiters.isEmpty()) {
+			for (Thread thread : waiters) {
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+
+	private static void checkInterrupted() throws InterruptedException {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+	}
+
+}
@@ -73,7 +73,6 @@ import app.misono.unit206.task.ObjectReference;
 import app.misono.unit206.task.Taskz;
 
 import com.google.android.gms.tasks.Task;
-import com.google.android.gms.tasks.Tasks;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import java.io.BufferedInputStream;
@@ -94,6 +93,7 @@ import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -106,7 +106,6 @@ import java.util.Calendar;
 import java.util.List;
 import java.util.Locale;
 import java.util.SimpleTimeZone;
-import java.util.SortedMap;
 import java.util.TimeZone;
 import java.util.UUID;
 import java.util.concurrent.Executor;
@@ -1495,66 +1494,8 @@ public final class Utils {
 		@NonNull File zipFile,
 		@Nullable String prefix
 	) throws IOException {
-		File[] files = dir.listFiles();
-		if (files == null || files.length == 0) {
-			throw new RuntimeException("no files....");
-		} else {
-			try (
-				ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile)));
-			) {
-				createZip(zos, dir.getAbsolutePath(), dir, prefix);
-				zos.flush();
-			}
-		}
-	}
-
-	@WorkerThread
-	private static void createZip(
-		@NonNull ZipOutputStream zos,
-		@NonNull String dirBase,
-		@NonNull File dir,
-		@Nullable String basePrefix
-	) throws IOException {
-		File[] files = dir.listFiles();
-		if (files != null && files.length != 0) {
-			FileInputStream is = null;
-			String path = dir.getAbsolutePath();
-			String prefix = "";
-			if (!TextUtils.isEmpty(basePrefix)) {
-				if (basePrefix.charAt(basePrefix.length() - 1) != '/') {
-					prefix = basePrefix + '/';
-				}
-			}
-			int lenBase = dirBase.length();
-			if (lenBase < path.length()) {
-				prefix += path.substring(lenBase + 1) + "/";
-			}
-			try {
-				byte[] buf = new byte[DEFAULT_ALLOCATE_SIZE];
-				for (File f : files) {
-					if (f.isFile()) {
-						String name = prefix + f.getName();
-						ZipEntry entry = new ZipEntry(name);
-						entry.setTime(f.lastModified());
-						is = new FileInputStream(f);
-						zos.putNextEntry(entry);
-						for ( ; ; ) {
-							int len = is.read(buf);
-							if (len < 0) break;
-
-							zos.write(buf, 0, len);
-						}
-						zos.closeEntry();
-						Utils.closeSafely(is);
-						is = null;
-					} else if (f.isDirectory()) {
-						createZip(zos, dirBase, f, basePrefix);
-					}
-				}
-			} finally {
-				Utils.closeSafely(is);
-			}
-		}
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		ZipWriter.createSync(Taskz.getExecutor(Taskz.LANE_CPU), parallelism, dir, zipFile, prefix);
 	}
 
 	@WorkerThread
@@ -1586,27 +1527,19 @@ public final class Utils {
 		@Nullable INormalizeName normalizer
 	) throws Exception {
 		if (24 <= Build.VERSION.SDK_INT) {
-			SortedMap<String, Charset> map = Charset.availableCharsets();
-			if (map != null) {
-				try {
-					extractZipSyncUtf8(dir, zipFile, normalizer);
-				} catch (IllegalArgumentException e) {
-					// non UTF-8 file name found...
-					Charset sjis = map.get("Shift_JIS");
-					if (sjis != null) {
-						dir.delete();
-						dir.mkdirs();
-						extractZipSync(dir, zipFile, sjis, normalizer);
-						return;
-					}
-					throw e;
-				}
-			} else {
-				extractZipSyncUtf8(dir, zipFile, normalizer);
+			Charset charset;
+			try {
+				charset = ZipFormat.detectNameCharset(zipFile);
+			} catch (IOException e) {
+				// broken central directory. ZipInputStream may still read the local headers.
+				charset = StandardCharsets.UTF_8;
+			}
+			if (!StandardCharsets.UTF_8.equals(charset)) {
+				extractZipSync(dir, zipFile, charset, normalizer);
+				return;
 			}
-		} else {
-			extractZipSyncUtf8(dir, zipFile, normalizer);
 		}
+		extractZipSyncUtf8(dir, zipFile, normalizer);
 	}
 
 	@WorkerThread
@@ -1732,22 +1665,27 @@ public final class Utils {
 		@NonNull GZIPInputStream zis
 	) {
 		return Taskz.call(executor, () -> {
-			byte[] buf = new byte[DEFAULT_ALLOCATE_SIZE];
-			try (
-				FileOutputStream fos = new FileOutputStream(out)
-			) {
-				for ( ; ; ) {
-					int len = zis.read(buf);
-					if (len < 0) {
-						break;
-					}
-					fos.write(buf, 0, len);
-				}
-			}
+			extractGzipSync(out, zis);
 			return null;
 		});
 	}
 
+	@WorkerThread
+	public static void extractGzipSync(@NonNull File out, @NonNull GZIPInputStream zis) throws IOException {
+		byte[] buf = new byte[DEFAULT_ALLOCATE_SIZE];
+		try (
+			FileOutputStream fos = new FileOutputStream(out)
+		) {
+			for ( ; ; ) {
+				int len = zis.read(buf);
+				if (len < 0) {
+					break;
+				}
+				fos.write(buf, 0, len);
+			}
+		}
+	}
+
 	@AnyThread
 	@NonNull
 	public static Task<Void> extractGzip(
@@ -1760,7 +1698,7 @@ public final class Utils {
 			try (
 				GZIPInputStream zis = new GZIPInputStream(new BufferedInputStream(context.getContentResolver().openInputStream(uriGz)))
 			) {
-				Tasks.await(extractGzip(executor, out, zis));
+				extractGzipSync(out, zis);
 			}
 			return null;
 		});
@@ -1950,6 +1888,7 @@ public final class Utils {
 		state[k2] = t;
 	}
 
+	@Deprecated		// use XxHash64.hash().
 	public static int calcLightIntHash(@NonNull byte[] b, int offset, int len) {
 		byte[] state = createStateArray();
 		byte[] b4 = new byte[4];
@@ -1961,16 +1900,18 @@ public final class Utils {
 			s2 &= 0xff;
 			swapByte(state, s1, s2);
 			int k = (state[s1] + state[s2]) & 0xff;
-			b4[i % 4] ^= (byte)(b[i] ^ state[k]);
+			b4[i % 4] ^= (byte)(b[offset + i] ^ state[k]);
 		}
 		return Utils.read4le(b4, 0);
 	}
 
+	@Deprecated		// use XxHash64.hash().
 	public static int calcLightIntHash(@NonNull String s) {
 		byte[] b = s.getBytes();
 		return calcLightIntHash(b, 0, b.length);
 	}
 
+	@Deprecated		// use XxHash64.hash().
 	public static long calcLightLongHash(@NonNull byte[] b, int offset, int len) {
 		byte[] state = createStateArray();
 		byte[] b8 = new byte[8];
@@ -1982,11 +1923,12 @@ public final class Utils {
 			s2 &= 0xff;
 			swapByte(state, s1, s2);
 			int k = (state[s1] + state[s2]) & 0xff;
-			b8[i % 8] ^= (byte)(b[i] ^ state[k]);
+			b8[i % 8] ^= (byte)(b[offset + i] ^ state[k]);
 		}
 		return Utils.read8le(b8, 0);
 	}
 
+	@Deprecated		// use XxHash64.hash().
 	public static long calcLightLongHash(@NonNull String s) {
 		byte[] b = s.getBytes();
 		return calcLightLongHash(b, 0, b.length);
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.misc;
+
+import androidx.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ *	XXH64. Non-cryptographic 64 bit hash, compatible with the reference implementation.
+ *
+ *	CharSequence is hashed as its UTF-8 bytes without allocation, so
+ *	hash("abc") == hash("abc".getBytes(UTF_8)).
+ *
+ *	An instance is the streaming (incremental) version. It isn't thread safe.
+ */
+public final class XxHash64 {
+	private static final long P1 = 0x9E3779B185EBCA87L;
+	private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long P3 = 0x165667B19E3779F9L;
+	private static final long P4 = 0x85EBCA77C2B2AE63L;
+	private static final long P5 = 0x27D4EB2F165667C5L;
+
+	private static final ThreadLocal<XxHash64> local = new ThreadLocal<>();
+
+	private final byte[] buf;
+	private final long seed;
+
+	private long v1, v2, v3, v4, total;
+	private int lenBuf;
+
+	public XxHash64() {
+		this(0);
+	}
+
+	public XxHash64(long seed) {
+		this.seed = seed;
+		buf = new byte[32];
+		reset();
+	}
+
+	@NonNull
+	public XxHash64 reset() {
+		v1 = seed + P1 + P2;
+		v2 = seed + P2;
+		v3 = seed;
+		v4 = seed - P1;
+		total = 0;
+		lenBuf = 0;
+		return this;
+	}
+
+	@NonNull
+	public XxHash64 update(@NonNull byte[] b) {
+		return update(b, 0, b.length);
+	}
+
+	@NonNull
+	public XxHash64 update(@NonNull byte[] b, int offset, int len) {
+		total += len;
+		int end = offset + len;
+		if (lenBuf != 0) {
+			int n = Math.min(32 - lenBuf, len);
+			System.arraycopy(b, offset, buf, lenBuf, n);
+			lenBuf += n;
+			offset += n;
+			if (lenBuf < 32) {
+				return this;
+			}
+			stripe(buf, 0);
+			lenBuf = 0;
+		}
+		for ( ; offset + 32 <= end; offset += 32) {
+			stripe(b, offset);
+		}
+		if (offset < end) {
+			System.arraycopy(b, offset, buf, 0, end - offset);
+			lenBuf = end - offset;
+		}
+		return this;
+	}
+
+	/**
+	 *	Reads from the position to the limit. The position isn't changed.
+	 */
+	@NonNull
+	public XxHash64 update(@NonNull ByteBuffer b) {
+		if (b.hasArray()) {
+			return update(b.array(), b.arrayOffset() + b.position(), b.remaining());
+		}
+		int pos = b.position();
+		int end = b.limit();
+		boolean swap = b.order() != ByteOrder.LITTLE_ENDIAN;
+		total += end - pos;
+		for ( ; lenBuf != 0 && pos < end; pos++) {
+			putByte(b.get(pos));
+		}
+		for ( ; pos + 32 <= end; pos += 32) {
+			v1 = round(v1, getLong(b, pos, swap));
+			v2 = round(v2, getLong(b, pos + 8, swap));
+			v3 = round(v3, getLong(b, pos + 16, swap));
+			v4 = round(v4, getLong(b, pos + 24, swap));
+		}
+		for ( ; pos < end; pos++) {
+			buf[lenBuf++] = b.get(pos);
+		}
+		return this;
+	}
+
+	/**
+	 *	Adds the UTF-8 bytes of s.
+	 */
+	@NonNull
+	public XxHash64 update(@NonNull CharSequence s) {
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			int c = s.charAt(i);
+			if (c < 0x80) {
+				putByte(c);
+				total++;
+			} else if (c < 0x800) {
+				putByte(0xc0 | (c >> 6));
+				putByte(0x80 | (c & 0x3f));
+				total += 2;
+			} else if (Character.isHighSurrogate((char)c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint((char)c, s.charAt(++i));
+				putByte(0xf0 | (cp >> 18));
+				putByte(0x80 | ((cp >> 12) & 0x3f));
+				putByte(0x80 | ((cp >> 6) & 0x3f));
+				putByte(0x80 | (cp & 0x3f));
+				total += 4;
+			} else if (Character.isSurrogate((char)c)) {
+				putByte('?');		// same as String.getBytes(UTF_8)
+				total++;
+			} else {
+				putByte(0xe0 | (c >> 12));
+				putByte(0x80 | ((c >> 6) & 0x3f));
+				putByte(0x80 | (c & 0x3f));
+				total += 3;
+			}
+		}
+		return this;
+	}
+
+	public long getValue() {
+		long h;
+		if (32 <= total) {
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = merge(h, v1);
+			h = merge(h, v2);
+			h = merge(h, v3);
+			h = merge(h, v4);
+		} else {
+			h = seed + P5;
+		}
+		h += total;
+		return finish(h, buf, 0, lenBuf);
+	}
+
+	private void putByte(int c) {
+		buf[lenBuf++] = (byte)c;
+		if (lenBuf == 32) {
+			stripe(buf, 0);
+			lenBuf = 0;
+		}
+	}
+
+	private void stripe(@NonNull byte[] b, int i) {
+		v1 = round(v1, getLong(b, i));
+		v2 = round(v2, getLong(b, i + 8));
+		v3 = round(v3, getLong(b, i + 16));
+		v4 = round(v4, getLong(b, i + 24));
+	}
+
+	public static long hash(@NonNull byte[] b) {
+		return hash(b, 0, b.length, 0);
+	}
+
+	public static long hash(@NonNull byte[] b, int offset, int len) {
+		return hash(b, offset, len, 0);
+	}
+
+	public static long hash(@NonNull byte[] b, int offset, int len, long seed) {
+		int end = offset + len;
+		int i = offset;
+		long h;
+		if (32 <= len) {
+			long v1 = seed + P1 + P2;
+			long v2 = seed + P2;
+			long v3 = seed;
+			long v4 = seed - P1;
+			for ( ; i + 32 <= end; i += 32) {
+				v1 = round(v1, getLong(b, i));
+				v2 = round(v2, getLong(b, i + 8));
+				v3 = round(v3, getLong(b, i + 16));
+				v4 = round(v4, getLong(b, i + 24));
+			}
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = merge(h, v1);
+			h = merge(h, v2);
+			h = merge(h, v3);
+			h = merge(h, v4);
+		} else {
+			h = seed + P5;
+		}
+		h += len;
+		return finish(h, b, i, end - i);
+	}
+
+	/**
+	 *	Hashes from the position to the limit. The position isn't changed.
+	 */
+	public static long hash(@NonNull ByteBuffer b) {
+		if (b.hasArray()) {
+			return hash(b.array(), b.arrayOffset() + b.position(), b.remaining(), 0);
+		}
+		return get().update(b).getValue();
+	}
+
+	public static long hash(@NonNull CharSequence s) {
+		return get().update(s).getValue();
+	}
+
+	@NonNull
+	private static XxHash64 get() {
+		XxHash64 h = local.get();
+		if (h == null) {
+			h = new XxHash64();
+			local.set(h);
+		}
+		return h.reset();
+	}
+
+	private static long finish(long h, @NonNull byte[] b, int i, int len) {
+		int end = i + len;
+		for ( ; i + 8 <= end; i += 8) {
+			h ^= round(0, getLong(b, i));
+			h = Long.rotateLeft(h, 27) * P1 + P4;
+		}
+		if (i + 4 <= end) {
+			h ^= (getInt(b, i) & 0xffffffffL) * P1;
+			h = Long.rotateLeft(h, 23) * P2 + P3;
+			i += 4;
+		}
+		for ( ; i < end; i++) {
+			h ^= (b[i] & 0xff) * P5;
+			h = Long.rotateLeft(h, 11) * P1;
+		}
+		h ^= h >>> 33;
+		h *= P2;
+		h ^= h >>> 29;
+		h *= P3;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	private static long round(long acc, long input) {
+		acc += input * P2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * P1;
+	}
+
+	private static long merge(long h, long v) {
+		h ^= round(0, v);
+		return h * P1 + P4;
+	}
+
+	static long getLong(@NonNull byte[] b, int i) {
+		return (b[i] & 0xffL)
+			| (b[i + 1] & 0xffL) << 8
+			| (b[i + 2] & 0xffL) << 16
+			| (b[i + 3] & 0xffL) << 24
+			| (b[i + 4] & 0xffL) << 32
+			| (b[i + 5] & 0xffL) << 40
+			| (b[i + 6] & 0xffL) << 48
+			| (b[i + 7] & 0xffL) << 56;
+	}
+
+	static long getLong(@NonNull ByteBuffer b, int i, boolean swap) {
+		long v = b.getLong(i);
+		return swap ? Long.reverseBytes(v) : v;
+	}
+
+	static int getInt(@NonNull byte[] b, int i) {
+		return (b[i] & 0xff)
+			| (b[i + 1] & 0xff) << 8
+			| (b[i + 2] & 0xff) << 16
+			| (b[i + 3] & 0xff) << 24;
+	}
+
+}
@@ -0,0 +1,384 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.misc;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.ZipException;
+
+/**
+ *	Zip file format constants and the central directory parser. (with ZIP64)
+ */
+final class ZipFormat {
+	static final int SIG_LOCAL = 0x04034b50;
+	static final int SIG_CENTRAL = 0x02014b50;
+	static final int SIG_DESCRIPTOR = 0x08074b50;
+	static final int SIG_END = 0x06054b50;
+	static final int SIG_END64 = 0x06064b50;
+	static final int SIG_LOCATOR64 = 0x07064b50;
+
+	static final int LOCAL_SIZE = 30;
+	static final int CENTRAL_SIZE = 46;
+	static final int END_SIZE = 22;
+	static final int END64_SIZE = 56;
+	static final int LOCATOR64_SIZE = 20;
+
+	static final int METHOD_STORED = 0;
+	static final int METHOD_DEFLATED = 8;
+
+	static final int FLAG_DESCRIPTOR = 1 << 3;
+	static final int FLAG_UTF8 = 1 << 11;
+
+	static final int VERSION = 20;
+	static final int VERSION64 = 45;
+	static final int EXTRA_ZIP64 = 0x0001;
+
+	static final long MAX32 = 0xFFFFFFFFL;
+	static final int MAX16 = 0xFFFF;
+
+	private static final int MAX_COMMENT = 0xFFFF;
+
+	private static final Set<String> COMPRESSED_SUFFIX = new HashSet<>();
+
+	static {
+		String[] list = {
+			"jpg", "jpeg", "png", "gif", "webp", "heic", "heif", "avif", "dng",
+			"mp4", "m4v", "m4a", "mov", "3gp", "webm", "mkv", "mp3", "aac", "ogg", "opus", "flac",
+			"zip", "gz", "tgz", "bz2", "xz", "7z", "rar", "apk", "jar", "aar", "docx", "xlsx", "pptx",
+		};
+		for (String s : list) {
+			COMPRESSED_SUFFIX.add(s);
+		}
+	}
+
+	private ZipFormat() {
+	}
+
+	static class CentralEntry {
+		final byte[] name;
+		final int flags, method;
+		final long dosTime, crc, compressedSize, size, offsetLocal;
+
+		private CentralEntry(
+			@NonNull byte[] name,
+			int flags,
+			int method,
+			long dosTime,
+			long crc,
+			long compressedSize,
+			long size,
+			long offsetLocal
+		) {
+			this.name = name;
+			this.flags = flags;
+			this.method = method;
+			this.dosTime = dosTime;
+			this.crc = crc;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.offsetLocal = offsetLocal;
+		}
+
+		boolean isUtf8() {
+			return (flags & FLAG_UTF8) != 0;
+		}
+	}
+
+	/**
+	 *	@return true if the name looks like an already compressed media/archive file.
+	 */
+	static boolean isCompressedName(@NonNull String name) {
+		int i = name.lastIndexOf('.');
+		return 0 <= i && COMPRESSED_SUFFIX.contains(name.substring(i + 1).toLowerCase(Locale.US));
+	}
+
+	/**
+	 *	@return true if the first bytes are the magic of an already compressed format.
+	 */
+	static boolean isCompressedMagic(@NonNull byte[] b, int len) {
+		if (3 <= len && u8(b, 0) == 0xFF && u8(b, 1) == 0xD8 && u8(b, 2) == 0xFF) {
+			return true;		// JPEG
+		}
+		if (4 <= len) {
+			int m = (u8(b, 0) << 24) | (u8(b, 1) << 16) | (u8(b, 2) << 8) | u8(b, 3);
+			switch (m) {
+			case 0x89504E47:	// PNG
+			case 0x47494638:	// GIF8
+			case 0x504B0304:	// zip
+			case 0x4F676753:	// OggS
+			case 0x664C6143:	// fLaC
+			case 0x1A45DFA3:	// matroska / webm
+			case 0x377ABCAF:	// 7z
+				return true;
+			}
+			if ((m >>> 16) == 0x1F8B) {
+				return true;	// gzip
+			}
+		}
+		if (12 <= len && b[0] == 'R' && b[1] == 'I' && b[2] == 'F' && b[3] == 'F'
+			&& b[8] == 'W' && b[9] == 'E' && b[10] == 'B' && b[11] == 'P') {
+			return true;
+		}
+		if (8 <= len && b[4] == 'f' && b[5] == 't' && b[6] == 'y' && b[7] == 'p') {
+			return true;		// mp4, mov, heif, avif
+		}
+		return false;
+	}
+
+	static long toDosTime(long msec) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTimeInMillis(msec);
+		int year = cal.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return ((long)(year - 1980) << 25)
+			| ((long)(cal.get(Calendar.MONTH) + 1) << 21)
+			| ((long)cal.get(Calendar.DATE) << 16)
+			| ((long)cal.get(Calendar.HOUR_OF_DAY) << 11)
+			| ((long)cal.get(Calendar.MINUTE) << 5)
+			| ((long)cal.get(Calendar.SECOND) >> 1);
+	}
+
+	/**
+	 *	@return msec. 0 if dos is 0 or has an invalid field.
+	 */
+	static long toJavaTime(long dos) {
+		if (dos == 0) {
+			return 0;
+		}
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.setLenient(false);
+		cal.set(
+			(int)((dos >> 25) & 0x7F) + 1980,
+			(int)((dos >> 21) & 0x0F) - 1,
+			(int)((dos >> 16) & 0x1F),
+			(int)((dos >> 11) & 0x1F),
+			(int)((dos >> 5) & 0x3F),
+			(int)((dos << 1) & 0x3E)
+		);
+		try {
+			return cal.getTimeInMillis();
+		} catch (IllegalArgumentException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 *	Reads every central directory record. It doesn't touch the entry data.
+	 */
+	@WorkerThread
+	@NonNull
+	static List<CentralEntry> readCentralDirectory(@NonNull FileChannel ch) throws IOException {
+		long sizeFile = ch.size();
+		int lenTail = (int)Math.min(sizeFile, END_SIZE + MAX_COMMENT);
+		ByteBuffer tail = read(ch, sizeFile - lenTail, lenTail);
+		int posEnd = -1;
+		for (int i = lenTail - END_SIZE; 0 <= i; i--) {
+			if (tail.getInt(i) == SIG_END) {
+				posEnd = i;
+				break;
+			}
+		}
+		if (posEnd < 0) {
+			throw new ZipException("end of central directory not found...");
+		}
+		long count = tail.getShort(posEnd + 10) & MAX16;
+		long sizeCentral = tail.getInt(posEnd + 12) & MAX32;
+		long offsetCentral = tail.getInt(posEnd + 16) & MAX32;
+		long posEndFile = sizeFile - lenTail + posEnd;
+		if (count == MAX16 || sizeCentral == MAX32 || offsetCentral == MAX32) {
+			long posLocator = posEndFile - LOCATOR64_SIZE;
+			if (0 <= posLocator) {
+				ByteBuffer loc = read(ch, posLocator, LOCATOR64_SIZE);
+				if (loc.getInt(0) == SIG_LOCATOR64) {
+					long posEnd64 = loc.getLong(8);
+					if (posEnd64 < 0 || posLocator < posEnd64 + END64_SIZE) {
+						throw new ZipException("broken zip64 end of central directory locator... offset:" + posEnd64);
+					}
+					ByteBuffer end64 = read(ch, posEnd64, END64_SIZE);
+					if (end64.getInt(0) != SIG_END64) {
+						throw new ZipException("broken zip64 end of central directory...");
+					}
+					count = end64.getLong(32);
+					sizeCentral = end64.getLong(40);
+					offsetCentral = end64.getLong(48);
+				}
+			}
+		}
+		if (count < 0 || sizeCentral < 0 || offsetCentral < 0
+			|| Integer.MAX_VALUE < sizeCentral || sizeFile < offsetCentral + sizeCentral) {
+			throw new ZipException("broken central directory... offset:" + offsetCentral + " size:" + sizeCentral);
+		}
+		ByteBuffer cd = read(ch, offsetCentral, (int)sizeCentral);
+		List<CentralEntry> rc = new ArrayList<>((int)Math.min(count, 1 << 16));
+		int pos = 0;
+		for (long i = 0; i < count; i++) {
+			if (cd.limit() < pos + CENTRAL_SIZE || cd.getInt(pos) != SIG_CENTRAL) {
+				throw new ZipException("broken central directory entry... index:" + i);
+			}
+			int flags = cd.getShort(pos + 8) & MAX16;
+			int method = cd.getShort(pos + 10) & MAX16;
+			long dosTime = cd.getInt(pos + 12) & MAX32;
+			long crc = cd.getInt(pos + 16) & MAX32;
+			long compressedSize = cd.getInt(pos + 20) & MAX32;
+			long size = cd.getInt(pos + 24) & MAX32;
+			int lenName = cd.getShort(pos + 28) & MAX16;
+			int lenExtra = cd.getShort(pos + 30) & MAX16;
+			int lenComment = cd.getShort(pos + 32) & MAX16;
+			long offsetLocal = cd.getInt(pos + 42) & MAX32;
+			if (cd.limit() < pos + CENTRAL_SIZE + lenName + lenExtra + lenComment) {
+				throw new ZipException("broken central directory entry... index:" + i);
+			}
+			byte[] name = new byte[lenName];
+			cd.position(pos + CENTRAL_SIZE);
+			cd.get(name);
+			int posExtra = pos + CENTRAL_SIZE + lenName;
+			int endExtra = posExtra + lenExtra;
+			while (posExtra + 4 <= endExtra) {
+				int id = cd.getShort(posExtra) & MAX16;
+				int len = cd.getShort(posExtra + 2) & MAX16;
+				int end = posExtra + 4 + len;
+				if (endExtra < end) {
+					throw new ZipException("broken extra field... index:" + i);
+				}
+				if (id == EXTRA_ZIP64) {
+					int p = posExtra + 4;
+					if (size == MAX32) {
+						size = getZip64(cd, p, end, i);
+						p += 8;
+					}
+					if (compressedSize == MAX32) {
+						compressedSize = getZip64(cd, p, end, i);
+						p += 8;
+					}
+					if (offsetLocal == MAX32) {
+						offsetLocal = getZip64(cd, p, end, i);
+					}
+				}
+				posExtra += 4 + len;
+			}
+			rc.add(new CentralEntry(name, flags, method, dosTime, crc, compressedSize, size, offsetLocal));
+			pos = endExtra + lenComment;
+		}
+		return rc;
+	}
+
+	/**
+	 *	Decides the charset of the entry names without extracting anything.
+	 *
+	 *	@return UTF-8 unless a name without the UTF-8 flag is invalid as UTF-8 and Shift_JIS is available.
+	 */
+	@NonNull
+	static Charset detectNameCharset(@NonNull List<CentralEntry> entries) {
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPORT)
+			.onUnmappableCharacter(CodingErrorAction.REPORT);
+		for (CentralEntry entry : entries) {
+			if (!entry.isUtf8() && !isAscii(entry.name)) {
+				try {
+					decoder.reset();
+					decoder.decode(ByteBuffer.wrap(entry.name));
+				} catch (CharacterCodingException e) {
+					Charset sjis = getShiftJis();
+					return sjis != null ? sjis : StandardCharsets.UTF_8;
+				}
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+	@WorkerThread
+	@NonNull
+	static Charset detectNameCharset(@NonNull File zipFile) throws IOException {
+		try (
+			RandomAccessFile raf = new RandomAccessFile(zipFile, "r");
+		) {
+			return detectNameCharset(readCentralDirectory(raf.getChannel()));
+		}
+	}
+
+	/**
+	 *	A ZIP64 extra field value at p, which must be in the field ending at end.
+	 */
+	private static long getZip64(@NonNull ByteBuffer cd, int p, int end, long index) throws ZipException {
+		if (end < p + 8) {
+			throw new ZipException("broken zip64 extra field... index:" + index);
+		}
+		long rc = cd.getLong(p);
+		if (rc < 0) {
+			throw new ZipException("broken zip64 extra field... index:" + index);
+		}
+		return rc;
+	}
+
+	@Nullable
+	static Charset getShiftJis() {
+		try {
+			return Charset.forName("Shift_JIS");
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	@NonNull
+	static ByteBuffer read(@NonNull FileChannel ch, long position, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buf.hasRemaining()) {
+			int len = ch.read(buf, position + buf.position());
+			if (len < 0) {
+				throw new ZipException("unexpected end of file... position:" + position);
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	private static boolean isAscii(@NonNull byte[] b) {
+		for (byte c : b) {
+			if (c < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int u8(@NonNull byte[] b, int i) {
+		return b[i] & 0xFF;
+	}
+
+}
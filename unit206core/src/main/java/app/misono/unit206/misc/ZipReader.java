@@ -0,0 +1,385 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.misc;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ *	Random access zip reader. The central directory is parsed once in the constructor,
+ *	so a single entry can be read without inflating the entries before it.
+ */
+public class ZipReader implements Closeable {
+	private static final int SIZE_BUFFER = 64 * 1024;
+
+	private final Map<String, Entry> index;
+	private final RandomAccessFile raf;
+	private final FileChannel ch;
+	private final Charset charset;
+
+	@WorkerThread
+	public ZipReader(@NonNull File zipFile) throws IOException {
+		raf = new RandomAccessFile(zipFile, "r");
+		try {
+			ch = raf.getChannel();
+			List<ZipFormat.CentralEntry> list = ZipFormat.readCentralDirectory(ch);
+			charset = ZipFormat.detectNameCharset(list);
+			index = new LinkedHashMap<>();
+			for (ZipFormat.CentralEntry ce : list) {
+				String name = new String(ce.name, ce.isUtf8() ? StandardCharsets.UTF_8 : charset);
+				index.put(name, new Entry(name, ce));
+			}
+		} catch (IOException | RuntimeException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 *	@return all entries in the central directory order.
+	 */
+	@AnyThread
+	@NonNull
+	public List<Entry> list() {
+		return Collections.unmodifiableList(new ArrayList<>(index.values()));
+	}
+
+	@AnyThread
+	@Nullable
+	public Entry getEntry(@NonNull String name) {
+		return index.get(name);
+	}
+
+	@AnyThread
+	@NonNull
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 *	Streams the entry data. The CRC is verified at the end of the stream.
+	 *	Multiple streams may be read from different threads at the same time.
+	 */
+	@WorkerThread
+	@NonNull
+	public InputStream open(@NonNull String name) throws IOException {
+		Entry entry = index.get(name);
+		if (entry == null) {
+			throw new ZipException("entry not found... " + name);
+		}
+		return open(entry);
+	}
+
+	@WorkerThread
+	@NonNull
+	public InputStream open(@NonNull Entry entry) throws IOException {
+		ZipFormat.CentralEntry ce = entry.ce;
+		ByteBuffer local = ZipFormat.read(ch, ce.offsetLocal, ZipFormat.LOCAL_SIZE);
+		if (local.getInt(0) != ZipFormat.SIG_LOCAL) {
+			throw new ZipException("broken local header... " + entry.name);
+		}
+		int lenName = local.getShort(26) & ZipFormat.MAX16;
+		int lenExtra = local.getShort(28) & ZipFormat.MAX16;
+		long start = ce.offsetLocal + ZipFormat.LOCAL_SIZE + lenName + lenExtra;
+		InputStream raw = new ChannelInputStream(ch, start, ce.compressedSize);
+		switch (ce.method) {
+		case ZipFormat.METHOD_STORED:
+			return new CheckedStream(raw, null, entry);
+		case ZipFormat.METHOD_DEFLATED:
+			Inflater inflater = new Inflater(true);
+			return new CheckedStream(new InflaterInputStream(raw, inflater, SIZE_BUFFER), inflater, entry);
+		default:
+			raw.close();
+			throw new ZipException("unsupported method:" + ce.method + " " + entry.name);
+		}
+	}
+
+	/**
+	 *	Extracts all of the entries.
+	 */
+	@WorkerThread
+	public void extractAll(@NonNull Executor executor, int parallelism, @NonNull File dir) throws IOException {
+		extract(executor, parallelism, index.keySet(), dir);
+	}
+
+	/**
+	 *	Extracts the named entries. Each entry is inflated on the executor in parallel.
+	 *	"__MACOSX" and ".DS_Store" are skipped, and names out of dir throw SecurityException.
+	 */
+	@WorkerThread
+	public void extract(
+		@NonNull Executor executor,
+		int parallelism,
+		@NonNull Collection<String> names,
+		@NonNull File dir
+	) throws IOException {
+		String dirPath = dir.getCanonicalPath();
+		List<Entry> targets = new ArrayList<>(names.size());
+		for (String name : names) {
+			Entry entry = index.get(name);
+			if (entry == null) {
+				throw new ZipException("entry not found... " + name);
+			}
+			if (!isIgnored(name)) {
+				targets.add(entry);
+			}
+		}
+		ArrayDeque<FutureTask<Void>> window = new ArrayDeque<>();
+		int windowSize = Math.max(1, parallelism) * 2;
+		int next = 0;
+		try {
+			for ( ; next < targets.size() && window.size() < windowSize; next++) {
+				window.add(submit(executor, targets.get(next), dirPath));
+			}
+			while (!window.isEmpty()) {
+				FutureTask<Void> future = window.poll();
+				future.run();		// no-op if a worker has started it.
+				get(future);
+				if (next < targets.size()) {
+					window.add(submit(executor, targets.get(next++), dirPath));
+				}
+			}
+		} finally {
+			for (FutureTask<Void> future : window) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	@NonNull
+	private FutureTask<Void> submit(@NonNull Executor executor, @NonNull Entry entry, @NonNull String dirPath) {
+		FutureTask<Void> future = new FutureTask<>(() -> {
+			extractEntry(entry, dirPath);
+			return null;
+		});
+		executor.execute(future);
+		return future;
+	}
+
+	@WorkerThread
+	private void extractEntry(@NonNull Entry entry, @NonNull String dirPath) throws IOException {
+		File f = new File(dirPath, entry.name);
+		String canonicalPath = f.getCanonicalPath();
+		if (!canonicalPath.startsWith(dirPath)) {
+			throw new SecurityException();
+		}
+		if (entry.isDirectory()) {
+			f.mkdirs();
+		} else {
+			File parent = f.getParentFile();
+			parent.mkdirs();
+			byte[] buf = new byte[SIZE_BUFFER];
+			try (
+				InputStream is = open(entry);
+				FileOutputStream fos = new FileOutputStream(f);
+			) {
+				for ( ; ; ) {
+					int len = is.read(buf);
+					if (len < 0) {
+						break;
+					}
+					fos.write(buf, 0, len);
+				}
+			}
+			if (entry.getTime() != 0) {
+				f.setLastModified(entry.getTime());
+			}
+		}
+	}
+
+	private static void get(@NonNull FutureTask<Void> future) throws IOException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	private static boolean isIgnored(@NonNull String name) {
+		for (String s : name.split("/")) {
+			if (s.equals("__MACOSX") || s.equals(".DS_Store")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	public static class Entry {
+		private final ZipFormat.CentralEntry ce;
+		private final String name;
+
+		private Entry(@NonNull String name, @NonNull ZipFormat.CentralEntry ce) {
+			this.name = name;
+			this.ce = ce;
+		}
+
+		@NonNull
+		public String getName() {
+			return name;
+		}
+
+		public long getSize() {
+			return ce.size;
+		}
+
+		public long getCompressedSize() {
+			return ce.compressedSize;
+		}
+
+		public long getCrc() {
+			return ce.crc;
+		}
+
+		/**
+		 *	@return msec. 0 if unknown.
+		 */
+		public long getTime() {
+			return ZipFormat.toJavaTime(ce.dosTime);
+		}
+
+		public boolean isDirectory() {
+			return name.endsWith("/");
+		}
+	}
+
+	/**
+	 *	Positional read of a range. It doesn't move the channel position, so it's thread safe.
+	 */
+	private static class ChannelInputStream extends InputStream {
+		private final FileChannel ch;
+		private final long end;
+
+		private long pos;
+
+		private ChannelInputStream(@NonNull FileChannel ch, long start, long length) {
+			this.ch = ch;
+			pos = start;
+			end = start + length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(@NonNull byte[] b, int off, int len) throws IOException {
+			if (end <= pos) {
+				return -1;
+			}
+			int n = (int)Math.min(len, end - pos);
+			int rc = ch.read(ByteBuffer.wrap(b, off, n), pos);
+			if (rc < 0) {
+				throw new ZipException("unexpected end of file...");
+			}
+			pos += rc;
+			return rc;
+		}
+
+		@Override
+		public int available() {
+			return (int)Math.min(Integer.MAX_VALUE, end - pos);
+		}
+	}
+
+	private static class CheckedStream extends InputStream {
+		private final Inflater inflater;
+		private final InputStream is;
+		private final Entry entry;
+		private final CRC32 crc;
+
+		private long count;
+
+		private CheckedStream(@NonNull InputStream is, @Nullable Inflater inflater, @NonNull Entry entry) {
+			this.is = is;
+			this.inflater = inflater;
+			this.entry = entry;
+			crc = new CRC32();
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(@NonNull byte[] b, int off, int len) throws IOException {
+			int rc = is.read(b, off, len);
+			if (rc < 0) {
+				if (count != entry.getSize() || crc.getValue() != entry.getCrc()) {
+					throw new ZipException("invalid entry size or crc... " + entry.name);
+				}
+			} else {
+				crc.update(b, off, rc);
+				count += rc;
+			}
+			return rc;
+		}
+
+		@Override
+		public void close() throws IOException {
+			is.close();
+			if (inflater != null) {
+				inflater.end();
+			}
+		}
+	}
+
+}
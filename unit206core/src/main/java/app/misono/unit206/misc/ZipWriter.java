@@ -0,0 +1,497 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.misc;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import app.misono.unit206.debug.Log2;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ *	Creates a zip file. The entries are compressed in parallel and written in order.
+ *
+ *	Already compressed files (by the suffix or the magic bytes) are STORED and copied
+ *	with FileChannel.transferTo(). The names are written in UTF-8. ZIP64 is used when needed.
+ */
+public class ZipWriter {
+	private static final String TAG = "ZipWriter";
+	private static final int SIZE_BUFFER = 256 * 1024;
+	private static final int SIZE_MAGIC = 16;
+	private static final long SIZE_IN_MEMORY = 4 * 1024 * 1024;
+
+	private final List<Item> items;
+	private final Executor executor;
+	private final int parallelism;
+	private final int level;
+
+	// writer thread instance
+	private FileChannel out;
+	private long position;
+
+	/**
+	 *	@param parallelism number of entries compressed at the same time.
+	 */
+	public ZipWriter(@NonNull Executor executor, int parallelism) {
+		this(executor, parallelism, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	public ZipWriter(@NonNull Executor executor, int parallelism, int level) {
+		this.executor = executor;
+		this.parallelism = Math.max(1, parallelism);
+		this.level = level;
+		items = new ArrayList<>();
+	}
+
+	/**
+	 *	Adds the files under dir recursively, in the same order as Utils.createZipSync().
+	 */
+	@NonNull
+	public ZipWriter addDirectory(@NonNull File dir, @Nullable String prefix) {
+		String base = "";
+		if (prefix != null && !prefix.isEmpty()) {
+			base = prefix.charAt(prefix.length() - 1) == '/' ? prefix : prefix + '/';
+		}
+		addDirectory(dir, base, true);
+		return this;
+	}
+
+	private void addDirectory(@NonNull File dir, @NonNull String prefix, boolean top) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			String path = top ? prefix : prefix + dir.getName() + "/";
+			for (File f : files) {
+				if (f.isFile()) {
+					addFile(f, path + f.getName());
+				} else if (f.isDirectory()) {
+					addDirectory(f, path, false);
+				}
+			}
+		}
+	}
+
+	@NonNull
+	public ZipWriter addFile(@NonNull File file, @NonNull String name) {
+		items.add(new Item(file, name));
+		return this;
+	}
+
+	public int getCount() {
+		return items.size();
+	}
+
+	/**
+	 *	Writes all of the added files. The calling thread writes the archive
+	 *	and runs the compression itself when the executor is busy.
+	 */
+	@WorkerThread
+	public void writeSync(@NonNull File zipFile) throws IOException {
+		List<Item> written = new ArrayList<>(items.size());
+		ArrayDeque<FutureTask<Item>> window = new ArrayDeque<>();
+		int windowSize = parallelism * 2;
+		int next = 0;
+		try (
+			FileOutputStream fos = new FileOutputStream(zipFile);
+		) {
+			out = fos.getChannel();
+			position = 0;
+			for ( ; next < items.size() && window.size() < windowSize; next++) {
+				window.add(submit(items.get(next)));
+			}
+			while (!window.isEmpty()) {
+				FutureTask<Item> future = window.poll();
+				future.run();		// no-op if a worker has started it.
+				Item item = get(future);
+				if (next < items.size()) {
+					window.add(submit(items.get(next++)));
+				}
+				writeEntry(item);
+				item.data = null;
+				written.add(item);
+			}
+			writeCentralDirectory(written);
+		} finally {
+			for (FutureTask<Item> future : window) {
+				future.cancel(true);
+			}
+			out = null;
+		}
+	}
+
+	/**
+	 *	@param prefix directory name in the zip. null for none.
+	 */
+	@WorkerThread
+	public static void createSync(
+		@NonNull Executor executor,
+		int parallelism,
+		@NonNull File dir,
+		@NonNull File zipFile,
+		@Nullable String prefix
+	) throws IOException {
+		ZipWriter writer = new ZipWriter(executor, parallelism).addDirectory(dir, prefix);
+		if (writer.getCount() == 0) {
+			throw new RuntimeException("no files....");
+		}
+		writer.writeSync(zipFile);
+	}
+
+	@NonNull
+	private FutureTask<Item> submit(@NonNull Item item) {
+		FutureTask<Item> future = new FutureTask<>(() -> {
+			prepare(item);
+			return item;
+		});
+		executor.execute(future);
+		return future;
+	}
+
+	@NonNull
+	private static Item get(@NonNull FutureTask<Item> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 *	Runs on the executor: decides the method and computes CRC (and the compressed data).
+	 */
+	@WorkerThread
+	private void prepare(@NonNull Item item) throws IOException {
+		item.time = ZipFormat.toDosTime(item.file.lastModified());
+		try (
+			FileInputStream is = new FileInputStream(item.file);
+		) {
+			FileChannel ch = is.getChannel();
+			item.size = ch.size();
+			byte[] magic = new byte[SIZE_MAGIC];
+			int lenMagic = Math.max(0, ch.read(ByteBuffer.wrap(magic), 0));
+			boolean stored = item.size == 0
+				|| ZipFormat.isCompressedName(item.name)
+				|| ZipFormat.isCompressedMagic(magic, lenMagic);
+			if (stored) {
+				item.method = ZipFormat.METHOD_STORED;
+				item.crc = crc(ch);
+				item.compressedSize = item.size;
+			} else if (item.size <= SIZE_IN_MEMORY) {
+				byte[] raw = new byte[(int)item.size];
+				ByteBuffer buf = ByteBuffer.wrap(raw);
+				while (buf.hasRemaining() && 0 <= ch.read(buf, buf.position())) {
+				}
+				CRC32 crc = new CRC32();
+				crc.update(raw, 0, raw.length);
+				item.crc = crc.getValue();
+				byte[] deflated = deflate(raw);
+				if (deflated.length < raw.length) {
+					item.method = ZipFormat.METHOD_DEFLATED;
+					item.data = deflated;
+				} else {
+					item.method = ZipFormat.METHOD_STORED;
+					item.data = raw;
+				}
+				item.compressedSize = item.data.length;
+			} else {
+				// too large to keep in memory. the writer thread streams it with a data descriptor.
+				item.method = ZipFormat.METHOD_DEFLATED;
+				item.streaming = true;
+			}
+		}
+	}
+
+	@NonNull
+	private byte[] deflate(@NonNull byte[] raw) {
+		Deflater deflater = new Deflater(level, true);
+		try {
+			deflater.setInput(raw);
+			deflater.finish();
+			byte[] buf = new byte[Math.max(1024, raw.length / 2 + 64)];
+			int len = 0;
+			while (!deflater.finished()) {
+				if (len == buf.length) {
+					byte[] b2 = new byte[buf.length * 2];
+					System.arraycopy(buf, 0, b2, 0, len);
+					buf = b2;
+				}
+				len += deflater.deflate(buf, len, buf.length - len);
+			}
+			byte[] rc = new byte[len];
+			System.arraycopy(buf, 0, rc, 0, len);
+			return rc;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static long crc(@NonNull FileChannel ch) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] b = new byte[SIZE_BUFFER];
+		ByteBuffer buf = ByteBuffer.wrap(b);
+		long pos = 0;
+		for ( ; ; ) {
+			buf.clear();
+			int len = ch.read(buf, pos);
+			if (len < 0) {
+				break;
+			}
+			crc.update(b, 0, len);
+			pos += len;
+		}
+		return crc.getValue();
+	}
+
+	@WorkerThread
+	private void writeEntry(@NonNull Item item) throws IOException {
+		item.offset = position;
+		byte[] name = item.name.getBytes(StandardCharsets.UTF_8);
+		boolean zip64 = ZipFormat.MAX32 <= item.size;
+		int flags = ZipFormat.FLAG_UTF8 | (item.streaming ? ZipFormat.FLAG_DESCRIPTOR : 0);
+		ByteBuffer h = buffer(ZipFormat.LOCAL_SIZE + name.length + (zip64 ? 20 : 0));
+		h.putInt(ZipFormat.SIG_LOCAL);
+		h.putShort((short)(zip64 ? ZipFormat.VERSION64 : ZipFormat.VERSION));
+		h.putShort((short)flags);
+		h.putShort((short)item.method);
+		h.putInt((int)item.time);
+		h.putInt(item.streaming ? 0 : (int)item.crc);
+		if (zip64) {
+			h.putInt((int)ZipFormat.MAX32);
+			h.putInt((int)ZipFormat.MAX32);
+		} else {
+			h.putInt(item.streaming ? 0 : (int)item.compressedSize);
+			h.putInt(item.streaming ? 0 : (int)item.size);
+		}
+		h.putShort((short)name.length);
+		h.putShort((short)(zip64 ? 20 : 0));
+		h.put(name);
+		if (zip64) {
+			h.putShort((short)ZipFormat.EXTRA_ZIP64);
+			h.putShort((short)16);
+			h.putLong(item.size);
+			h.putLong(item.streaming ? 0 : item.compressedSize);
+		}
+		write(h);
+		if (item.streaming) {
+			writeDeflateStreaming(item, zip64);
+		} else if (item.data != null) {
+			write(ByteBuffer.wrap(item.data));
+		} else {
+			transfer(item);
+		}
+	}
+
+	private void transfer(@NonNull Item item) throws IOException {
+		try (
+			FileInputStream is = new FileInputStream(item.file);
+		) {
+			FileChannel ch = is.getChannel();
+			long done = 0;
+			while (done < item.size) {
+				long len = ch.transferTo(done, item.size - done, out);
+				if (len <= 0) {
+					throw new IOException("file changed while zipping... " + item.file);
+				}
+				done += len;
+			}
+			position += done;
+		}
+	}
+
+	private void writeDeflateStreaming(@NonNull Item item, boolean zip64) throws IOException {
+		Deflater deflater = new Deflater(level, true);
+		CRC32 crc = new CRC32();
+		byte[] in = new byte[SIZE_BUFFER];
+		byte[] def = new byte[SIZE_BUFFER];
+		long compressed = 0;
+		try (
+			FileInputStream is = new FileInputStream(item.file);
+		) {
+			for ( ; ; ) {
+				int len = is.read(in);
+				if (len < 0) {
+					deflater.finish();
+				} else {
+					crc.update(in, 0, len);
+					deflater.setInput(in, 0, len);
+				}
+				while (len < 0 ? !deflater.finished() : !deflater.needsInput()) {
+					int n = deflater.deflate(def);
+					if (0 < n) {
+						write(ByteBuffer.wrap(def, 0, n));
+						compressed += n;
+					}
+				}
+				if (len < 0) {
+					break;
+				}
+			}
+		} finally {
+			deflater.end();
+		}
+		item.crc = crc.getValue();
+		item.compressedSize = compressed;
+		ByteBuffer d = buffer(zip64 ? 24 : 16);
+		d.putInt(ZipFormat.SIG_DESCRIPTOR);
+		d.putInt((int)item.crc);
+		if (zip64) {
+			d.putLong(item.compressedSize);
+			d.putLong(item.size);
+		} else {
+			d.putInt((int)item.compressedSize);
+			d.putInt((int)item.size);
+		}
+		write(d);
+	}
+
+	private void writeCentralDirectory(@NonNull List<Item> list) throws IOException {
+		long offsetCentral = position;
+		for (Item item : list) {
+			byte[] name = item.name.getBytes(StandardCharsets.UTF_8);
+			boolean bigSize = ZipFormat.MAX32 <= item.size;
+			boolean bigCompressed = ZipFormat.MAX32 <= item.compressedSize;
+			boolean bigOffset = ZipFormat.MAX32 <= item.offset;
+			int lenExtra = (bigSize ? 8 : 0) + (bigCompressed ? 8 : 0) + (bigOffset ? 8 : 0);
+			if (lenExtra != 0) {
+				lenExtra += 4;
+			}
+			int version = lenExtra != 0 ? ZipFormat.VERSION64 : ZipFormat.VERSION;
+			int flags = ZipFormat.FLAG_UTF8 | (item.streaming ? ZipFormat.FLAG_DESCRIPTOR : 0);
+			ByteBuffer h = buffer(ZipFormat.CENTRAL_SIZE + name.length + lenExtra);
+			h.putInt(ZipFormat.SIG_CENTRAL);
+			h.putShort((short)version);
+			h.putShort((short)version);
+			h.putShort((short)flags);
+			h.putShort((short)item.method);
+			h.putInt((int)item.time);
+			h.putInt((int)item.crc);
+			h.putInt(bigCompressed ? (int)ZipFormat.MAX32 : (int)item.compressedSize);
+			h.putInt(bigSize ? (int)ZipFormat.MAX32 : (int)item.size);
+			h.putShort((short)name.length);
+			h.putShort((short)lenExtra);
+			h.putShort((short)0);		// comment
+			h.putShort((short)0);		// disk
+			h.putShort((short)0);		// internal attributes
+			h.putInt(0);				// external attributes
+			h.putInt(bigOffset ? (int)ZipFormat.MAX32 : (int)item.offset);
+			h.put(name);
+			if (lenExtra != 0) {
+				h.putShort((short)ZipFormat.EXTRA_ZIP64);
+				h.putShort((short)(lenExtra - 4));
+				if (bigSize) {
+					h.putLong(item.size);
+				}
+				if (bigCompressed) {
+					h.putLong(item.compressedSize);
+				}
+				if (bigOffset) {
+					h.putLong(item.offset);
+				}
+			}
+			write(h);
+		}
+		long sizeCentral = position - offsetCentral;
+		int count = list.size();
+		boolean zip64 = ZipFormat.MAX16 <= count || ZipFormat.MAX32 <= offsetCentral || ZipFormat.MAX32 <= sizeCentral;
+		if (zip64) {
+			long offsetEnd64 = position;
+			ByteBuffer e = buffer(ZipFormat.END64_SIZE + ZipFormat.LOCATOR64_SIZE);
+			e.putInt(ZipFormat.SIG_END64);
+			e.putLong(ZipFormat.END64_SIZE - 12);
+			e.putShort((short)ZipFormat.VERSION64);
+			e.putShort((short)ZipFormat.VERSION64);
+			e.putInt(0);
+			e.putInt(0);
+			e.putLong(count);
+			e.putLong(count);
+			e.putLong(sizeCentral);
+			e.putLong(offsetCentral);
+			e.putInt(ZipFormat.SIG_LOCATOR64);
+			e.putInt(0);
+			e.putLong(offsetEnd64);
+			e.putInt(1);
+			write(e);
+		}
+		ByteBuffer e = buffer(ZipFormat.END_SIZE);
+		e.putInt(ZipFormat.SIG_END);
+		e.putShort((short)0);
+		e.putShort((short)0);
+		e.putShort((short)Math.min(count, ZipFormat.MAX16));
+		e.putShort((short)Math.min(count, ZipFormat.MAX16));
+		e.putInt((int)Math.min(sizeCentral, ZipFormat.MAX32));
+		e.putInt((int)Math.min(offsetCentral, ZipFormat.MAX32));
+		e.putShort((short)0);
+		write(e);
+	}
+
+	@NonNull
+	private static ByteBuffer buffer(int size) {
+		return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private void write(@NonNull ByteBuffer buf) throws IOException {
+		if (buf.position() != 0) {
+			buf.flip();
+		}
+		while (buf.hasRemaining()) {
+			position += out.write(buf);
+		}
+	}
+
+	private static class Item {
+		private final File file;
+		private final String name;
+
+		private long time, size, compressedSize, crc, offset;
+		private int method;
+		private boolean streaming;
+		private byte[] data;
+
+		private Item(@NonNull File file, @NonNull String name) {
+			this.file = file;
+			this.name = name;
+		}
+	}
+
+	private void log(@NonNull String msg) {
+		Log2.e(TAG, msg);
+	}
+
+}
@@ -18,6 +18,7 @@ package app.misono.unit206.page.imagecrop;
 
 import android.graphics.Bitmap;
 import android.graphics.RectF;
+import android.net.Uri;
 import android.view.View;
 import android.widget.FrameLayout;
 
@@ -30,6 +31,9 @@ import app.misono.unit206.callback.CallbackLayout;
 import app.misono.unit206.debug.Log2;
 import app.misono.unit206.page.AbstractPage;
 import app.misono.unit206.page.PageActivity;
+import app.misono.unit206.task.Taskz;
+
+import com.google.android.gms.tasks.Task;
 
 public class ImageCropPage extends AbstractPage {
 	private static final String TAG = "ImageCropPage";
@@ -38,6 +42,7 @@ public class ImageCropPage extends AbstractPage {
 	private final ImageCropView view;
 
 	private CallbackLayout cbLayout;
+	private int pixelCropped;
 
 	public ImageCropPage(
 		@NonNull PageActivity activity,
@@ -48,7 +53,9 @@ public class ImageCropPage extends AbstractPage {
 
 		view = new ImageCropView(activity);
 		view.setDoneCallback(() -> {
-			cbCropped.callback(view.getCroppedBitmap());
+			view.getCroppedTask(pixelCropped)
+				.addOnSuccessListener(cbCropped::callback)
+				.addOnFailureListener(Taskz::printStackTrace2);
 		});
 		mBase.addView(
 			view,
@@ -87,6 +94,40 @@ public class ImageCropPage extends AbstractPage {
 		view.setImageBitmap(bitmap);
 	}
 
+	/**
+	 *	Region mode. Only a preview of pixelPreview is kept in memory, and the cropped
+	 *	bitmap is decoded from uri on a worker thread when done is clicked.
+	 */
+	@MainThread
+	@NonNull
+	public Task<Void> setImageUri(@NonNull Uri uri, int pixelPreview) {
+		Task<ImageCropSource> task = Taskz.call(Taskz.getExecutor(Taskz.LANE_IO), () -> {
+			return ImageCropSource.create(activity, uri, pixelPreview);
+		});
+		return Taskz.thenCompose(task, Taskz.getExecutor(Taskz.LANE_IO), source -> Taskz.call(() -> {
+			view.setImageSource(source);
+			layout.layout(view);
+			return null;
+		}));
+	}
+
+	/**
+	 *	@param pixel long side of the cropped bitmap in the region mode. 0 for the full resolution.
+	 */
+	@MainThread
+	public void setCroppedPixel(int pixel) {
+		pixelCropped = pixel;
+	}
+
+	/**
+	 *	Same as clicking done, without the callback.
+	 */
+	@MainThread
+	@NonNull
+	public Task<ImageCropResult> getCroppedTask() {
+		return view.getCroppedTask(pixelCropped);
+	}
+
 	@MainThread
 	public void setLayoutCallback(@Nullable CallbackLayout layout) {
 		cbLayout = layout;
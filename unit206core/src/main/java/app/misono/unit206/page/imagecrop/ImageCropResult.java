@@ -32,6 +32,9 @@ public class ImageCropResult {
 		this.rect = rect;
 	}
 
+	/**
+	 *	@return the preview in the region mode.
+	 */
 	@NonNull
 	public Bitmap getBitmap() {
 		return bitmap;
@@ -42,6 +45,10 @@ public class ImageCropResult {
 		return cropped;
 	}
 
+	/**
+	 *	@return in the getBitmap() coordinates, or the original image coordinates
+	 *		(not rotated by EXIF) in the region mode.
+	 */
 	@NonNull
 	public Rect getCroppedRect() {
 		return rect;
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.page.imagecrop;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import app.misono.unit206.debug.Log2;
+import app.misono.unit206.misc.ImageUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ *	The original image of the crop region mode. Only a screen resolution preview is
+ *	decoded, and the cropped region is decoded from the original by BitmapRegionDecoder.
+ */
+class ImageCropSource {
+	private static final String TAG = "ImageCropSource";
+
+	private final Context context;
+	private final Bitmap preview;
+	private final Uri uri;
+	private final int width, height;		// the encoded size, not rotated.
+	private final int rotateDegree;
+
+	private ImageCropSource(
+		@NonNull Context context,
+		@NonNull Uri uri,
+		int width,
+		int height,
+		int rotateDegree,
+		@NonNull Bitmap preview
+	) {
+		this.context = context;
+		this.uri = uri;
+		this.width = width;
+		this.height = height;
+		this.rotateDegree = rotateDegree;
+		this.preview = preview;
+	}
+
+	/**
+	 *	@param pixel long side of the preview.
+	 */
+	@WorkerThread
+	@NonNull
+	static ImageCropSource create(@NonNull Context context, @NonNull Uri uri, int pixel) throws IOException {
+		Context app = context.getApplicationContext();
+		BitmapFactory.Options opts = new BitmapFactory.Options();
+		opts.inJustDecodeBounds = true;
+		try (
+			InputStream is = open(app, uri);
+		) {
+			BitmapFactory.decodeStream(is, null, opts);
+		}
+		if (opts.outWidth <= 0 || opts.outHeight <= 0) {
+			throw new IOException("cannot decode... " + uri);
+		}
+		int rotateDegree = ImageUtils.getImageRotateDegree(app, uri);
+		Bitmap preview = ImageUtils.readBitmapResizeRotate(app, uri, pixel, false);
+		if (preview == null) {
+			throw new IOException("cannot decode... " + uri);
+		}
+		return new ImageCropSource(app, uri, opts.outWidth, opts.outHeight, rotateDegree, preview);
+	}
+
+	@AnyThread
+	@NonNull
+	Bitmap getPreview() {
+		return preview;
+	}
+
+	/**
+	 *	@param x0 preview bitmap coordinates, as ScalingView.getBitmapPoint().
+	 *	@return the encoded image coordinates, not rotated.
+	 */
+	@AnyThread
+	@NonNull
+	Rect toSourceRect(float x0, float y0, float x1, float y1) {
+		boolean swap = rotateDegree == 90 || rotateDegree == 270;
+		float sx = (float)(swap ? height : width) / preview.getWidth();
+		float sy = (float)(swap ? width : height) / preview.getHeight();
+		float[] p0 = unrotate(x0 * sx, y0 * sy);
+		float[] p1 = unrotate(x1 * sx, y1 * sy);
+		Rect rc = new Rect(
+			Math.round(Math.min(p0[0], p1[0])),
+			Math.round(Math.min(p0[1], p1[1])),
+			Math.round(Math.max(p0[0], p1[0])),
+			Math.round(Math.max(p0[1], p1[1]))
+		);
+		if (!rc.intersect(0, 0, width, height) || rc.isEmpty()) {
+			throw new IllegalArgumentException("out of the image... " + rc);
+		}
+		return rc;
+	}
+
+	/**
+	 *	rotated image coordinates -> encoded image coordinates.
+	 */
+	@NonNull
+	private float[] unrotate(float x, float y) {
+		switch (rotateDegree) {
+		case 90:
+			return new float[] { y, height - x };
+		case 180:
+			return new float[] { width - x, height - y };
+		case 270:
+			return new float[] { width - y, x };
+		default:
+			return new float[] { x, y };
+		}
+	}
+
+	/**
+	 *	@param rect from toSourceRect().
+	 *	@param pixel long side of the result. 0 for the full resolution.
+	 */
+	@WorkerThread
+	@NonNull
+	@SuppressWarnings("deprecation")
+	Bitmap decodeRegion(@NonNull Rect rect, int pixel) throws IOException {
+		BitmapRegionDecoder decoder;
+		try (
+			InputStream is = open(context, uri);
+		) {
+			decoder = BitmapRegionDecoder.newInstance(is, false);
+		}
+		if (decoder == null) {
+			throw new IOException("cannot decode region... " + uri);
+		}
+		Bitmap region;
+		try {
+			BitmapFactory.Options opts = new BitmapFactory.Options();
+			opts.inSampleSize = ImageUtils.calcSampleSize(rect.width(), rect.height(), pixel);
+			region = decoder.decodeRegion(rect, opts);
+		} finally {
+			decoder.recycle();
+		}
+		if (region == null) {
+			throw new IOException("cannot decode region... " + rect);
+		}
+		log("decodeRegion:" + rect + " " + region.getWidth() + "x" + region.getHeight());
+		Bitmap rc = ImageUtils.scaleRotate(region, rotateDegree, pixel, true);
+		if (rc != region) {
+			region.recycle();
+		}
+		return rc;
+	}
+
+	@NonNull
+	private static InputStream open(@NonNull Context context, @NonNull Uri uri) throws IOException {
+		InputStream is = context.getContentResolver().openInputStream(uri);
+		if (is == null) {
+			throw new IOException("cannot open... " + uri);
+		}
+		return is;
+	}
+
+	private void log(@NonNull String msg) {
+		Log2.e(TAG, msg);
+	}
+
+}
@@ -35,9 +35,12 @@ import androidx.annotation.Nullable;
 import androidx.appcompat.widget.AppCompatImageView;
 
 import app.misono.unit206.debug.Log2;
+import app.misono.unit206.task.Taskz;
 import app.misono.unit206.view.IconCardView;
 import app.misono.unit206.view.ScalingView;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.android.material.textview.MaterialTextView;
 
 public class ImageCropView extends FrameLayout {
@@ -51,6 +54,7 @@ public class ImageCropView extends FrameLayout {
 
 	Bitmap bitmapLatest;
 
+	private ImageCropSource source;
 	private Runnable cbDone;
 	private Matrix matrixGesture;
 	private RectF rectCrop;
@@ -146,29 +150,70 @@ public class ImageCropView extends FrameLayout {
 
 	@MainThread
 	void setImageBitmap(@NonNull Bitmap bitmap) {
+		source = null;
+		showBitmap(bitmap);
+	}
+
+	@MainThread
+	void setImageSource(@NonNull ImageCropSource source) {
+		this.source = source;
+		showBitmap(source.getPreview());
+	}
+
+	@MainThread
+	private void showBitmap(@NonNull Bitmap bitmap) {
 		bitmapLatest = bitmap;
 		vImage.setImageMatrix(matrixGesture);
 		vImage.setImageBitmap(bitmap);
 	}
 
+	/**
+	 *	Region mode: the crop area of the preview is mapped to the original image and
+	 *	decoded on a worker thread. Otherwise same as getCroppedBitmap().
+	 *
+	 *	@param pixel long side of the cropped bitmap in the region mode. 0 for the full resolution.
+	 */
 	@MainThread
 	@NonNull
-	ImageCropResult getCroppedBitmap() {
-		float[] xy0, xy1;
-		if (rectCrop != null) {
-			int w = vImage.getWidth();
-			int h = vImage.getHeight();
-			xy0 = vScaling.getBitmapPoint(w * rectCrop.left, h * rectCrop.top);
-			xy1 = vScaling.getBitmapPoint(w * rectCrop.right, h * rectCrop.bottom);
-		} else {
+	Task<ImageCropResult> getCroppedTask(int pixel) {
+		if (source == null) {
+			return Tasks.forResult(getCroppedBitmap());
+		}
+		ImageCropSource src = source;
+		float[] xy = getCropPoints();
+		Rect rect = src.toSourceRect(xy[0], xy[1], xy[2], xy[3]);
+		return Taskz.call(Taskz.getExecutor(Taskz.LANE_CPU), () -> {
+			Bitmap cropped = src.decodeRegion(rect, pixel);
+			return new ImageCropResult(src.getPreview(), cropped, rect);
+		});
+	}
+
+	/**
+	 *	@return x0, y0, x1, y1 in the bitmapLatest coordinates.
+	 */
+	@MainThread
+	@NonNull
+	private float[] getCropPoints() {
+		if (rectCrop == null) {
 			throw new RuntimeException("please invoke ImageCropPage#setCropRect();");
 		}
+		int w = vImage.getWidth();
+		int h = vImage.getHeight();
+		float[] xy0 = vScaling.getBitmapPoint(w * rectCrop.left, h * rectCrop.top);
+		float[] xy1 = vScaling.getBitmapPoint(w * rectCrop.right, h * rectCrop.bottom);
 		log("x0:y0:" + xy0[0] + " " + xy0[1]);
 		log("x1:y1:" + xy1[0] + " " + xy1[1]);
-		int left = (int)xy0[0];
-		int top = (int)xy0[1];
-		int right = (int)xy1[0];
-		int bottom = (int)xy1[1];
+		return new float[] { xy0[0], xy0[1], xy1[0], xy1[1] };
+	}
+
+	@MainThread
+	@NonNull
+	ImageCropResult getCroppedBitmap() {
+		float[] xy = getCropPoints();
+		int left = (int)xy[0];
+		int top = (int)xy[1];
+		int right = (int)xy[2];
+		int bottom = (int)xy[3];
 		int width = right - left;
 		int height = bottom - top;
 		Rect rect = new Rect(left, top, right, bottom);
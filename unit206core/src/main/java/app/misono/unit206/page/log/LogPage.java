@@ -28,10 +28,11 @@ import androidx.annotation.RequiresApi;
 
 import app.misono.unit206.R;
 import app.misono.unit206.debug.Log2;
+import app.misono.unit206.debug.LogWriter;
 import app.misono.unit206.misc.Utils;
 import app.misono.unit206.page.AbstractPage;
 import app.misono.unit206.page.PageActivity;
-import app.misono.unit206.task.SingletonTask;
+import app.misono.unit206.task.SerialTask;
 import app.misono.unit206.task.Taskz;
 import app.misono.unit206.theme.AppStyle;
 
@@ -39,24 +40,24 @@ import com.google.android.gms.tasks.Task;
 import com.google.android.material.snackbar.Snackbar;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
 
 public class LogPage extends AbstractPage {
 	private static final String TAG = "LogPage";
 	private static final String FNAME = TAG + ".txt";
 	private static final int STATE_IDLE = 0;
 	private static final int STATE_WRITE_LOG = 1;
+	private static final int CAPACITY = 4096;
+	private static final long MAX_BYTES = 1024 * 1024;
+	private static final int MAX_FILES = 2;
+	private static final int TAIL_BYTES = 256 * 1024;
+	private static final long MSEC_FLUSH = 1000;
 
-	private static final SimpleDateFormat form = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
-	private static final SingletonTask task1 = new SingletonTask();
+	private static final SerialTask task1 = new SerialTask();
 
-	// task1 instance
-	private static final StringBuilder log = new StringBuilder();
+	private static volatile LogWriter writer;
 
-	private static File fileLog;
+	// task1 instance
+	private final LogTailReader reader;
 
 	private final LogLayout layout;
 	private final LogView view;
@@ -72,7 +73,7 @@ public class LogPage extends AbstractPage {
 		this.codeSaf = codeSaf;
 		layout = new LogLayout();
 		view = new LogView(activity);
-		fileLog = new File(activity.getCacheDir(), FNAME);
+		reader = new LogTailReader(getWriter(activity.getCacheDir()), TAIL_BYTES);
 
 		pref = new LogPref(activity, this);
 		setPref(pref);
@@ -93,15 +94,17 @@ public class LogPage extends AbstractPage {
 			mBase.setBackgroundColor(Color.WHITE);
 		}
 
-		task1.call(Taskz.getExecutor(), () -> {
-			String s = Utils.readStringWithException(fileLog);
-			log.append(s);
-			return null;
-		}).addOnFailureListener(Taskz::printStackTrace2);
-
 		setActivityResultCallback();
 	}
 
+	@NonNull
+	private static synchronized LogWriter getWriter(@NonNull File dir) {
+		if (writer == null) {
+			writer = new LogWriter(new File(dir, FNAME), CAPACITY, MAX_BYTES, MAX_FILES);
+		}
+		return writer;
+	}
+
 	private void setActivityResultCallback() {
 		int state = pref.getState();
 		log("setActivityResultCallback:" + state);
@@ -126,7 +129,8 @@ public class LogPage extends AbstractPage {
 		log("callbackWriteResult:");
 		Snackbar snack = showSnackProgress(R.string.log_saving);
 		Taskz.call(Taskz.getExecutor(), () -> {
-			Utils.writeToUri(activity, fileLog, uri);
+			writer.flush(MSEC_FLUSH);
+			Utils.writeStringToUriWithException(activity, writer.readAll(), uri);
 			return null;
 		}).addOnCompleteListener(task -> {
 			snack.dismiss();
@@ -147,20 +151,22 @@ public class LogPage extends AbstractPage {
 	}
 
 	private void clearLog() {
-		task1.call(Taskz.getExecutor(), () -> {
-			log.setLength(0);
-			fileLog.delete();
-			return null;
-		}).addOnFailureListener(Taskz::printStackTrace2);
+		writer.clear();
 	}
 
 	@Override
 	public void onResume() {
 		super.onResume();
-		task1.call(Taskz.getExecutor(), () -> {
-			String s = log.toString();
+		task1.call(Taskz.getExecutor(Taskz.LANE_IO), () -> {
+			writer.flush(MSEC_FLUSH);
+			String s = reader.read();
+			boolean reset = reader.isReset();
 			Taskz.call(() -> {
-				view.setLogText(s);
+				if (reset) {
+					view.setLogText(s);
+				} else {
+					view.appendLogText(s);
+				}
 				return null;
 			}).addOnFailureListener(Taskz::printStackTrace2);
 			return null;
@@ -169,7 +175,10 @@ public class LogPage extends AbstractPage {
 
 	@NonNull
 	public Task<String> getLogString() {
-		return task1.call(Taskz.getExecutor(), log::toString);
+		return task1.call(Taskz.getExecutor(Taskz.LANE_IO), () -> {
+			writer.flush(MSEC_FLUSH);
+			return writer.readAll();
+		});
 	}
 
 	@Nullable
@@ -202,35 +211,17 @@ public class LogPage extends AbstractPage {
 	}
 
 	public static void e(@NonNull String msg) {
-		if (fileLog != null) {
-			task1.call(Taskz.getExecutor(), () -> {
-				log(msg);
-				String s = form.format(new Date()) + " : " + msg + "\n";
-				log.append(s);
-				try (
-					FileOutputStream os = new FileOutputStream(fileLog, true);
-				) {
-					os.write(s.getBytes());
-				}
-				return null;
-			}).addOnFailureListener(Taskz::printStackTrace2);
-		} else {
-			log(msg);
+		log(msg);
+		LogWriter w = writer;
+		if (w != null) {
+			w.e(null, msg);
 		}
 	}
 
 	public static void lf() {
-		if (fileLog != null) {
-			task1.call(Taskz.getExecutor(), () -> {
-				String s = "\n";
-				log.append(s);
-				try (
-					FileOutputStream os = new FileOutputStream(fileLog, true);
-				) {
-					os.write(s.getBytes());
-				}
-				return null;
-			}).addOnFailureListener(Taskz::printStackTrace2);
+		LogWriter w = writer;
+		if (w != null) {
+			w.raw("");
 		}
 	}
 
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.page.log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import app.misono.unit206.debug.LogWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ *	Reads the lines appended to the log file since the last read. The first read, and the
+ *	read after the file was rotated or cleared, return the last maxBytes with isReset().
+ */
+final class LogTailReader {
+	private final LogWriter writer;
+	private final int maxBytes;
+
+	private long offset;
+	private int generation;
+	private boolean reset;
+
+	LogTailReader(@NonNull LogWriter writer, int maxBytes) {
+		this.writer = writer;
+		this.maxBytes = maxBytes;
+		offset = -1;
+	}
+
+	/**
+	 *	@return true if the last read() is not a continuation of the previous one.
+	 */
+	boolean isReset() {
+		return reset;
+	}
+
+	@WorkerThread
+	@NonNull
+	String read() throws IOException {
+		File file = writer.getFile();
+		int gen = writer.getGeneration();
+		long len = file.length();
+		reset = offset < 0 || gen != generation || len < offset;
+		generation = gen;
+		long start = reset ? Math.max(0, len - maxBytes) : offset;
+		offset = len;
+		if (len <= start) {
+			return "";
+		}
+		byte[] b = new byte[(int)(len - start)];
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			raf.seek(start);
+			raf.readFully(b);
+		}
+		int from = 0;
+		if (reset && start != 0) {
+			for ( ; from < b.length && b[from] != '\n'; from++) {
+			}
+			from = Math.min(from + 1, b.length);
+		}
+		return new String(b, from, b.length - from, StandardCharsets.UTF_8);
+	}
+
+}
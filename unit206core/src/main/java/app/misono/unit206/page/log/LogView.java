@@ -18,10 +18,13 @@ package app.misono.unit206.page.log;
 
 import android.content.Context;
 import android.graphics.Typeface;
+import android.text.Editable;
+import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 import android.widget.ScrollView;
+import android.widget.TextView;
 
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
@@ -29,6 +32,8 @@ import androidx.annotation.NonNull;
 import com.google.android.material.textview.MaterialTextView;
 
 public class LogView extends FrameLayout {
+	private static final int MAX_CHARS = 256 * 1024;
+
 	MaterialTextView text;
 
 	LinearLayout linear;
@@ -50,6 +55,7 @@ public class LogView extends FrameLayout {
 
 		text = new MaterialTextView(context);
 		text.setTypeface(Typeface.MONOSPACE);
+		text.setText("", TextView.BufferType.EDITABLE);
 		linear.addView(text, LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
 
 		scroll = new ScrollView(context);
@@ -59,7 +65,27 @@ public class LogView extends FrameLayout {
 
 	@MainThread
 	void setLogText(@NonNull String msg) {
-		text.setText(msg);
+		text.setText(msg, TextView.BufferType.EDITABLE);
+		trim();
+	}
+
+	@MainThread
+	void appendLogText(@NonNull String msg) {
+		if (!msg.isEmpty()) {
+			text.append(msg);
+			trim();
+		}
+	}
+
+	/**
+	 *	drops the oldest lines over MAX_CHARS.
+	 */
+	private void trim() {
+		Editable e = text.getEditableText();
+		if (e != null && MAX_CHARS < e.length()) {
+			int end = TextUtils.indexOf(e, '\n', e.length() - MAX_CHARS);
+			e.delete(0, end < 0 ? e.length() - MAX_CHARS : end + 1);
+		}
 	}
 
 }
@@ -21,22 +21,60 @@ import android.util.SparseArray;
 import androidx.annotation.NonNull;
 import androidx.annotation.WorkerThread;
 
+import java.io.Closeable;
 import java.util.concurrent.atomic.AtomicInteger;
 
-public class PipeSequential<C extends PipeCart> {
+/**
+ *	Re-orders carts by getNo() and sends them to sender one by one.
+ *
+ *	In window mode the pending carts are kept in a power-of-two ring indexed by (no &amp; mask).
+ *	A cart too far ahead of the next No. blocks its caller until the window moves,
+ *	and sender is called outside the monitor by one thread at a time.
+ *
+ *	The blocked caller must not be the one which would bring the next No., or it waits forever.
+ *	So give maxCapacity of the carts which can be in flight at once, as Pipeline does.
+ */
+public class PipeSequential<C extends PipeCart> implements Closeable {
 	private final PipeCartCallback<C> sender;
 	private final AtomicInteger no;
 	private final int maxCapacity;
 
 	// synchronized instance
 	private final SparseArray<C> array;
+	private final Object[] ring;
+	private final Object[] batch;
+	private final int mask;
 	private int noSendNext;
+	private boolean draining;
+	private boolean closed;
+	private int maxDistance;
+	private int stallCount;
+	private long stallNanos;
 
 	public PipeSequential(int maxCapacity, @NonNull PipeCartCallback<C> sender) {
-		this.maxCapacity = maxCapacity;
+		this(maxCapacity, false, sender);
+	}
+
+	/**
+	 *	@param window true to use the blocking window mode. maxCapacity is rounded up to a power of two.
+	 */
+	public PipeSequential(int maxCapacity, boolean window, @NonNull PipeCartCallback<C> sender) {
 		this.sender = sender;
-		array = new SparseArray<>();
 		no = new AtomicInteger();
+		if (window) {
+			int size = Integer.highestOneBit(Math.max(1, maxCapacity) * 2 - 1);
+			this.maxCapacity = size;
+			array = null;
+			ring = new Object[size];
+			batch = new Object[size];
+			mask = size - 1;
+		} else {
+			this.maxCapacity = maxCapacity;
+			array = new SparseArray<>();
+			ring = null;
+			batch = null;
+			mask = 0;
+		}
 	}
 
 	public int getNewNo() {
@@ -48,7 +86,43 @@ public class PipeSequential<C extends PipeCart> {
 	}
 
 	@WorkerThread
-	public synchronized void cartReady(@NonNull C cart) throws Exception {
+	public void cartReady(@NonNull C cart) throws Exception {
+		if (ring != null) {
+			cartReadyWindow(cart);
+		} else {
+			cartReadySparse(cart);
+		}
+	}
+
+	/**
+	 *	Wakes up the callers blocked in cartReady() of window mode with InterruptedException.
+	 *	Later calls throw it too.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 *	@return the largest distance between a received cart and the next No. to send.
+	 */
+	public synchronized int getMaxDistance() {
+		return maxDistance;
+	}
+
+	/**
+	 *	@return how many times cartReady() blocked because the window was full.
+	 */
+	public synchronized int getStallCount() {
+		return stallCount;
+	}
+
+	public synchronized long getStallNanos() {
+		return stallNanos;
+	}
+
+	private synchronized void cartReadySparse(@NonNull C cart) throws Exception {
 		int no = cart.getNo();
 		if (no == noSendNext) {
 			sender.callback(cart);
@@ -73,4 +147,74 @@ public class PipeSequential<C extends PipeCart> {
 		}
 	}
 
+	private void cartReadyWindow(@NonNull C cart) throws Exception {
+		int no = cart.getNo();
+		synchronized (this) {
+			if (closed) {
+				throw new InterruptedException("closed");
+			}
+			if (no < noSendNext) {
+				throw new RuntimeException("no is too small... no:" + no + " noSendNext:" + noSendNext);
+			}
+			if (maxCapacity <= no - noSendNext) {
+				long start = System.nanoTime();
+				stallCount++;
+				try {
+					while (maxCapacity <= no - noSendNext) {
+						wait();
+						if (closed) {
+							throw new InterruptedException("closed");
+						}
+					}
+				} finally {
+					stallNanos += System.nanoTime() - start;
+				}
+			}
+			maxDistance = Math.max(maxDistance, no - noSendNext);
+			ring[no & mask] = cart;
+			if (draining || no != noSendNext) {
+				return;
+			}
+			draining = true;
+		}
+		drain();
+	}
+
+	@SuppressWarnings("unchecked")
+	private void drain() throws Exception {
+		try {
+			for ( ; ; ) {
+				int n = 0;
+				synchronized (this) {
+					for ( ; ; ) {
+						int index = noSendNext & mask;
+						Object c = ring[index];
+						if (c == null) {
+							break;
+						}
+						ring[index] = null;
+						batch[n++] = c;
+						noSendNext++;
+					}
+					if (n == 0) {
+						draining = false;
+						return;
+					}
+					notifyAll();
+				}
+				// only the draining thread touches batch.
+				for (int i = 0; i < n; i++) {
+					C c = (C)batch[i];
+					batch[i] = null;
+					sender.callback(c);
+				}
+			}
+		} catch (Exception e) {
+			synchronized (this) {
+				draining = false;
+			}
+			throw e;
+		}
+	}
+
 }
@@ -20,7 +20,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.WorkerThread;
 
 import app.misono.unit206.debug.Log2;
-import app.misono.unit206.misc.FifoQueue;
+import app.misono.unit206.misc.RingQueue;
 import app.misono.unit206.misc.Utils;
 
 import java.io.Closeable;
@@ -31,14 +31,14 @@ public class PipeTask<C extends PipeCart> implements Closeable {
 	private static final String TAG = "PipeTask";
 
 	private final PipeCartCallback<C> onAvailableCart;
-	private final FifoQueue<C> queue;
+	private final RingQueue<C> queue;
 	private final Semaphore semExec, semTake;
 	private final Executor executor;
 
 	public PipeTask(@NonNull Executor executor, @NonNull PipeCartCallback<C> onAvailableCart) {
 		this.executor = executor;
 		this.onAvailableCart = onAvailableCart;
-		queue = new FifoQueue<>(1, this::onAvailableQueue);
+		queue = new RingQueue<>(1, this::onAvailableQueue);
 		semExec = new Semaphore(1);
 		semTake = new Semaphore(1);
 	}
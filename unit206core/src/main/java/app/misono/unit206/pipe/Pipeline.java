@@ -0,0 +1,305 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.pipe;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import app.misono.unit206.debug.Log2;
+import app.misono.unit206.misc.RingQueue;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ *	Multi-stage pipeline.
+ *
+ *	<pre>
+ *	Pipeline&lt;Frame&gt; pipe = Pipeline.of(this::decode)
+ *		.then(this::process, 4)
+ *		.thenSequential(this::encode)
+ *		.build(executor, this::write);
+ *	</pre>
+ *
+ *	Each stage has its own bounded queue and worker count. A full queue blocks the previous stage,
+ *	so the slowest stage throttles inputSync(). Carts are delivered to the sink in getNo() order.
+ *
+ *	inputSync() also blocks while getMaxInFlight() carts have not reached the sink yet, so a slow
+ *	cart can't make the re-order buffers overflow however many carts pass it.
+ */
+public class Pipeline<C extends PipeCart> implements Closeable {
+	private static final String TAG = "Pipeline";
+
+	private final List<Stage<C>> stages;
+	private final PipeSequential<C> sequential;
+	private final PipeCartCallback<C> sink;
+	private final AtomicReference<Exception> failure;
+	private final AtomicInteger remain;
+	private final Object LOCK = new Object();
+	private final int maxInFlight;
+
+	private volatile boolean closed;
+
+	@NonNull
+	public static <C extends PipeCart> Builder<C> of(@NonNull PipeCartCallback<C> stage) {
+		return new Builder<C>().then(stage);
+	}
+
+	@NonNull
+	public static <C extends PipeCart> Builder<C> of(@NonNull PipeCartCallback<C> stage, int parallelism) {
+		return new Builder<C>().then(stage, parallelism);
+	}
+
+	private Pipeline(
+		@NonNull Executor executor,
+		@NonNull List<Stage<C>> stages,
+		@NonNull PipeCartCallback<C> sink
+	) {
+		this.stages = stages;
+		this.sink = sink;
+		failure = new AtomicReference<>();
+		remain = new AtomicInteger();
+		int inFlight = 1;
+		for (Stage<C> stage : stages) {
+			inFlight += stage.queueDepth + stage.parallelism * stage.batchSize;
+		}
+		maxInFlight = inFlight;
+		for (Stage<C> stage : stages) {
+			stage.queue = new RingQueue<>(stage.queueDepth);
+			if (stage.ordered) {
+				RingQueue<C> queue = stage.queue;
+				stage.reorder = new PipeSequential<>(inFlight, true, queue::put);
+			}
+		}
+		sequential = new PipeSequential<>(inFlight, true, this::onSink);
+		for (int i = 0; i < stages.size(); i++) {
+			Stage<C> stage = stages.get(i);
+			Stage<C> next = i + 1 < stages.size() ? stages.get(i + 1) : null;
+			for (int j = 0; j < stage.parallelism; j++) {
+				executor.execute(() -> runWorker(stage, next));
+			}
+		}
+	}
+
+	/**
+	 *	Numbers a new cart. Carts have to be numbered in the order of inputSync().
+	 */
+	@AnyThread
+	public int getNewNo() {
+		return sequential.getNewNo();
+	}
+
+	/**
+	 *	@return the number of carts between inputSync() and the sink at most.
+	 */
+	@AnyThread
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 *	Blocks while the first stage is full, or getMaxInFlight() carts are in the pipeline.
+	 */
+	@WorkerThread
+	public void inputSync(@NonNull C cart) throws Exception {
+		synchronized (LOCK) {
+			while (maxInFlight <= remain.get() && failure.get() == null && !closed) {
+				LOCK.wait();
+			}
+			throwIfFailed();
+			if (closed) {
+				return;
+			}
+			remain.incrementAndGet();
+		}
+		forward(stages.get(0), cart);
+	}
+
+	/**
+	 *	Waits until every input cart has been delivered to the sink.
+	 */
+	@WorkerThread
+	public void waitDone() throws Exception {
+		synchronized (LOCK) {
+			while (remain.get() != 0 && failure.get() == null && !closed) {
+				LOCK.wait();
+			}
+		}
+		throwIfFailed();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		for (Stage<C> stage : stages) {
+			if (stage.queue != null) {
+				stage.queue.close();
+			}
+			if (stage.reorder != null) {
+				stage.reorder.close();
+			}
+		}
+		sequential.close();
+		synchronized (LOCK) {
+			LOCK.notifyAll();
+		}
+	}
+
+	@WorkerThread
+	private void runWorker(@NonNull Stage<C> stage, @Nullable Stage<C> next) {
+		List<C> batch = new ArrayList<>(stage.batchSize);
+		try {
+			for ( ; ; ) {
+				batch.clear();
+				if (stage.queue.drainTo(batch, stage.batchSize) == 0) {
+					break;
+				}
+				for (C cart : batch) {
+					stage.callback.callback(cart);
+					if (next != null) {
+						forward(next, cart);
+					} else {
+						sequential.cartReady(cart);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed
+		} catch (Exception e) {
+			fail(e);
+		}
+	}
+
+	private void forward(@NonNull Stage<C> stage, @NonNull C cart) throws Exception {
+		if (stage.reorder != null) {
+			stage.reorder.cartReady(cart);
+		} else {
+			stage.queue.put(cart);
+		}
+	}
+
+	@WorkerThread
+	private void onSink(@NonNull C cart) throws Exception {
+		sink.callback(cart);
+		int n = remain.decrementAndGet();
+		if (n == 0 || n == maxInFlight - 1) {
+			synchronized (LOCK) {
+				LOCK.notifyAll();
+			}
+		}
+	}
+
+	private void fail(@NonNull Exception e) {
+		if (failure.compareAndSet(null, e)) {
+			log("stage failed: " + e);
+			close();
+		}
+	}
+
+	private void throwIfFailed() throws Exception {
+		Exception e = failure.get();
+		if (e != null) {
+			throw e;
+		}
+	}
+
+	public static class Builder<C extends PipeCart> {
+		private final List<Stage<C>> stages;
+
+		private Builder() {
+			stages = new ArrayList<>();
+		}
+
+		@NonNull
+		public Builder<C> then(@NonNull PipeCartCallback<C> stage) {
+			return then(stage, 1);
+		}
+
+		@NonNull
+		public Builder<C> then(@NonNull PipeCartCallback<C> stage, int parallelism) {
+			return then(stage, parallelism, parallelism * 2);
+		}
+
+		/**
+		 *	@param parallelism number of workers. the carts may pass this stage out of order.
+		 *	@param queueDepth number of carts waiting in front of this stage.
+		 */
+		@NonNull
+		public Builder<C> then(@NonNull PipeCartCallback<C> stage, int parallelism, int queueDepth) {
+			stages.add(new Stage<>(stage, parallelism, queueDepth, false));
+			return this;
+		}
+
+		/**
+		 *	Single worker stage which receives the carts in getNo() order. (e.g. stateful encoders)
+		 */
+		@NonNull
+		public Builder<C> thenSequential(@NonNull PipeCartCallback<C> stage) {
+			return thenSequential(stage, 2);
+		}
+
+		@NonNull
+		public Builder<C> thenSequential(@NonNull PipeCartCallback<C> stage, int queueDepth) {
+			stages.add(new Stage<>(stage, 1, queueDepth, true));
+			return this;
+		}
+
+		/**
+		 *	Starts the workers on executor. Each worker occupies one thread until close().
+		 */
+		@NonNull
+		public Pipeline<C> build(@NonNull Executor executor, @NonNull PipeCartCallback<C> sink) {
+			return new Pipeline<>(executor, new ArrayList<>(stages), sink);
+		}
+	}
+
+	private static class Stage<C extends PipeCart> {
+		private final PipeCartCallback<C> callback;
+		private final int parallelism, queueDepth, batchSize;
+		private final boolean ordered;
+
+		private RingQueue<C> queue;
+		private PipeSequential<C> reorder;
+
+		private Stage(
+			@NonNull PipeCartCallback<C> callback,
+			int parallelism,
+			int queueDepth,
+			boolean ordered
+		) {
+			if (parallelism <= 0 || queueDepth <= 0) {
+				throw new IllegalArgumentException("parallelism:" + parallelism + " queueDepth:" + queueDepth);
+			}
+			this.callback = callback;
+			this.parallelism = parallelism;
+			this.queueDepth = queueDepth;
+			this.ordered = ordered;
+			batchSize = parallelism == 1 ? queueDepth : 1;
+		}
+	}
+
+	private void log(@NonNull String msg) {
+		Log2.e(TAG, msg);
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.selection;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ *	Runs a callback when RecyclerView has laid out the adapter changes and
+ *	its ItemAnimator has finished, instead of sleeping a fixed time.
+ */
+final class ItemAnimatorWaiter {
+	private static final int MAX_FRAMES = 30;		// give up waiting for the layout. about 500msec.
+
+	private ItemAnimatorWaiter() {
+	}
+
+	@MainThread
+	static void runAfterAnimations(@NonNull RecyclerView recycler, @NonNull Runnable done) {
+		waitLayout(recycler, done, 0);
+	}
+
+	private static void waitLayout(@NonNull RecyclerView recycler, @NonNull Runnable done, int frames) {
+		boolean pending = recycler.hasPendingAdapterUpdates() || recycler.isLayoutRequested();
+		if (pending && recycler.isAttachedToWindow() && frames < MAX_FRAMES) {
+			recycler.postOnAnimation(() -> waitLayout(recycler, done, frames + 1));
+			return;
+		}
+		RecyclerView.ItemAnimator animator = recycler.getItemAnimator();
+		if (animator != null) {
+			animator.isRunning(done::run);		// invoked now if not running.
+		} else {
+			done.run();
+		}
+	}
+
+}
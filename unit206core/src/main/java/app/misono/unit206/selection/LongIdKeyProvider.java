@@ -19,45 +19,104 @@ package app.misono.unit206.selection;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.recyclerview.selection.ItemKeyProvider;
+import androidx.recyclerview.widget.RecyclerView;
 
 import app.misono.unit206.debug.Log2;
+import app.misono.unit206.misc.LongHashMap;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.List;
 
+/**
+ *	id <-> position in O(1). The index is rebuilt once by setLongIdList().
+ */
 public class LongIdKeyProvider extends ItemKeyProvider<Long> {
 	private static final String TAG = "LongIdKeyProvider";
 
-	private List<Long> mList;
+	private LongHashMap<LongId> mIndex;		// ordered. indexOfKey() is the position.
+	private long[] mIds;
+	private boolean mDuplicated;
 
 	public LongIdKeyProvider() {
 		super(SCOPE_MAPPED);
-		mList = new ArrayList<>();
+		mIndex = new LongHashMap<>();
+		mIds = new long[0];
 	}
 
 	public <T extends LongId> void setLongIdList(@NonNull List<T> list) {
-		mList.clear();
-		for (LongId item : list) {
-			mList.add(item.getLongId());
+		int n = list.size();
+		LongHashMap<LongId> index = new LongHashMap<>(n * 2, true);
+		long[] ids = new long[n];
+		boolean duplicated = false;
+		for (int i = 0; i < n; i++) {
+			T item = list.get(i);
+			long id = item.getLongId();
+			ids[i] = id;
+			if (index.put(id, item) != null) {
+				duplicated = true;
+			}
+		}
+		if (duplicated) {
+			log("setLongIdList: duplicated ids...");
+		}
+		mIndex = index;
+		mIds = ids;
+		mDuplicated = duplicated;
+	}
+
+	public int size() {
+		return mIds.length;
+	}
+
+	public boolean contains(long id) {
+		return mIndex.containsKey(id);
+	}
+
+	/**
+	 *	@return RecyclerView.NO_POSITION if not found.
+	 */
+	public int indexOf(long id) {
+		if (mDuplicated) {
+			for (int i = 0; i < mIds.length; i++) {
+				if (mIds[i] == id) {
+					return i;
+				}
+			}
+			return RecyclerView.NO_POSITION;
 		}
+		return mIndex.indexOfKey(id);
 	}
 
+	/**
+	 *	@return read only view of the ids.
+	 */
 	@NonNull
 	public List<Long> getIdList() {
-		return mList;
+		long[] ids = mIds;
+		return new AbstractList<Long>() {
+			@Override
+			public Long get(int index) {
+				return ids[index];
+			}
+
+			@Override
+			public int size() {
+				return ids.length;
+			}
+		};
 	}
 
 	@Nullable
 	@Override
 	public Long getKey(int position) {
-//		log("getKey:" + position + " rc:" + mList.get(position));
-		return mList.get(position);
+//		log("getKey:" + position + " rc:" + mIds[position]);
+		return 0 <= position && position < mIds.length ? mIds[position] : null;
 	}
 
 	@Override
 	public int getPosition(@NonNull Long key) {
-//		log("getPosition:" + key + " rc:" + mList.indexOf(key));
-		return mList.indexOf(key);	// -1: RecyclerView.NO_POSITION
+//		log("getPosition:" + key + " rc:" + indexOf(key));
+		return indexOf(key);
 	}
 
 	private void log(@NonNull String msg) {
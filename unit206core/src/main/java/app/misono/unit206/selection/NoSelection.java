@@ -27,7 +27,6 @@ import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import app.misono.unit206.debug.Log2;
-import app.misono.unit206.misc.Utils;
 import app.misono.unit206.page.PagePref;
 
 import java.util.List;
@@ -40,6 +39,7 @@ public final class NoSelection<T extends LongId> implements ISelection<T>, PageP
 
 	private final ListAdapter<T, RecyclerView.ViewHolder> mAdapter;
 	private final RecyclerView.LayoutManager mManager;
+	private final RecyclerView mRecycler;
 
 	private boolean mUpdating;
 
@@ -51,6 +51,7 @@ public final class NoSelection<T extends LongId> implements ISelection<T>, PageP
 		@NonNull String tag,
 		@NonNull RecyclerView recycler
 	) {
+		mRecycler = recycler;
 		mManager = recycler.getLayoutManager();
 		RecyclerView.Adapter adapter = recycler.getAdapter();
 		if (adapter instanceof ListAdapter) {
@@ -71,7 +72,7 @@ public final class NoSelection<T extends LongId> implements ISelection<T>, PageP
 		mUpdating = true;
 		mAdapter.submitList(list, () -> {
 			// wait ListAdapter animation...
-			Utils.sleep(500, () -> {
+			ItemAnimatorWaiter.runAfterAnimations(mRecycler, () -> {
 				mUpdating = false;
 				if (done != null) {
 					done.run();
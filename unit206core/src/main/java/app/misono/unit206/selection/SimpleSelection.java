@@ -35,7 +35,6 @@ import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import app.misono.unit206.debug.Log2;
-import app.misono.unit206.misc.Utils;
 import app.misono.unit206.page.PagePref;
 
 import java.util.ArrayList;
@@ -52,6 +51,7 @@ public final class SimpleSelection<T extends LongId> implements ISelection<T>, P
 
 	private final ListAdapter<T, RecyclerView.ViewHolder> mAdapter;
 	private final RecyclerView.LayoutManager mManager;
+	private final RecyclerView mRecycler;
 	private final LongSparseArray<Boolean> mSelected;
 	private final SelectionTracker<Long> mTracker;
 	private final Set<SelectionObserver> mObservers;
@@ -68,6 +68,7 @@ public final class SimpleSelection<T extends LongId> implements ISelection<T>, P
 		@NonNull RecyclerView recycler,
 		boolean enableTracker
 	) {
+		mRecycler = recycler;
 		mManager = recycler.getLayoutManager();
 		mProvider = new LongIdKeyProvider();
 		mTracker = new SelectionTracker.Builder<>(
@@ -153,7 +154,7 @@ public final class SimpleSelection<T extends LongId> implements ISelection<T>, P
 		mAdapter.submitList(list, () -> {
 			mProvider.setLongIdList(list);
 			// wait ListAdapter animation...
-			Utils.sleep(500, () -> {
+			ItemAnimatorWaiter.runAfterAnimations(mRecycler, () -> {
 				int n = mSelected.size();
 				log("wakeup:" + n);
 				for (int i = 0; i < n; i++) {
@@ -164,13 +165,15 @@ public final class SimpleSelection<T extends LongId> implements ISelection<T>, P
 				mSelected.clear();
 				mUpdating = false;
 
-				List<Long> listId = mProvider.getIdList();
-				Selection<Long> selection = mTracker.getSelection();
-				for (Long id : selection) {
-					if (!listId.contains(id)) {
-						mTracker.deselect(id);
+				List<Long> removed = new ArrayList<>();
+				for (Long id : mTracker.getSelection()) {
+					if (!mProvider.contains(id)) {
+						removed.add(id);
 					}
 				}
+				for (Long id : removed) {
+					mTracker.deselect(id);
+				}
 				if (done != null) {
 					done.run();
 				}
@@ -180,10 +183,9 @@ public final class SimpleSelection<T extends LongId> implements ISelection<T>, P
 	}
 
 	private void setSelected(long key, boolean selected) {
-		List<Long> listId = mProvider.getIdList();
-		int position = listId.indexOf(key);
+		int position = mProvider.indexOf(key);
 		log("setSelected:" + key + " pos:" + position + " " + selected);
-		View card = mManager.findViewByPosition(position);
+		View card = position != RecyclerView.NO_POSITION ? mManager.findViewByPosition(position) : null;
 		if (card != null) {
 			card.setSelected(selected);
 		} else {
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.sound;
+
+import androidx.annotation.NonNull;
+
+/**
+ *	Streaming resampler by a polyphase windowed-sinc (Kaiser) FIR filter.
+ *
+ *	inHz / outHz is reduced to M / L, and one filter phase is precomputed for each of
+ *	the L output positions between two input samples. The fractional phase and the
+ *	last taps of the input are carried to the next block, so the blocks are joined
+ *	without clicks. The output is aligned to the input, without delay, but the output of
+ *	the last half taps of the input is held until the next block.
+ *
+ *	For downsampling, the taps are multiplied by M / L (at most MAX_HALF * 2 taps), so the
+ *	anti-alias filter keeps its transition band relative to the output rate.
+ *
+ *	The samples are interleaved by the channels. No allocation after the constructor.
+ *
+ *	<pre>
+ *	PolyphaseResampler r = new PolyphaseResampler(48000, 16000, 1, PolyphaseResampler.QUALITY_MEDIUM);
+ *	short[] out = new short[r.getMaxOutputFrames(480)];
+ *	int n = r.resample(in, 0, 480, out, 0, out.length);		// call getConsumedFrames() if out may be short.
+ *	</pre>
+ */
+public class PolyphaseResampler {
+	private static final int MAX_PHASES = 1024;
+	private static final int CHUNK = 1024;		// input frames buffered at once.
+	private static final int MAX_HALF = 1024;
+
+	public static final int QUALITY_LOW = 0;		// 16 taps (x M / L for downsampling)
+	public static final int QUALITY_MEDIUM = 1;		// 32 taps
+	public static final int QUALITY_HIGH = 2;		// 64 taps
+
+	private final float[] table;		// taps for each phase.
+	private final float[] buf;			// interleaved input frames.
+	private final int channels;
+	private final int taps;
+	private final int half;
+	private final int phases;			// L
+	private final int step;				// M
+
+	private int nBuf, start, phase;
+	private int skip;					// input frames to be dropped. start passed nBuf.
+	private int consumed;
+
+	/**
+	 *	If inHz / outHz can't be reduced to MAX_PHASES or less phases, the ratio is
+	 *	rounded to MAX_PHASES phases.
+	 */
+	public PolyphaseResampler(int inHz, int outHz, int channels, int quality) {
+		if (inHz <= 0 || outHz <= 0 || channels <= 0) {
+			throw new IllegalArgumentException("inHz:" + inHz + " outHz:" + outHz + " channels:" + channels);
+		}
+		int g = gcd(inHz, outHz);
+		int l = outHz / g;
+		int m = inHz / g;
+		if (MAX_PHASES < l) {
+			m = Math.max(1, (int)Math.round((double)m * MAX_PHASES / l));
+			l = MAX_PHASES;
+		}
+		phases = l;
+		step = m;
+		this.channels = channels;
+		int base;
+		double beta;
+		switch (quality) {
+		case QUALITY_LOW:
+			base = 8;
+			beta = 5.0;
+			break;
+		case QUALITY_HIGH:
+			base = 32;
+			beta = 9.0;
+			break;
+		default:
+			base = 16;
+			beta = 7.0;
+			break;
+		}
+		half = (int)Math.min(MAX_HALF, Math.max(base, Math.ceil((double)base * m / l)));
+		taps = half * 2;
+		double fc = 0.5 * Math.min(1.0, (double)l / m) * (1 - 1.0 / base);		// cycles per input sample
+		table = createTable(l, taps, half, fc, beta);
+		buf = new float[(taps + CHUNK) * channels];
+		reset();
+	}
+
+	/**
+	 *	Clears the carried samples. The next block is a new stream.
+	 */
+	public void reset() {
+		nBuf = half - 1;		// zeros before the first input, to align the output.
+		for (int i = 0; i < nBuf * channels; i++) {
+			buf[i] = 0;
+		}
+		start = 0;
+		phase = 0;
+		skip = 0;
+		consumed = 0;
+	}
+
+	public int getChannels() {
+		return channels;
+	}
+
+	/**
+	 *	@return the output frames enough for inFrames input frames.
+	 */
+	public int getMaxOutputFrames(int inFrames) {
+		return (int)(((long)(inFrames + taps) * phases + step - 1) / step) + 1;
+	}
+
+	/**
+	 *	@return the input frames consumed by the last resample(). less than inFrames
+	 *			only if the output was full. pass the rest to the next call, or call
+	 *			with 0 frames to get the output of the consumed frames.
+	 */
+	public int getConsumedFrames() {
+		return consumed;
+	}
+
+	/**
+	 *	@param inFrames number of the frames. a frame is a sample of each channel.
+	 *	@param outFrames capacity of out in frames.
+	 *	@return number of the output frames.
+	 */
+	public int resample(
+		@NonNull float[] in,
+		int inOffset,
+		int inFrames,
+		@NonNull float[] out,
+		int outOffset,
+		int outFrames
+	) {
+		int produced = 0;
+		int done = 0;
+		for ( ; ; ) {
+			produced += filter(out, null, outOffset + produced * channels, outFrames - produced);
+			if (done == inFrames || produced == outFrames) {
+				break;
+			}
+			done += fill(inFrames - done);
+			int n = Math.min(inFrames - done, buf.length / channels - nBuf);
+			System.arraycopy(in, inOffset + done * channels, buf, nBuf * channels, n * channels);
+			nBuf += n;
+			done += n;
+		}
+		consumed = done;
+		return produced;
+	}
+
+	/**
+	 *	short version of resample(). the output is clipped to the short range.
+	 */
+	public int resample(
+		@NonNull short[] in,
+		int inOffset,
+		int inFrames,
+		@NonNull short[] out,
+		int outOffset,
+		int outFrames
+	) {
+		int produced = 0;
+		int done = 0;
+		for ( ; ; ) {
+			produced += filter(null, out, outOffset + produced * channels, outFrames - produced);
+			if (done == inFrames || produced == outFrames) {
+				break;
+			}
+			done += fill(inFrames - done);
+			int n = Math.min(inFrames - done, buf.length / channels - nBuf);
+			int src = inOffset + done * channels;
+			int dst = nBuf * channels;
+			for (int i = 0; i < n * channels; i++) {
+				buf[dst + i] = in[src + i];
+			}
+			nBuf += n;
+			done += n;
+		}
+		consumed = done;
+		return produced;
+	}
+
+	/**
+	 *	moves the unused frames to the head of buf. if start passed the buffered frames
+	 *	(M larger than the taps), the frames between are skipped from the input.
+	 *	@return number of the input frames skipped.
+	 */
+	private int fill(int remain) {
+		if (start != 0) {
+			if (nBuf < start) {
+				skip += start - nBuf;
+				nBuf = 0;
+			} else {
+				System.arraycopy(buf, start * channels, buf, 0, (nBuf - start) * channels);
+				nBuf -= start;
+			}
+			start = 0;
+		}
+		int n = Math.min(skip, remain);
+		skip -= n;
+		return n;
+	}
+
+	/**
+	 *	@return number of the frames written to outF or outS.
+	 */
+	private int filter(float[] outF, short[] outS, int outIdx, int outFrames) {
+		int n = 0;
+		for ( ; n < outFrames && start + taps <= nBuf; n++) {
+			int t = phase * taps;
+			for (int c = 0; c < channels; c++) {
+				float acc = 0;
+				int b = start * channels + c;
+				for (int j = 0; j < taps; j++) {
+					acc += buf[b] * table[t + j];
+					b += channels;
+				}
+				if (outF != null) {
+					outF[outIdx++] = acc;
+				} else {
+					outS[outIdx++] = (short)(acc < Short.MIN_VALUE ? Short.MIN_VALUE : (Short.MAX_VALUE < acc ? Short.MAX_VALUE : Math.round(acc)));
+				}
+			}
+			phase += step;
+			start += phase / phases;
+			phase %= phases;
+		}
+		return n;
+	}
+
+	/**
+	 *	table[p * taps + j]: the weight of input frame (k - half + 1 + j) for the output
+	 *	at k + p / l. each phase is normalized to the gain 1.
+	 */
+	@NonNull
+	private static float[] createTable(int l, int taps, int half, double fc, double beta) {
+		float[] rc = new float[l * taps];
+		double i0beta = bessel0(beta);
+		for (int p = 0; p < l; p++) {
+			double sum = 0;
+			double[] h = new double[taps];
+			for (int j = 0; j < taps; j++) {
+				double x = j - half + 1 - (double)p / l;
+				double r = x / half;
+				double w = r * r < 1 ? bessel0(beta * Math.sqrt(1 - r * r)) / i0beta : 0;
+				double a = 2 * Math.PI * fc * x;
+				double sinc = x == 0 ? 1 : Math.sin(a) / a;
+				h[j] = 2 * fc * sinc * w;
+				sum += h[j];
+			}
+			for (int j = 0; j < taps; j++) {
+				rc[p * taps + j] = (float)(h[j] / sum);
+			}
+		}
+		return rc;
+	}
+
+	/**
+	 *	modified Bessel function of the first kind, order 0.
+	 */
+	private static double bessel0(double x) {
+		double sum = 1;
+		double term = 1;
+		double q = x * x / 4;
+		for (int k = 1; k < 50; k++) {
+			term *= q / ((double)k * k);
+			sum += term;
+			if (term < sum * 1e-12) {
+				break;
+			}
+		}
+		return sum;
+	}
+
+	private static int gcd(int a, int b) {
+		for ( ; b != 0; ) {
+			int t = a % b;
+			a = b;
+			b = t;
+		}
+		return a;
+	}
+
+}
@@ -25,7 +25,7 @@ public class ResamplerShort {
 
 	private boolean isRemain;
 	private float rv;
-	private float rx;		// usually minus or zero value.
+	private float rx;		// position from the next block. -1 <= rx, -1 is rv.
 
 	public ResamplerShort() {
 		init();
@@ -43,29 +43,46 @@ public class ResamplerShort {
 		@NonNull short[] out,
 		int outOffset
 	) {
-		int inMax = inOffset + inLength;
+		return resample(pitch, in, inOffset, inLength, out, outOffset, out.length - outOffset);
+	}
+
+	/**
+	 *	Linear interpolation. The position and the last sample are carried to the next block.
+	 *	If out is full, the rest of in is skipped. see PolyphaseResampler for the quality.
+	 */
+	public int resample(
+		float pitch,			// inHz / outHz
+		@NonNull short[] in,
+		int inOffset,
+		int inLength,
+		@NonNull short[] out,
+		int outOffset,
+		int outLength
+	) {
 		int idx = outOffset;
-		if (inLength != 0) {
-			float ix = inOffset + rx;
-			if (!isRemain) {
-				rx = 0;
+		int outMax = outOffset + outLength;
+		if (inLength != 0 && 0 < outLength) {
+			float ix;
+			if (isRemain) {
+				ix = rx;
+			} else {
+				ix = 0;
 				out[idx++] = in[inOffset];
 				ix += pitch;
 			}
-			for ( ; idx < out.length; idx++) {
-				int iix = (int)ix;
-				if (inMax <= iix + 1) {
+			for ( ; idx < outMax; idx++) {
+				int iix = (int)Math.floor(ix);
+				if (inLength <= iix + 1) {
 					break;
 				}
 				float fix = ix - iix;
-				float b = in[iix];
-				out[idx] = (short)(b + (in[iix + 1] - b) * fix);
+				float b = iix < 0 ? rv : in[inOffset + iix];
+				out[idx] = (short)(b + (in[inOffset + iix + 1] - b) * fix);
 				ix += pitch;
 			}
-			rx = ix - (inOffset + inLength);
+			rx = Math.max(ix - inLength, -1);
 			rv = in[inOffset + inLength - 1];
-//			isRemain = true;
-			isRemain = false;		// TODO
+			isRemain = true;
 		}
 		return idx - outOffset;
 	}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.task;
+
+import android.os.Process;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *	ThreadPoolExecutor with named threads, a thread priority and wait/run time histograms.
+ */
+public class LaneExecutor extends ThreadPoolExecutor {
+	private final TaskHistogram histWait, histRun;
+	private final String name;
+
+	public LaneExecutor(
+		@NonNull String name,
+		int corePoolSize,
+		int maximumPoolSize,
+		long keepAliveSec,
+		@NonNull BlockingQueue<Runnable> queue,
+		int priority
+	) {
+		super(corePoolSize, maximumPoolSize, keepAliveSec, TimeUnit.SECONDS, queue, new LaneThreadFactory(name, priority));
+		this.name = name;
+		histWait = new TaskHistogram();
+		histRun = new TaskHistogram();
+		if (corePoolSize != 0 && 0 < keepAliveSec) {
+			allowCoreThreadTimeOut(true);
+		}
+	}
+
+	@Override
+	public void execute(@NonNull Runnable command) {
+		super.execute(new TimedRunnable(command, System.nanoTime()));
+	}
+
+	@AnyThread
+	@NonNull
+	public String getName() {
+		return name;
+	}
+
+	@AnyThread
+	public int getQueueLength() {
+		return getQueue().size();
+	}
+
+	/**
+	 *	time from execute() to the start of run().
+	 */
+	@AnyThread
+	@NonNull
+	public TaskHistogram getWaitHistogram() {
+		return histWait;
+	}
+
+	@AnyThread
+	@NonNull
+	public TaskHistogram getRunHistogram() {
+		return histRun;
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "%s queue:%d active:%d pool:%d wait[%s] run[%s]",
+			name, getQueueLength(), getActiveCount(), getPoolSize(), histWait, histRun);
+	}
+
+	private class TimedRunnable implements Runnable {
+		private final Runnable command;
+		private final long queued;
+
+		private TimedRunnable(@NonNull Runnable command, long queued) {
+			this.command = command;
+			this.queued = queued;
+		}
+
+		@Override
+		public void run() {
+			long start = System.nanoTime();
+			histWait.addNanos(start - queued);
+			try {
+				command.run();
+			} finally {
+				histRun.addNanos(System.nanoTime() - start);
+			}
+		}
+	}
+
+	private static class LaneThreadFactory implements ThreadFactory {
+		private final AtomicInteger no;
+		private final String name;
+		private final int priority;
+
+		private LaneThreadFactory(@NonNull String name, int priority) {
+			this.name = name;
+			this.priority = priority;
+			no = new AtomicInteger();
+		}
+
+		@Override
+		public Thread newThread(@NonNull Runnable r) {
+			Thread thread = new Thread(() -> {
+				Process.setThreadPriority(priority);
+				r.run();
+			}, name + "-" + no.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.task;
+
+import android.os.ConditionVariable;
+import android.os.OperationCanceledException;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import app.misono.unit206.debug.Log2;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *	Runs callables one by one in call order. (same contract as SingletonTask)
+ *
+ *	Waiting callables stay in a lock-free queue instead of parking a thread each.
+ *	One thread is borrowed from the executor while the queue is not empty.
+ */
+public class SerialTask {
+	private static final String TAG = "SerialTask";
+
+	private final ConcurrentLinkedQueue<Job<?>> queue;
+	private final AtomicBoolean running;
+	private final AtomicInteger depth, maxDepth;
+	private final AtomicInteger noLatest;
+
+	public SerialTask() {
+		queue = new ConcurrentLinkedQueue<>();
+		running = new AtomicBoolean();
+		depth = new AtomicInteger();
+		maxDepth = new AtomicInteger();
+		noLatest = new AtomicInteger();
+	}
+
+	@AnyThread
+	@NonNull
+	public <T> Task<T> call(@NonNull Executor executor, @NonNull Callable<T> callable) {
+		return enqueue(new Job<>(executor, null, callable, 0));
+	}
+
+	/**
+	 *	The callable is skipped if cancel is requested before its turn, and interrupted if it is running.
+	 */
+	@AnyThread
+	@NonNull
+	public <T> Task<T> call(
+		@NonNull Executor executor,
+		@Nullable CancellationToken cancel,
+		@NonNull Callable<T> callable
+	) {
+		return enqueue(new Job<>(executor, cancel, callable, 0));
+	}
+
+	/**
+	 *	A waiting callLatest() is dropped with OperationCanceledException when a newer callLatest() comes.
+	 */
+	@AnyThread
+	@NonNull
+	public <T> Task<T> callLatest(@NonNull Executor executor, @NonNull Callable<T> callable) {
+		return enqueue(new Job<>(executor, null, callable, noLatest.incrementAndGet()));
+	}
+
+	/**
+	 *	The next callable waits until block is opened.
+	 */
+	@AnyThread
+	@NonNull
+	public Task<Void> call(@NonNull Executor executor, @NonNull ConditionRunnable runnable) {
+		return call(executor, () -> {
+			ConditionVariable block = new ConditionVariable();
+			runnable.run(block);
+			block.block();
+			return null;
+		});
+	}
+
+	@AnyThread
+	public int getWaitingCount() {
+		return depth.get();
+	}
+
+	@AnyThread
+	public int getMaxWaitingCount() {
+		return maxDepth.get();
+	}
+
+	@NonNull
+	private <T> Task<T> enqueue(@NonNull Job<T> job) {
+		int n = depth.incrementAndGet();
+		for ( ; ; ) {
+			int max = maxDepth.get();
+			if (n <= max || maxDepth.compareAndSet(max, n)) {
+				break;
+			}
+		}
+		queue.add(job);
+		if (running.compareAndSet(false, true)) {
+			start(job.executor);
+		}
+		return job.src.getTask();
+	}
+
+	private void start(@NonNull Executor executor) {
+		try {
+			executor.execute(() -> drain(executor));
+		} catch (RuntimeException e) {
+			// rejected. fail the head job and let the next one pick its own executor.
+			Job<?> job = queue.poll();
+			if (job != null) {
+				depth.decrementAndGet();
+				job.src.trySetException(e);
+			}
+			running.set(false);
+			Job<?> next = queue.peek();
+			if (next != null && running.compareAndSet(false, true)) {
+				start(next.executor);
+			}
+		}
+	}
+
+	@WorkerThread
+	private void drain(@NonNull Executor executor) {
+		for ( ; ; ) {
+			Job<?> job = queue.peek();
+			if (job == null) {
+				running.set(false);
+				if (queue.isEmpty() || !running.compareAndSet(false, true)) {
+					return;
+				}
+				continue;
+			}
+			if (job.executor != executor) {
+				// hand over to the executor the job asked for. running stays true.
+				start(job.executor);
+				return;
+			}
+			queue.poll();
+			depth.decrementAndGet();
+			job.run(noLatest.get());
+		}
+	}
+
+	private static class Job<T> {
+		private final TaskCompletionSource<T> src;
+		private final CancellationToken cancel;
+		private final Callable<T> callable;
+		private final Executor executor;
+		private final int noLatest;
+
+		// synchronized instance
+		private Thread thread;
+
+		private Job(
+			@NonNull Executor executor,
+			@Nullable CancellationToken cancel,
+			@NonNull Callable<T> callable,
+			int noLatest
+		) {
+			this.executor = executor;
+			this.cancel = cancel;
+			this.callable = callable;
+			this.noLatest = noLatest;
+			if (cancel != null) {
+				src = new TaskCompletionSource<>(cancel);
+				cancel.onCanceledRequested(this::interrupt);
+			} else {
+				src = new TaskCompletionSource<>();
+			}
+		}
+
+		private synchronized void interrupt() {
+			if (thread != null) {
+				thread.interrupt();
+			}
+		}
+
+		@WorkerThread
+		private void run(int noLatestNow) {
+			if (cancel != null && cancel.isCancellationRequested()) {
+				return;
+			}
+			if (noLatest != 0 && noLatest != noLatestNow) {
+				src.trySetException(new OperationCanceledException("not latest..."));
+				return;
+			}
+			synchronized (this) {
+				thread = Thread.currentThread();
+			}
+			try {
+				src.trySetResult(callable.call());
+			} catch (Exception e) {
+				// no effect if already canceled by the token.
+				src.trySetException(e);
+			} catch (Throwable e) {
+				src.trySetException(new RuntimeException(e));
+			} finally {
+				synchronized (this) {
+					thread = null;
+				}
+				// the borrowed thread goes on to the next job.
+				Thread.interrupted();
+			}
+		}
+	}
+
+	private void log(@NonNull String msg) {
+		Log2.e(TAG, msg);
+	}
+
+}
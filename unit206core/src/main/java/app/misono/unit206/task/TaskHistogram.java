@@ -0,0 +1,115 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.task;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *	Lock-free histogram of durations. Bucket i counts durations in [2^(i-1), 2^i) microseconds.
+ */
+public class TaskHistogram {
+	public static final int BUCKETS = 32;
+
+	private final AtomicLongArray buckets;
+	private final AtomicLong count, totalMicros, maxMicros;
+
+	public TaskHistogram() {
+		buckets = new AtomicLongArray(BUCKETS);
+		count = new AtomicLong();
+		totalMicros = new AtomicLong();
+		maxMicros = new AtomicLong();
+	}
+
+	@AnyThread
+	public void addNanos(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		int index = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(index);
+		count.incrementAndGet();
+		totalMicros.addAndGet(micros);
+		for ( ; ; ) {
+			long max = maxMicros.get();
+			if (micros <= max || maxMicros.compareAndSet(max, micros)) {
+				break;
+			}
+		}
+	}
+
+	@AnyThread
+	public long getCount() {
+		return count.get();
+	}
+
+	@AnyThread
+	public long getBucket(int index) {
+		return buckets.get(index);
+	}
+
+	@AnyThread
+	public long getAverageMicros() {
+		long n = count.get();
+		return n != 0 ? totalMicros.get() / n : 0;
+	}
+
+	@AnyThread
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	/**
+	 *	@return upper bound in microseconds of the bucket which contains the percentile. (0 - 100)
+	 */
+	@AnyThread
+	public long getPercentileMicros(int percent) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long target = (n * percent + 99) / 100;
+		long sum = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			sum += buckets.get(i);
+			if (target <= sum) {
+				return 1L << i;
+			}
+		}
+		return maxMicros.get();
+	}
+
+	@AnyThread
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		totalMicros.set(0);
+		maxMicros.set(0);
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return String.format(Locale.US, "n:%d avg:%dus p50:%dus p99:%dus max:%dus",
+			getCount(), getAverageMicros(), getPercentileMicros(50), getPercentileMicros(99), getMaxMicros());
+	}
+
+}
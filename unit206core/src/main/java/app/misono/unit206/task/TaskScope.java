@@ -0,0 +1,153 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.task;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+
+/**
+ *	Group of child tasks. The first failure cancels (interrupts) all of the other children.
+ *
+ *	<pre>
+ *	TaskScope scope = new TaskScope(Taskz.getExecutor(Taskz.LANE_IO));
+ *	Task&lt;byte[]&gt; a = scope.call(() -&gt; download(urlA));
+ *	Task&lt;byte[]&gt; b = scope.call(() -&gt; download(urlB));
+ *	scope.join().addOnSuccessListener(v -&gt; ...);
+ *	</pre>
+ */
+public class TaskScope {
+	private final CancellationTokenSource cancel;
+	private final TaskCompletionSource<Void> src;
+	private final Executor executor;
+
+	// synchronized instance
+	private Exception failure;
+	private boolean joined;
+	private int running;
+
+	public TaskScope(@NonNull Executor executor) {
+		this.executor = executor;
+		cancel = new CancellationTokenSource();
+		src = new TaskCompletionSource<>();
+	}
+
+	@AnyThread
+	@NonNull
+	public <T> Task<T> call(@NonNull Callable<T> callable) {
+		return call(executor, callable);
+	}
+
+	@AnyThread
+	@NonNull
+	public <T> Task<T> call(@NonNull Executor executor, @NonNull Callable<T> callable) {
+		synchronized (this) {
+			if (joined) {
+				return Tasks.forException(new IllegalStateException("already joined..."));
+			}
+			if (failure != null) {
+				return Tasks.forCanceled();
+			}
+			running++;
+		}
+		Task<T> task = Taskz.call(executor, cancel.getToken(), callable);
+		task.addOnCompleteListener(Runnable::run, t -> onDone(t.getException()));
+		return task;
+	}
+
+	/**
+	 *	Adds a task started outside of this scope. It isn't canceled by the scope.
+	 */
+	@AnyThread
+	@NonNull
+	public <T> Task<T> add(@NonNull Task<T> task) {
+		synchronized (this) {
+			running++;
+		}
+		task.addOnCompleteListener(Runnable::run, t -> onDone(t.getException()));
+		return task;
+	}
+
+	@AnyThread
+	@NonNull
+	public CancellationToken getToken() {
+		return cancel.getToken();
+	}
+
+	@AnyThread
+	public void cancel() {
+		cancel.cancel();
+	}
+
+	/**
+	 *	Closes the scope for new children.
+	 *
+	 *	@return completes when all of the children complete. fails with the first exception.
+	 */
+	@AnyThread
+	@NonNull
+	public Task<Void> join() {
+		synchronized (this) {
+			joined = true;
+		}
+		checkDone();
+		return src.getTask();
+	}
+
+	private void onDone(@Nullable Exception e) {
+		boolean first = false;
+		synchronized (this) {
+			running--;
+			if (e != null && failure == null) {
+				failure = e;
+				first = true;
+			}
+		}
+		if (first) {
+			cancel.cancel();
+		}
+		checkDone();
+	}
+
+	private void checkDone() {
+		Exception e;
+		synchronized (this) {
+			if (!joined || running != 0) {
+				return;
+			}
+			e = failure;
+		}
+		if (e != null) {
+			src.trySetException(e);
+		} else if (cancel.getToken().isCancellationRequested()) {
+			src.trySetException(new CancellationException());
+		} else {
+			src.trySetResult(null);
+		}
+	}
+
+}
@@ -16,6 +16,7 @@
 
 package app.misono.unit206.task;
 
+import android.os.Process;
 import android.view.View;
 
 import androidx.annotation.AnyThread;
@@ -26,19 +27,46 @@ import androidx.annotation.StringRes;
 import androidx.annotation.WorkerThread;
 
 import com.google.android.gms.tasks.CancellationToken;
+import com.google.android.gms.tasks.CancellationTokenSource;
+import com.google.android.gms.tasks.SuccessContinuation;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.TaskCompletionSource;
 import com.google.android.gms.tasks.TaskExecutors;
 import com.google.android.gms.tasks.Tasks;
 import com.google.android.material.snackbar.Snackbar;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class Taskz {
+	public static final int LANE_CPU = 0;		// decode, encode, calculation
+	public static final int LANE_IO = 1;		// file, network, database
+	public static final int LANE_SERIAL = 2;	// one by one. UI-adjacent short work
+
+	private static final int N_LANE = 3;
+	private static final int N_CPU = Math.max(2, Runtime.getRuntime().availableProcessors());
+	private static final int N_IO = Math.max(4, N_CPU);
+
+	private static final LaneExecutor[] lanes = new LaneExecutor[N_LANE];
+
+	private static final Executor DIRECT = Runnable::run;
+
 	private static Executor executor;
+	private static ScheduledExecutorService timer;
 
+	/**
+	 *	Unbounded. Tasks which block on other tasks have to stay here.
+	 */
 	@AnyThread
 	@NonNull
 	public static synchronized Executor getExecutor() {
@@ -48,6 +76,56 @@ public class Taskz {
 		return executor;
 	}
 
+	/**
+	 *	Bounded executor for the lane. The waiting tasks are queued instead of creating threads.
+	 */
+	@AnyThread
+	@NonNull
+	public static synchronized LaneExecutor getExecutor(int lane) {
+		LaneExecutor rc = lanes[lane];
+		if (rc == null) {
+			switch (lane) {
+			case LANE_CPU:
+				rc = new LaneExecutor("taskz-cpu", N_CPU, N_CPU, 30, new LinkedBlockingQueue<>(),
+					Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE);
+				break;
+			case LANE_IO:
+				rc = new LaneExecutor("taskz-io", N_IO, N_IO, 30, new LinkedBlockingQueue<>(),
+					Process.THREAD_PRIORITY_BACKGROUND);
+				break;
+			case LANE_SERIAL:
+				rc = new LaneExecutor("taskz-serial", 1, 1, 30, new LinkedBlockingQueue<>(),
+					Process.THREAD_PRIORITY_FOREGROUND);
+				break;
+			default:
+				throw new IllegalArgumentException("lane:" + lane);
+			}
+			lanes[lane] = rc;
+		}
+		return rc;
+	}
+
+	/**
+	 *	@return metrics of the lanes which have been used.
+	 */
+	@AnyThread
+	@NonNull
+	public static synchronized String dumpLanes() {
+		StringBuilder sb = new StringBuilder();
+		for (LaneExecutor lane : lanes) {
+			if (lane != null) {
+				sb.append(lane).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	@AnyThread
+	@NonNull
+	public static <T> Task<T> call(int lane, @NonNull Callable<T> callable) {
+		return call(getExecutor(lane), callable);
+	}
+
 	@AnyThread
 	@NonNull
 	public static <T> Task<T> call(@NonNull Executor executor, @NonNull Callable<T> callable) {
@@ -134,10 +212,11 @@ public class Taskz {
 		executor.execute(() -> {
 			refThread.set(Thread.currentThread());
 			try {
-				src.setResult(callable.call());
+				// try*: the token may have canceled src already.
+				src.trySetResult(callable.call());
 			} catch (Exception e) {
 				if (!(e instanceof InterruptedException)) {
-					src.setException(e);
+					src.trySetException(e);
 				}
 			}
 			refThread.set(null);
@@ -157,6 +236,215 @@ public class Taskz {
 		return task.getResult();
 	}
 
+	/**
+	 *	Runs next on executor with the result of task, without blocking any thread.
+	 */
+	@AnyThread
+	@NonNull
+	public static <T, R> Task<R> thenCompose(
+		@NonNull Task<T> task,
+		@NonNull Executor executor,
+		@NonNull SuccessContinuation<T, R> next
+	) {
+		return task.onSuccessTask(executor, next);
+	}
+
+	/**
+	 *	Runs all of callables on executor, at most maxParallel at a time.
+	 *	Fails with the first exception and doesn't start the rest.
+	 *
+	 *	@return results in the order of callables.
+	 */
+	@AnyThread
+	@NonNull
+	public static <T> Task<List<T>> allOf(
+		@NonNull Executor executor,
+		int maxParallel,
+		@NonNull List<? extends Callable<T>> callables
+	) {
+		return new FanOut<>(executor, maxParallel, callables, true).start();
+	}
+
+	/**
+	 *	Runs callables on executor, at most maxParallel at a time, until one of them succeeds.
+	 *	The running ones are interrupted when the result is decided. Fails with the last exception.
+	 */
+	@AnyThread
+	@NonNull
+	public static <T> Task<T> anyOf(
+		@NonNull Executor executor,
+		int maxParallel,
+		@NonNull List<? extends Callable<T>> callables
+	) {
+		FanOut<T> fan = new FanOut<>(executor, maxParallel, callables, false);
+		fan.start();
+		return fan.srcAny.getTask();
+	}
+
+	/**
+	 *	@return the result of task, or TimeoutException after msec.
+	 */
+	@AnyThread
+	@NonNull
+	public static <T> Task<T> withTimeout(@NonNull Task<T> task, long msec) {
+		return withTimeout(task, msec, null);
+	}
+
+	/**
+	 *	@param cancel canceled on timeout to stop the work behind task.
+	 */
+	@AnyThread
+	@NonNull
+	public static <T> Task<T> withTimeout(
+		@NonNull Task<T> task,
+		long msec,
+		@Nullable CancellationTokenSource cancel
+	) {
+		if (task.isComplete()) {
+			return task;
+		}
+		TaskCompletionSource<T> src = new TaskCompletionSource<>();
+		ScheduledFuture<?> timer = getTimer().schedule(() -> {
+			if (src.trySetException(new TimeoutException("timeout " + msec + "ms"))) {
+				if (cancel != null) {
+					cancel.cancel();
+				}
+			}
+		}, msec, TimeUnit.MILLISECONDS);
+		task.addOnCompleteListener(DIRECT, t -> {
+			timer.cancel(false);
+			complete(src, t);
+		});
+		return src.getTask();
+	}
+
+	/**
+	 *	@return completes after msec, on the timer thread. keep the listeners short.
+	 */
+	@AnyThread
+	@NonNull
+	public static Task<Void> delay(long msec) {
+		TaskCompletionSource<Void> src = new TaskCompletionSource<>();
+		getTimer().schedule(() -> src.trySetResult(null), msec, TimeUnit.MILLISECONDS);
+		return src.getTask();
+	}
+
+	@NonNull
+	private static synchronized ScheduledExecutorService getTimer() {
+		if (timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "taskz-timer");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return timer;
+	}
+
+	static <T> void complete(@NonNull TaskCompletionSource<T> src, @NonNull Task<T> task) {
+		if (task.isSuccessful()) {
+			src.trySetResult(task.getResult());
+		} else {
+			Exception e = task.getException();
+			src.trySetException(e != null ? e : new CancellationException());
+		}
+	}
+
+	private static class FanOut<T> {
+		private final TaskCompletionSource<List<T>> srcAll;
+		private final TaskCompletionSource<T> srcAny;
+		private final CancellationTokenSource cancel;
+		private final List<? extends Callable<T>> callables;
+		private final Executor executor;
+		private final Object[] results;
+		private final boolean all;
+		private final int maxParallel;
+
+		// synchronized instance
+		private int next, done;
+		private Exception last;
+
+		private FanOut(
+			@NonNull Executor executor,
+			int maxParallel,
+			@NonNull List<? extends Callable<T>> callables,
+			boolean all
+		) {
+			this.executor = executor;
+			this.maxParallel = Math.max(1, maxParallel);
+			this.callables = callables;
+			this.all = all;
+			results = new Object[callables.size()];
+			srcAll = new TaskCompletionSource<>();
+			srcAny = new TaskCompletionSource<>();
+			cancel = new CancellationTokenSource();
+		}
+
+		@NonNull
+		private Task<List<T>> start() {
+			if (callables.isEmpty()) {
+				if (all) {
+					srcAll.trySetResult(new ArrayList<>());
+				} else {
+					srcAny.trySetException(new NoSuchElementException("no callables..."));
+				}
+			} else {
+				for (int i = 0; i < maxParallel; i++) {
+					launchNext();
+				}
+			}
+			return srcAll.getTask();
+		}
+
+		private void launchNext() {
+			int index;
+			synchronized (this) {
+				if (callables.size() <= next || cancel.getToken().isCancellationRequested()) {
+					return;
+				}
+				index = next++;
+			}
+			call(executor, cancel.getToken(), callables.get(index))
+				.addOnCompleteListener(DIRECT, task -> onDone(index, task));
+		}
+
+		@SuppressWarnings("unchecked")
+		private void onDone(int index, @NonNull Task<T> task) {
+			boolean finished;
+			Exception e;
+			synchronized (this) {
+				done++;
+				if (task.isSuccessful()) {
+					results[index] = task.getResult();
+				} else if (task.getException() != null) {
+					last = task.getException();
+				}
+				finished = done == callables.size();
+				e = last;
+			}
+			if (all) {
+				if (e != null) {
+					cancel.cancel();
+					srcAll.trySetException(e);
+				} else if (finished) {
+					List<T> list = new ArrayList<>(results.length);
+					for (Object o : results) {
+						list.add((T)o);
+					}
+					srcAll.trySetResult(list);
+				}
+			} else {
+				if (task.isSuccessful()) {
+					cancel.cancel();
+					srcAny.trySetResult(task.getResult());
+				} else if (finished) {
+					srcAny.trySetException(e != null ? e : new CancellationException());
+				}
+			}
+			launchNext();
+		}
+	}
+
 	@AnyThread
 	public static boolean printStackTrace(@Nullable Throwable e) {
 		boolean rc = e != null;
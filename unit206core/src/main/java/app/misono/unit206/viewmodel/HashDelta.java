@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package app.misono.unit206.viewmodel;
+
+import androidx.annotation.NonNull;
+
+import app.misono.unit206.misc.PersistentLongMap;
+import app.misono.unit206.selection.LongId;
+
+/**
+ *	Changes of HashViewModel from getBaseVersion() to getVersion(), and the immutable
+ *	snapshot at getVersion().
+ *
+ *	LiveData may drop an event. If getBaseVersion() is not the version the consumer
+ *	has, or isReset(), rebuild from getSnapshot().
+ */
+public class HashDelta<I extends LongId> {
+	private final PersistentLongMap<I> snapshot;
+	private final long[] inserted, updated, removed;
+	private final long baseVersion, version;
+	private final boolean reset;
+
+	HashDelta(
+		long baseVersion,
+		long version,
+		boolean reset,
+		@NonNull long[] inserted,
+		@NonNull long[] updated,
+		@NonNull long[] removed,
+		@NonNull PersistentLongMap<I> snapshot
+	) {
+		this.baseVersion = baseVersion;
+		this.version = version;
+		this.reset = reset;
+		this.inserted = inserted;
+		this.updated = updated;
+		this.removed = removed;
+		this.snapshot = snapshot;
+	}
+
+	public long getBaseVersion() {
+		return baseVersion;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 *	@return true if the whole list was replaced. the id arrays are empty.
+	 */
+	public boolean isReset() {
+		return reset;
+	}
+
+	/**
+	 *	@return the ids not in the base version. don't modify.
+	 */
+	@NonNull
+	public long[] getInserted() {
+		return inserted;
+	}
+
+	/**
+	 *	@return the ids whose item instance was replaced. don't modify.
+	 */
+	@NonNull
+	public long[] getUpdated() {
+		return updated;
+	}
+
+	/**
+	 *	@return the ids not in this version. don't modify.
+	 */
+	@NonNull
+	public long[] getRemoved() {
+		return removed;
+	}
+
+	@NonNull
+	public PersistentLongMap<I> getSnapshot() {
+		return snapshot;
+	}
+
+	public int getChangeCount() {
+		return inserted.length + updated.length + removed.length;
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return "HashDelta:" + baseVersion + "->" + version + (reset ? " reset" : "")
+			+ " +" + inserted.length + " ~" + updated.length + " -" + removed.length
+			+ " size:" + snapshot.size();
+	}
+
+}
@@ -17,39 +17,95 @@
 package app.misono.unit206.viewmodel;
 
 import android.app.Application;
-import android.util.LongSparseArray;
 
 import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.WorkerThread;
 
 import app.misono.unit206.debug.Log2;
+import app.misono.unit206.misc.LongHashMap;
+import app.misono.unit206.misc.LongHashSet;
+import app.misono.unit206.misc.PersistentLongMap;
 import app.misono.unit206.selection.LongId;
-import app.misono.unit206.task.SingletonTask;
+import app.misono.unit206.task.SerialTask;
 import app.misono.unit206.task.Taskz;
 
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public abstract class HashViewModel<E, I extends LongId> extends PersistentViewModel<E> {
 	private static final String TAG = "HashViewModel";
 
-	private final SingletonTask task1;
+	/**
+	 *	createEvent() list order.
+	 */
+	public static final int ORDER_KEY = 0;			// ascending key. (same as LongSparseArray)
+	public static final int ORDER_INSERTION = 1;	// first put first. updates keep the position.
+	public static final int ORDER_NONE = 2;			// fastest. removals reorder the list.
+
+	/**
+	 *	msecDelta of the constructor. createEvent(list) on every change.
+	 */
+	public static final long DELTA_OFF = -1;
+
+	private static final long[] NO_IDS = new long[0];
+	private static final Object[] NO_ITEMS = new Object[0];
+
+	private final SerialTask task1;
+	private final long msecDelta;
+	private final int order;
+
+	private volatile HashDelta<I> published;
 
 	// task1 instance
-	private final LongSparseArray<I> hash;
+	private final LongHashMap<I> hash;
+	private final LongHashSet touched;
+	private final LongHashSet added;		// ORDER_KEY. new keys, not in sorted.
+	private PersistentLongMap<I> snapshot;
+	private boolean reset, scheduled;
+	private boolean sortAll;
+	private long[] sorted;					// ORDER_KEY. ascending keys.
+	private Object[] sortedItems;			// ORDER_KEY. item of sorted[i]. null if removed.
+	private int sortedCount;
+	private long version;
 
 	@WorkerThread
 	@NonNull
 	public abstract E createEvent(@NonNull List<I> list);
 
 	public HashViewModel(@NonNull Application app, boolean enablePostReady) {
+		this(app, enablePostReady, ORDER_KEY);
+	}
+
+	/**
+	 *	@param order ORDER_KEY, ORDER_INSERTION or ORDER_NONE.
+	 */
+	public HashViewModel(@NonNull Application app, boolean enablePostReady, int order) {
+		this(app, enablePostReady, order, DELTA_OFF);
+	}
+
+	/**
+	 *	Delta mode if 0 <= msecDelta. The changes within msecDelta are coalesced into one
+	 *	HashDelta, and createEvent(delta) is invoked instead of createEvent(list).
+	 *
+	 *	@param msecDelta DELTA_OFF, 0 (no coalescing) or the window.
+	 */
+	public HashViewModel(@NonNull Application app, boolean enablePostReady, int order, long msecDelta) {
 		super(app, enablePostReady);
-		hash = new LongSparseArray<>();
-		task1 = new SingletonTask();
+		this.order = order;
+		this.msecDelta = msecDelta;
+		hash = new LongHashMap<>(0, order == ORDER_INSERTION);
+		touched = new LongHashSet();
+		added = new LongHashSet();
+		sorted = NO_IDS;
+		sortedItems = NO_ITEMS;
+		snapshot = PersistentLongMap.empty();
+		published = new HashDelta<>(0, 0, true, NO_IDS, NO_IDS, NO_IDS, snapshot);
+		task1 = new SerialTask();
 	}
 
 	public HashViewModel(@NonNull Application app) {
@@ -60,8 +116,8 @@ public abstract class HashViewModel<E, I extends LongId> extends PersistentViewM
 	@NonNull
 	protected Task<Void> putItem(@NonNull I item) {
 		return task1.call(Taskz.getExecutor(), () -> {
-			hash.put(item.getLongId(), item);
-			postValue();
+			put(item);
+			changed();
 			return null;
 		});
 	}
@@ -76,9 +132,9 @@ public abstract class HashViewModel<E, I extends LongId> extends PersistentViewM
 	public Task<Void> putList(@NonNull List<I> list) {
 		return task1.call(Taskz.getExecutor(), () -> {
 			for (I item : list) {
-				hash.put(item.getLongId(), item);
+				put(item);
 			}
-			postValue();
+			changed();
 			return null;
 		});
 	}
@@ -92,8 +148,8 @@ public abstract class HashViewModel<E, I extends LongId> extends PersistentViewM
 	@NonNull
 	protected Task<Void> removeItem(@NonNull I item) {
 		return task1.call(Taskz.getExecutor(), () -> {
-			hash.delete(item.getLongId());
-			postValue();
+			remove(item.getLongId());
+			changed();
 			return null;
 		});
 	}
@@ -108,9 +164,9 @@ public abstract class HashViewModel<E, I extends LongId> extends PersistentViewM
 	public Task<Void> removeList(@NonNull List<I> list) {
 		return task1.call(Taskz.getExecutor(), () -> {
 			for (I item : list) {
-				hash.delete(item.getLongId());
+				remove(item.getLongId());
 			}
-			postValue();
+			changed();
 			return null;
 		});
 	}
@@ -125,10 +181,16 @@ public abstract class HashViewModel<E, I extends LongId> extends PersistentViewM
 	public Task<Void> newList(@NonNull List<I> list) {
 		return task1.call(Taskz.getExecutor(), () -> {
 			hash.clear();
+			invalidateSorted();
+			if (isDeltaMode()) {
+				snapshot = PersistentLongMap.empty();
+				touched.clear();
+				reset = true;
+			}
 			for (I item : list) {
-				hash.put(item.getLongId(), item);
+				put(item);
 			}
-			postValue();
+			changed();
 			return null;
 		});
 	}
@@ -138,15 +200,211 @@ public abstract class HashViewModel<E, I extends LongId> extends PersistentViewM
 		Tasks.await(newList(list));
 	}
 
+	/**
+	 *	Delta mode. The default creates the whole list as the list mode does.
+	 *	Override to apply only the changes.
+	 */
+	@WorkerThread
+	@NonNull
+	protected E createEvent(@NonNull HashDelta<I> delta) {
+		return createEvent(createList());
+	}
+
+	/**
+	 *	@return the latest published delta. its snapshot can be read without copying.
+	 *		empty in the list mode.
+	 */
+	@AnyThread
+	@NonNull
+	public HashDelta<I> getPublishedDelta() {
+		return published;
+	}
+
+	public boolean isDeltaMode() {
+		return 0 <= msecDelta;
+	}
+
+	// task1 method
+	private void put(@NonNull I item) {
+		long id = item.getLongId();
+		boolean isNew = hash.put(id, item) == null;
+		if (order == ORDER_KEY && !sortAll) {
+			int i = Arrays.binarySearch(sorted, 0, sortedCount, id);
+			if (0 <= i) {
+				sortedItems[i] = item;
+			} else if (isNew) {
+				if (hash.size() < added.size()) {
+					invalidateSorted();		// createList() may not be called in the delta mode.
+				} else {
+					added.add(id);
+				}
+			}
+		}
+		if (isDeltaMode()) {
+			snapshot = snapshot.put(id, item);
+			touched.add(id);
+		}
+	}
+
+	// task1 method
+	private void remove(long id) {
+		if (hash.remove(id) != null && order == ORDER_KEY && !sortAll) {
+			int i = Arrays.binarySearch(sorted, 0, sortedCount, id);
+			if (0 <= i) {
+				sortedItems[i] = null;
+			}
+		}
+		if (isDeltaMode()) {
+			snapshot = snapshot.remove(id);
+			touched.add(id);
+		}
+	}
+
+	// task1 method
+	private void changed() {
+		if (!isDeltaMode()) {
+			postEvent(createEvent(createList()));
+		} else if (msecDelta == 0) {
+			flush();
+		} else if (!scheduled) {
+			scheduled = true;
+			Taskz.delay(msecDelta).addOnCompleteListener(Runnable::run, t -> {
+				task1.call(Taskz.getExecutor(), () -> {
+					scheduled = false;
+					flush();
+					return null;
+				}).addOnFailureListener(Taskz::printStackTrace2);
+			});
+		}
+	}
+
+	// task1 method
+	private void flush() {
+		if (!reset && touched.isEmpty()) {
+			return;
+		}
+		HashDelta<I> base = published;
+		PersistentLongMap<I> old = base.getSnapshot();
+		long[] inserted = NO_IDS;
+		long[] updated = NO_IDS;
+		long[] removed = NO_IDS;
+		if (!reset) {
+			LongHashSet ins = new LongHashSet();
+			LongHashSet upd = new LongHashSet();
+			LongHashSet rem = new LongHashSet();
+			int n = touched.size();
+			for (int i = 0; i < n; i++) {
+				long id = touched.keyAt(i);
+				I before = old.get(id);
+				I after = snapshot.get(id);
+				if (before == null) {
+					if (after != null) {
+						ins.add(id);
+					}
+				} else if (after == null) {
+					rem.add(id);
+				} else if (before != after) {
+					upd.add(id);
+				}
+			}
+			if (ins.isEmpty() && upd.isEmpty() && rem.isEmpty()) {
+				touched.clear();
+				return;
+			}
+			inserted = ins.toArray();
+			updated = upd.toArray();
+			removed = rem.toArray();
+		}
+		version++;
+		HashDelta<I> delta = new HashDelta<>(
+			base.getVersion(),
+			version,
+			reset,
+			inserted,
+			updated,
+			removed,
+			snapshot
+		);
+		touched.clear();
+		reset = false;
+		published = delta;
+		postEvent(createEvent(delta));
+	}
+
+	/**
+	 *	ORDER_KEY keeps the ascending keys and their items, so an update is a binary search,
+	 *	and only the new keys are sorted. O(n + k log k) instead of sorting the whole list.
+	 */
 	// task1 method
-	private void postValue() {
-		List<I> list = new ArrayList<>();
-		int n = hash.size();
-		for (int i = 0; i < n; i++) {
-			I item = hash.valueAt(i);
-			list.add(item);
+	@NonNull
+	@SuppressWarnings("unchecked")
+	private List<I> createList() {
+		List<I> list = new ArrayList<>(hash.size());
+		if (order != ORDER_KEY) {
+			hash.values(list);
+			return list;
+		}
+		if (sortAll) {
+			sorted = hash.keys();
+			sortedCount = sorted.length;
+			Arrays.sort(sorted);
+			sortedItems = new Object[sortedCount];
+			for (int i = 0; i < sortedCount; i++) {
+				sortedItems[i] = hash.get(sorted[i]);
+			}
+			sortAll = false;
+		} else if (!added.isEmpty()) {
+			mergeAdded();
+		}
+		int n = 0;
+		for (int i = 0; i < sortedCount; i++) {
+			Object item = sortedItems[i];
+			if (item != null) {
+				sorted[n] = sorted[i];
+				sortedItems[n++] = item;
+				list.add((I)item);
+			}
+		}
+		Arrays.fill(sortedItems, n, sortedCount, null);
+		sortedCount = n;
+		return list;
+	}
+
+	/**
+	 *	merges the sorted new keys from the tail, in place. added and sorted have no common key.
+	 */
+	// task1 method
+	private void mergeAdded() {
+		long[] keys = added.toArray();
+		Arrays.sort(keys);
+		int size = sortedCount + keys.length;
+		if (sorted.length < size) {
+			int capacity = Math.max(size, sorted.length + (sorted.length >> 1));
+			sorted = Arrays.copyOf(sorted, capacity);
+			sortedItems = Arrays.copyOf(sortedItems, capacity);
+		}
+		int i = sortedCount - 1;
+		int j = keys.length - 1;
+		for (int w = size - 1; 0 <= j; w--) {
+			if (0 <= i && keys[j] < sorted[i]) {
+				sorted[w] = sorted[i];
+				sortedItems[w] = sortedItems[i--];
+			} else {
+				sorted[w] = keys[j];
+				sortedItems[w] = hash.get(keys[j--]);
+			}
 		}
-		postEvent(createEvent(list));
+		sortedCount = size;
+		added.clear();
+	}
+
+	// task1 method
+	private void invalidateSorted() {
+		sortAll = true;
+		sorted = NO_IDS;
+		sortedItems = NO_ITEMS;
+		sortedCount = 0;
+		added.clear();
 	}
 
 	private void log(@NonNull String msg) {
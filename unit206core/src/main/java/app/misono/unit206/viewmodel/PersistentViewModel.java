@@ -17,7 +17,12 @@
 package app.misono.unit206.viewmodel;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.WorkerThread;
@@ -27,7 +32,7 @@ import androidx.lifecycle.Observer;
 
 import app.misono.unit206.debug.Log2;
 import app.misono.unit206.misc.ThreadGate;
-import app.misono.unit206.task.SingletonTask;
+import app.misono.unit206.task.SerialTask;
 import app.misono.unit206.task.Taskz;
 
 import com.google.android.gms.tasks.Task;
@@ -40,24 +45,38 @@ import java.util.Set;
 public class PersistentViewModel<E> extends AndroidViewModel implements Closeable {
 	private static final String TAG = "PersistentViewModel";
 
+	/**
+	 *	setCoalesceInterval() values.
+	 */
+	public static final long COALESCE_OFF = -1;		// every postEvent() is dispatched.
+	public static final long COALESCE_FRAME = 0;		// the latest one per display frame.
+
 	private final MutableLiveData<E> liveData;
-	private final SingletonTask task1;
+	private final SerialTask task1;
 	private final ThreadGate gate;
 	private final boolean enablePostReady;
 
 	private Observer<E> observer;
+	private Handler handler;
 
 	// task1 instance
 	private final Set<Observer<E>> observers;
 	private final Set<Observer<E>> notReady;
 	private E latest;
 
+	// synchronized instance
+	private long msecCoalesce = COALESCE_OFF;
+	private long nPosted, nCoalesced, nDropped;
+	private long msecDelivered;
+	private boolean scheduled;
+	private E pending;
+
 	@MainThread
 	public PersistentViewModel(@NonNull Application app, boolean enablePostReady) {
 		super(app);
 		this.enablePostReady = enablePostReady;
 		if (enablePostReady) {
-			task1 = new SingletonTask();
+			task1 = new SerialTask();
 			observers = new HashSet<>();
 			notReady = new HashSet<>();
 		} else {
@@ -101,22 +120,115 @@ public class PersistentViewModel<E> extends AndroidViewModel implements Closeabl
 		}
 	}
 
+	/**
+	 *	Coalesces postEvent(): only the latest event is kept, and it's dispatched at most
+	 *	once per msec (or per display frame with COALESCE_FRAME). The setPostReady()
+	 *	contract is kept, the coalesced event goes through it.
+	 *
+	 *	@param msec COALESCE_OFF, COALESCE_FRAME or the interval.
+	 */
+	@AnyThread
+	protected void setCoalesceInterval(long msec) {
+		synchronized (this) {
+			msecCoalesce = msec;
+			if (handler == null) {
+				handler = new Handler(Looper.getMainLooper());
+			}
+		}
+	}
+
+	@AnyThread
 	protected void postEvent(@NonNull E event) {
+		long msec;
+		synchronized (this) {
+			nPosted++;
+			msec = msecCoalesce;
+			if (0 <= msec) {
+				if (pending != null) {
+					nCoalesced++;
+				}
+				pending = event;
+				if (scheduled) {
+					return;
+				}
+				scheduled = true;
+			}
+		}
+		if (msec < 0) {
+			dispatch(event, false);
+		} else if (msec == COALESCE_FRAME) {
+			handler.post(() -> Choreographer.getInstance().postFrameCallback(time -> deliver()));
+		} else {
+			long delay;
+			synchronized (this) {
+				delay = msecDelivered + msec - SystemClock.uptimeMillis();
+			}
+			handler.postDelayed(this::deliver, Math.max(0, delay));
+		}
+	}
+
+	@MainThread
+	private void deliver() {
+		E event;
+		synchronized (this) {
+			event = pending;
+			pending = null;
+			scheduled = false;
+			msecDelivered = SystemClock.uptimeMillis();
+		}
+		if (event != null) {
+			dispatch(event, true);
+		}
+	}
+
+	@AnyThread
+	private void dispatch(@NonNull E event, boolean mainThread) {
 		if (enablePostReady) {
 			task1.call(Taskz.getExecutor(), () -> {
 				if (notReady.isEmpty()) {
 					liveData.postValue(event);
 					notReady.addAll(observers);
 				} else {
+					if (latest != null) {
+						synchronized (this) {
+							nDropped++;
+						}
+					}
 					latest = event;
 				}
 				return null;
 			}).addOnFailureListener(Taskz::printStackTrace2);
+		} else if (mainThread) {
+			liveData.setValue(event);
 		} else {
 			liveData.postValue(event);
 		}
 	}
 
+	/**
+	 *	@return the number of postEvent().
+	 */
+	@AnyThread
+	public synchronized long getPostedCount() {
+		return nPosted;
+	}
+
+	/**
+	 *	@return the number of events replaced by a newer one before the dispatch.
+	 */
+	@AnyThread
+	public synchronized long getCoalescedCount() {
+		return nCoalesced;
+	}
+
+	/**
+	 *	@return the number of events replaced by a newer one while waiting for setPostReady().
+	 */
+	@AnyThread
+	public synchronized long getDroppedCount() {
+		return nDropped;
+	}
+
 	@NonNull
 	public E getEvent() {
 		E rc = liveData.getValue();
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package app.misono.unit206.hierarchy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+@SuppressWarnings("deprecation")
+public class HierarchyIndexTest {
+
+	@Test
+	public void rejectsCycleOfNewItem() {
+		HierarchyIndex<Item> index = new HierarchyIndex<>();
+		index.addItem(new Item(1, 2));
+		assertThrows(IllegalArgumentException.class, () -> index.addItem(new Item(2, 1)));
+		assertEquals(1, index.size());
+		assertEquals(1, index.getItemAt(0).getHash());
+		assertEquals(0, index.getNest(1));
+	}
+
+	@Test
+	public void rejectsCycleOfWaitingSubtree() {
+		HierarchyIndex<Item> index = new HierarchyIndex<>();
+		index.addItem(new Item(1, 3));
+		index.addItem(new Item(2, 1));
+		assertThrows(IllegalArgumentException.class, () -> index.addItem(new Item(3, 2)));
+		assertEquals(2, index.size());
+		assertEquals(1, index.getNest(2));
+	}
+
+	@Test
+	public void rejectsCycleOfUpdate() {
+		HierarchyIndex<Item> index = new HierarchyIndex<>();
+		index.addItem(new Item(0, -1));
+		index.addItem(new Item(1, 0));
+		index.addItem(new Item(2, 1));
+		Item old = index.getItem(0);
+		assertThrows(IllegalArgumentException.class, () -> index.updateItem(new Item(0, 2)));
+		assertEquals(old, index.getItem(0));
+		List<Item> rows = new ArrayList<>();
+		index.getVisibleItems(new HashSet<>(), rows);
+		assertEquals(3, rows.size());
+		assertEquals(2, index.getNest(2));
+	}
+
+	@Test(timeout = 1000)
+	public void rejectsSelfParent() {
+		HierarchyIndex<Item> index = new HierarchyIndex<>();
+		assertThrows(IllegalArgumentException.class, () -> index.addItem(new Item(5, 5)));
+		assertEquals(0, index.size());
+		index.addItem(new Item(5, -1));
+		assertThrows(IllegalArgumentException.class, () -> index.updateItem(new Item(5, 5)));
+		assertEquals(-1, index.getItem(5).getParentHash());
+	}
+
+	@Test
+	public void movesSubtree() {
+		HierarchyIndex<Item> index = new HierarchyIndex<>();
+		index.addItem(new Item(0, -1));
+		index.addItem(new Item(1, -1));
+		index.addItem(new Item(2, 0));
+		index.addItem(new Item(3, 2));
+		index.updateItem(new Item(2, 1));
+		assertEquals(2, index.getNest(3));
+		assertEquals(3, index.getSubtreeSize(1));
+		assertEquals(2, index.indexOf(2));
+	}
+
+	private static class Item extends HierarchyMutableItem {
+		private final int parent;
+
+		private Item(int hash, int parent) {
+			setHash(hash);
+			this.parent = parent;
+		}
+
+		@Override
+		public int getParentHash() {
+			return parent;
+		}
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package app.misono.unit206.misc;
+
+import static org.junit.Assert.assertEquals;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class RewindableStreamTest {
+	private static final int LIMIT = 1024;
+
+	@Test
+	public void boundsThenPixels() throws IOException {
+		byte[] data = createData(4000);
+		try (RewindableStream stream = new RewindableStream(() -> new ByteArrayInputStream(data), LIMIT)) {
+			readAndCheck(stream.head(), data, 100);		// bounds decode
+			readAndCheck(stream.head(), data, data.length);		// pixel decode
+			assertEquals(1, stream.getOpenCount());
+		}
+	}
+
+	/**
+	 *	the pixel decode threw on the way (OOM or a rejected inBitmap), and is retried.
+	 */
+	@Test
+	public void retryAfterPartialRead() throws IOException {
+		byte[] data = createData(300 * 1024);
+		try (RewindableStream stream = new RewindableStream(() -> new ByteArrayInputStream(data), LIMIT)) {
+			readAndCheck(stream.head(), data, 100);
+			readAndCheck(stream.head(), data, 500);		// within the mark.
+			assertEquals(1, stream.getOpenCount());
+			readAndCheck(stream.head(), data, 200 * 1024);		// over the mark.
+			readAndCheck(stream.head(), data, data.length);		// opened again.
+			assertEquals(2, stream.getOpenCount());
+			readAndCheck(stream.head(), data, data.length);
+			assertEquals(3, stream.getOpenCount());
+		}
+	}
+
+	@NonNull
+	private static byte[] createData(int size) {
+		byte[] rc = new byte[size];
+		for (int i = 0; i < size; i++) {
+			rc[i] = (byte)(i * 31 + (i >> 8));
+		}
+		return rc;
+	}
+
+	private static void readAndCheck(@NonNull InputStream is, @NonNull byte[] data, int len) throws IOException {
+		for (int i = 0; i < len; i++) {
+			assertEquals(data[i], (byte)is.read());
+		}
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package app.misono.unit206.misc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+public class ZipFormatTest {
+
+	@Test
+	public void readsEntries() throws IOException {
+		List<ZipFormat.CentralEntry> list = read(createZip());
+		assertEquals(2, list.size());
+	}
+
+	@Test
+	public void nameOverCentralDirectory() throws IOException {
+		byte[] zip = createZip();
+		ByteBuffer buf = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+		int pos = findCentral(zip);
+		buf.putShort(pos + 28, (short)0xFFFF);		// lenName
+		assertThrows(ZipException.class, () -> read(zip));
+	}
+
+	@Test
+	public void zip64FieldOverExtra() throws IOException {
+		byte[] zip = createZip();
+		ByteBuffer buf = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+		int pos = findCentral(zip);
+		int lenName = buf.getShort(pos + 28) & 0xFFFF;
+		assertEquals(8, buf.getShort(pos + 30) & 0xFFFF);
+		buf.putInt(pos + 24, -1);		// size in the ZIP64 extra field.
+		buf.putShort(pos + 46 + lenName, (short)0x0001);
+		buf.putShort(pos + 46 + lenName + 2, (short)4);		// shorter than the value.
+		assertThrows(ZipException.class, () -> read(zip));
+	}
+
+	@Test
+	public void javaTime() {
+		long time = ZipFormat.toJavaTime(ZipFormat.toDosTime(1700000000000L));
+		assertEquals(1700000000000L, time);
+		assertEquals(0, ZipFormat.toJavaTime(0));
+		assertEquals(0, ZipFormat.toJavaTime(0x00200000));		// month 1, day 0
+		assertEquals(0, ZipFormat.toJavaTime(0x01a00000 | (1 << 16)));		// month 13
+		assertEquals(0, ZipFormat.toJavaTime(0x00210000 | (24 << 11)));		// hour 24
+		assertEquals(0, ZipFormat.toJavaTime(0x005e0000));		// Feb 30
+	}
+
+	@NonNull
+	private static byte[] createZip() throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try (ZipOutputStream zos = new ZipOutputStream(os)) {
+			for (int i = 0; i < 2; i++) {
+				ZipEntry entry = new ZipEntry("file" + i + ".txt");
+				entry.setExtra(new byte[] { (byte)0xCA, (byte)0xFE, 4, 0, 0, 0, 0, 0 });
+				zos.putNextEntry(entry);
+				zos.write(("hello " + i).getBytes());
+				zos.closeEntry();
+			}
+		}
+		return os.toByteArray();
+	}
+
+	private static int findCentral(@NonNull byte[] zip) {
+		ByteBuffer buf = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+		for (int i = 0; i + 4 <= zip.length; i++) {
+			if (buf.getInt(i) == ZipFormat.SIG_CENTRAL) {
+				return i;
+			}
+		}
+		throw new AssertionError("no central directory");
+	}
+
+	@NonNull
+	private static List<ZipFormat.CentralEntry> read(@NonNull byte[] zip) throws IOException {
+		File file = File.createTempFile("zipformat", ".zip");
+		try {
+			try (FileOutputStream os = new FileOutputStream(file)) {
+				os.write(zip);
+			}
+			try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+				return ZipFormat.readCentralDirectory(raf.getChannel());
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+}
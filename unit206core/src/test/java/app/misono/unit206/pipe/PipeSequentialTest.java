@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package app.misono.unit206.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class PipeSequentialTest {
+
+	@Test(timeout = 5000)
+	public void windowReorders() throws Exception {
+		List<Integer> out = new ArrayList<>();
+		PipeSequential<Cart> seq = new PipeSequential<>(4, true, cart -> out.add(cart.getNo()));
+		int[] order = { 2, 1, 3, 0, 5, 4, 6 };
+		for (int no : order) {
+			seq.cartReady(new Cart(no));
+		}
+		assertEquals(order.length, out.size());
+		for (int i = 0; i < order.length; i++) {
+			assertEquals(i, (int)out.get(i));
+		}
+		assertEquals(3, seq.getMaxDistance());
+	}
+
+	@Test(timeout = 5000)
+	public void closeWakesBlockedCaller() throws Exception {
+		PipeSequential<Cart> seq = new PipeSequential<>(2, true, cart -> { });
+		AtomicReference<Exception> result = new AtomicReference<>();
+		Thread thread = new Thread(() -> {
+			try {
+				seq.cartReady(new Cart(10));
+			} catch (Exception e) {
+				result.set(e);
+			}
+		});
+		thread.start();
+		while (seq.getStallCount() == 0) {
+			Thread.sleep(10);
+		}
+		seq.close();
+		thread.join();
+		assertTrue(result.get() instanceof InterruptedException);
+	}
+
+	private static class Cart implements PipeCart {
+		private final int no;
+
+		private Cart(int no) {
+			this.no = no;
+		}
+
+		@Override
+		public int getNo() {
+			return no;
+		}
+	}
+
+}
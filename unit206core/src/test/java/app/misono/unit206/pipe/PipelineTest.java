@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package app.misono.unit206.pipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PipelineTest {
+	private static final int CARTS = 500;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() {
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 *	one slow cart lets the others pass it on the parallel stage.
+	 */
+	@Test(timeout = 10000)
+	public void slowCartParallelSequential() throws Exception {
+		run(Pipeline.<Cart>of(this::slowFirst, 4)
+			.thenSequential(cart -> cart.value++), 2);
+	}
+
+	@Test(timeout = 10000)
+	public void slowCartParallelMiddleSequential() throws Exception {
+		run(Pipeline.<Cart>of(this::slowFirst, 4)
+			.then(cart -> cart.value++)
+			.thenSequential(cart -> cart.value++), 3);
+	}
+
+	@Test(timeout = 10000)
+	public void slowCartSequentialInTheMiddle() throws Exception {
+		run(Pipeline.<Cart>of(this::slowFirst, 4)
+			.thenSequential(cart -> cart.value++)
+			.then(cart -> cart.value++, 3)
+			.thenSequential(cart -> cart.value++), 4);
+	}
+
+	private void slowFirst(@NonNull Cart cart) throws InterruptedException {
+		if (cart.no == 0) {
+			Thread.sleep(300);
+		}
+		cart.value++;
+	}
+
+	private void run(@NonNull Pipeline.Builder<Cart> builder, int stages) throws Exception {
+		List<Integer> out = Collections.synchronizedList(new ArrayList<>());
+		try (Pipeline<Cart> pipe = builder.build(executor, cart -> {
+			out.add(cart.value == stages ? cart.no : -1);
+		})) {
+			for (int i = 0; i < CARTS; i++) {
+				pipe.inputSync(new Cart(pipe.getNewNo()));
+			}
+			pipe.waitDone();
+		}
+		assertEquals(CARTS, out.size());
+		for (int i = 0; i < CARTS; i++) {
+			assertEquals(i, (int)out.get(i));
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+	private static class Cart implements PipeCart {
+		private final int no;
+
+		private int value;
+
+		private Cart(int no) {
+			this.no = no;
+		}
+
+		@Override
+		public int getNo() {
+			return no;
+		}
+	}
+
+}
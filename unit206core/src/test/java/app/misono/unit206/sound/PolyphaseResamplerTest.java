@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 Atelier Misono, Inc. @ https://misono.app/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package app.misono.unit206.sound;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PolyphaseResamplerTest {
+	private static final int[][] RATES = {
+		{ 48000, 16000 },
+		{ 16000, 48000 },
+		{ 44100, 48000 },
+		{ 48000, 44100 },
+		{ 48000, 1000 },		// M larger than the taps.
+		{ 48000, 700 },
+		{ 8000, 44100 },
+	};
+
+	@Test
+	public void streamingEqualsOneShot() {
+		Random random = new Random(1);
+		for (int[] rate : RATES) {
+			for (int channels = 1; channels <= 2; channels++) {
+				for (int quality = PolyphaseResampler.QUALITY_LOW; quality <= PolyphaseResampler.QUALITY_HIGH; quality++) {
+					float[] in = createInput(random, rate[0] / 2, channels);
+					float[] expected = oneShot(new PolyphaseResampler(rate[0], rate[1], channels, quality), in);
+					for (int k = 0; k < 3; k++) {
+						PolyphaseResampler r = new PolyphaseResampler(rate[0], rate[1], channels, quality);
+						float[] actual = streaming(r, in, random);
+						assertArrayEquals(rate[0] + "->" + rate[1] + " ch:" + channels + " q:" + quality, expected, actual, 0);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void shortMatchesFloat() {
+		Random random = new Random(2);
+		PolyphaseResampler rf = new PolyphaseResampler(48000, 1000, 2, PolyphaseResampler.QUALITY_MEDIUM);
+		PolyphaseResampler rs = new PolyphaseResampler(48000, 1000, 2, PolyphaseResampler.QUALITY_MEDIUM);
+		float[] in = createInput(random, 24000, 2);
+		short[] inS = new short[in.length];
+		for (int i = 0; i < in.length; i++) {
+			inS[i] = (short)in[i];
+			in[i] = inS[i];
+		}
+		float[] outF = new float[rf.getMaxOutputFrames(24000) * 2];
+		short[] outS = new short[outF.length];
+		int n = rf.resample(in, 0, 24000, outF, 0, outF.length / 2);
+		assertEquals(n, rs.resample(inS, 0, 24000, outS, 0, outS.length / 2));
+		for (int i = 0; i < n * 2; i++) {
+			assertEquals(outF[i], outS[i], 0.5f);
+		}
+	}
+
+	@NonNull
+	private static float[] createInput(@NonNull Random random, int frames, int channels) {
+		float[] rc = new float[frames * channels];
+		for (int i = 0; i < rc.length; i++) {
+			rc[i] = (float)(10000 * Math.sin(i * 0.01) + 1000 * random.nextGaussian());
+		}
+		return rc;
+	}
+
+	@NonNull
+	private static float[] oneShot(@NonNull PolyphaseResampler r, @NonNull float[] in) {
+		int channels = r.getChannels();
+		int frames = in.length / channels;
+		float[] out = new float[r.getMaxOutputFrames(frames) * channels];
+		int n = r.resample(in, 0, frames, out, 0, out.length / channels);
+		assertEquals(frames, r.getConsumedFrames());
+		n += r.resample(in, 0, 0, out, n * channels, out.length / channels - n);
+		assertEquals(0, r.resample(in, 0, 0, out, n * channels, out.length / channels - n));
+		return Arrays.copyOf(out, n * channels);
+	}
+
+	/**
+	 *	random blocks, and random output capacities which may be too short.
+	 */
+	@NonNull
+	private static float[] streaming(@NonNull PolyphaseResampler r, @NonNull float[] in, @NonNull Random random) {
+		int channels = r.getChannels();
+		int frames = in.length / channels;
+		float[] out = new float[(r.getMaxOutputFrames(frames) + 16) * channels];
+		int n = 0;
+		int done = 0;
+		for ( ; done < frames; ) {
+			int block = Math.min(frames - done, 1 + random.nextInt(random.nextBoolean() ? 16 : 5000));
+			int capacity = Math.min(out.length / channels - n, random.nextInt(r.getMaxOutputFrames(block) + 1));
+			n += r.resample(in, done * channels, block, out, n * channels, capacity);
+			done += r.getConsumedFrames();
+		}
+		for ( ; ; ) {
+			int m = r.resample(in, 0, 0, out, n * channels, Math.min(out.length / channels - n, 1 + random.nextInt(64)));
+			if (m == 0) {
+				break;
+			}
+			n += m;
+		}
+		return Arrays.copyOf(out, n * channels);
+	}
+
+}